@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+import com.greplin.interval.IntervalSchema;
+import com.greplin.interval.NumericIntervalField;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Builds and measures the indexes benchmarks query.
+ */
+final class BenchmarkIndex {
+  /**
+   * Not instantiable.
+   */
+  private BenchmarkIndex() {
+  }
+
+
+  /**
+   * Opens an empty directory.
+   * @param storage where the directory lives
+   * @return the directory
+   * @throws IOException if the directory can't be created
+   */
+  static Directory open(final IndexStorage storage) throws IOException {
+    if (storage == IndexStorage.RAM) {
+      return new RAMDirectory();
+    }
+    final File path = File.createTempFile("interval-benchmark", "");
+    if (!path.delete() || !path.mkdir()) {
+      throw new IOException("Can't create " + path);
+    }
+    return FSDirectory.open(path);
+  }
+
+
+  /**
+   * Indexes one document per interval into a single segment.
+   * @param directory the directory to index into
+   * @param starts interval starts
+   * @param ends interval ends
+   * @param precisionStep the precision step to index with
+   * @throws IOException if the index can't be written
+   */
+  static void build(final Directory directory,
+                    final long[] starts,
+                    final long[] ends,
+                    final int precisionStep) throws IOException {
+    final IndexWriter writer = new IndexWriter(directory,
+        new IndexWriterConfig(Version.LUCENE_35,
+            new WhitespaceAnalyzer(Version.LUCENE_35)));
+    try {
+      final NumericIntervalField field = new NumericIntervalField(
+          "time", true, IntervalSchema.uniform(64, precisionStep));
+      final Document document = new Document();
+      document.add(field);
+      for (int i = 0; i < starts.length; i++) {
+        field.setInterval(starts[i], ends[i]);
+        writer.addDocument(document);
+      }
+      writer.forceMerge(1);
+    } finally {
+      writer.close();
+    }
+  }
+
+
+  /**
+   * Measures the size of an index.
+   * @param directory the directory holding the index
+   * @return the total length of its files, in bytes
+   * @throws IOException if the directory can't be listed
+   */
+  static long size(final Directory directory) throws IOException {
+    long result = 0;
+    for (String file : directory.listAll()) {
+      result += directory.fileLength(file);
+    }
+    return result;
+  }
+
+
+  /**
+   * Deletes an index and closes its directory.
+   * @param directory the directory to delete
+   * @throws IOException if files can't be deleted
+   */
+  static void destroy(final Directory directory) throws IOException {
+    for (String file : directory.listAll()) {
+      directory.deleteFile(file);
+    }
+    if (directory instanceof FSDirectory) {
+      ((FSDirectory) directory).getDirectory().delete();
+    }
+    directory.close();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+import com.greplin.interval.IntervalSchema;
+import com.greplin.interval.NumericIntervalField;
+import org.apache.lucene.analysis.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building interval fields and iterating their token streams,
+ * the per document cost of indexing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FieldBenchmark {
+  /**
+   * Number of intervals cycled through, so one interval isn't measured.
+   */
+  private static final int SAMPLE_SIZE = 4096;
+
+
+  /**
+   * The precision step to index with.
+   */
+  @Param({"2", "4", "8", "16"})
+  public int precisionStep;
+
+  /**
+   * The interval length distribution.
+   */
+  @Param({"UNIFORM", "LOG_NORMAL", "POINT"})
+  public IntervalDistribution distribution;
+
+
+  /**
+   * Interval starts.
+   */
+  private long[] starts;
+
+  /**
+   * Interval ends.
+   */
+  private long[] ends;
+
+  /**
+   * The schema fields are built with.
+   */
+  private IntervalSchema schema;
+
+  /**
+   * A field reused across intervals.
+   */
+  private NumericIntervalField field;
+
+  /**
+   * Index of the next interval.
+   */
+  private int next;
+
+
+  /**
+   * Draws the intervals.
+   */
+  @Setup
+  public void setUp() {
+    final long[][] intervals =
+        this.distribution.generate(new Random(42), SAMPLE_SIZE);
+    this.starts = intervals[0];
+    this.ends = intervals[1];
+    this.schema = IntervalSchema.uniform(64, this.precisionStep);
+    this.field = new NumericIntervalField("time", true, this.schema);
+  }
+
+
+  /**
+   * Builds a new field for each interval.
+   * @return the field
+   */
+  @Benchmark
+  public NumericIntervalField construct() {
+    final int i = this.next++ & (SAMPLE_SIZE - 1);
+    final NumericIntervalField result =
+        new NumericIntervalField("time", true, this.schema);
+    result.setInterval(this.starts[i], this.ends[i]);
+    return result;
+  }
+
+
+  /**
+   * Reuses one field and consumes its tokens, as indexing does.
+   * @return the number of tokens
+   * @throws IOException never, the stream is in memory
+   */
+  @Benchmark
+  public int tokenize() throws IOException {
+    final int i = this.next++ & (SAMPLE_SIZE - 1);
+    this.field.setInterval(this.starts[i], this.ends[i]);
+    final TokenStream stream = this.field.tokenStreamValue();
+    stream.reset();
+    int tokens = 0;
+    while (stream.incrementToken()) {
+      tokens++;
+    }
+    stream.end();
+    return tokens;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building an index, reporting its size in bytes and per
+ * interval as secondary results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark {
+  /**
+   * The precision step to index with.
+   */
+  @Param({"2", "4", "8", "16"})
+  public int precisionStep;
+
+  /**
+   * The interval length distribution.
+   */
+  @Param({"UNIFORM", "LOG_NORMAL", "POINT"})
+  public IntervalDistribution distribution;
+
+  /**
+   * The number of indexed intervals.
+   */
+  @Param({"10000", "100000"})
+  public int indexSize;
+
+
+  /**
+   * Interval starts.
+   */
+  private long[] starts;
+
+  /**
+   * Interval ends.
+   */
+  private long[] ends;
+
+  /**
+   * The index being built.
+   */
+  private Directory directory;
+
+
+  /**
+   * Index size, reported next to the build time.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Size {
+    /**
+     * Total index size in bytes.
+     */
+    public long indexBytes;
+
+    /**
+     * Index bytes per interval.
+     */
+    public long bytesPerInterval;
+  }
+
+
+  /**
+   * Draws the intervals.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    final long[][] intervals =
+        this.distribution.generate(new Random(42), this.indexSize);
+    this.starts = intervals[0];
+    this.ends = intervals[1];
+  }
+
+
+  /**
+   * Opens an empty directory.
+   * @throws IOException never, the index is in memory
+   */
+  @Setup(Level.Iteration)
+  public void open() throws IOException {
+    this.directory = BenchmarkIndex.open(IndexStorage.RAM);
+  }
+
+
+  /**
+   * Deletes the index built by an iteration.
+   * @throws IOException never, the index is in memory
+   */
+  @TearDown(Level.Iteration)
+  public void close() throws IOException {
+    BenchmarkIndex.destroy(this.directory);
+  }
+
+
+  /**
+   * Indexes every interval into one segment.
+   * @param size receives the size of the index
+   * @throws IOException never, the index is in memory
+   */
+  @Benchmark
+  public void build(final Size size) throws IOException {
+    BenchmarkIndex.build(
+        this.directory, this.starts, this.ends, this.precisionStep);
+    size.indexBytes = BenchmarkIndex.size(this.directory);
+    size.bytesPerInterval = size.indexBytes / this.indexSize;
+  }
+}
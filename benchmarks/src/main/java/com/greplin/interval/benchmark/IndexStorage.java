@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+/**
+ * Where a benchmark index lives.
+ */
+public enum IndexStorage {
+  /**
+   * In a {@link org.apache.lucene.store.RAMDirectory}.
+   */
+  RAM,
+
+  /**
+   * In a temporary {@link org.apache.lucene.store.FSDirectory}.
+   */
+  FS
+}
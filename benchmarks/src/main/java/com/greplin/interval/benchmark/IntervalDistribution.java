@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+import java.util.Random;
+
+/**
+ * Interval length distributions to benchmark against.  Starts are uniform
+ * over {@link #DOMAIN} milliseconds, about 35 years.
+ */
+public enum IntervalDistribution {
+  /**
+   * Lengths uniform up to about 50 days.
+   */
+  UNIFORM {
+    @Override
+    long length(final Random random) {
+      return random.nextLong() >>> (64 - 32);
+    }
+  },
+
+  /**
+   * Lengths spanning seconds to years, with a median of about an hour.
+   */
+  LOG_NORMAL {
+    @Override
+    long length(final Random random) {
+      return (long) Math.exp(Math.log(3600000) + 3 * random.nextGaussian());
+    }
+  },
+
+  /**
+   * Points and intervals a few milliseconds long.
+   */
+  POINT {
+    @Override
+    long length(final Random random) {
+      return random.nextInt(4) == 0 ? random.nextInt(16) : 0;
+    }
+  };
+
+
+  /**
+   * The range interval starts are drawn from.
+   */
+  public static final long DOMAIN = 1L << 40;
+
+
+  /**
+   * Draws an interval length.
+   * @param random the source of randomness
+   * @return a non-negative length
+   */
+  abstract long length(Random random);
+
+
+  /**
+   * Draws intervals.
+   * @param random the source of randomness
+   * @param count the number of intervals to draw
+   * @return the starts and ends of the intervals, in that order
+   */
+  public long[][] generate(final Random random, final int count) {
+    final long[] starts = new long[count];
+    final long[] ends = new long[count];
+    for (int i = 0; i < count; i++) {
+      starts[i] = (random.nextLong() >>> 1) % DOMAIN;
+      ends[i] = starts[i] + Math.min(length(random), DOMAIN);
+    }
+    return new long[][]{starts, ends};
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval.benchmark;
+
+import com.greplin.interval.InNumericIntervalQuery;
+import com.greplin.interval.NumericIntervalIntersectionQuery;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks intersection and point query latency.  Query windows are drawn
+ * from the same distribution as the indexed intervals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class QueryBenchmark {
+  /**
+   * Number of queries cycled through.
+   */
+  private static final int QUERY_COUNT = 1024;
+
+
+  /**
+   * The precision step to index with.
+   */
+  @Param({"4", "8", "16"})
+  public int precisionStep;
+
+  /**
+   * The interval length distribution.
+   */
+  @Param({"UNIFORM", "LOG_NORMAL", "POINT"})
+  public IntervalDistribution distribution;
+
+  /**
+   * The number of indexed intervals.
+   */
+  @Param({"10000", "1000000"})
+  public int indexSize;
+
+  /**
+   * Where the index lives.
+   */
+  @Param({"RAM", "FS"})
+  public IndexStorage storage;
+
+
+  /**
+   * The index.
+   */
+  private Directory directory;
+
+  /**
+   * Reader over the index.
+   */
+  private IndexReader reader;
+
+  /**
+   * Searcher over the index.
+   */
+  private IndexSearcher searcher;
+
+  /**
+   * Intersection queries.
+   */
+  private Query[] intersections;
+
+  /**
+   * Point queries.
+   */
+  private Query[] points;
+
+  /**
+   * Index of the next query.
+   */
+  private int next;
+
+
+  /**
+   * Builds the index and the queries.
+   * @throws IOException if the index can't be built
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final Random random = new Random(42);
+    final long[][] intervals =
+        this.distribution.generate(random, this.indexSize);
+    this.directory = BenchmarkIndex.open(this.storage);
+    BenchmarkIndex.build(
+        this.directory, intervals[0], intervals[1], this.precisionStep);
+    this.reader = IndexReader.open(this.directory);
+    this.searcher = new IndexSearcher(this.reader);
+
+    final long[][] windows = this.distribution.generate(random, QUERY_COUNT);
+    this.intersections = new Query[QUERY_COUNT];
+    this.points = new Query[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      this.intersections[i] = new NumericIntervalIntersectionQuery(
+          "time", windows[0][i], windows[1][i], this.precisionStep);
+      this.points[i] = new InNumericIntervalQuery(
+          "time", windows[0][i], this.precisionStep);
+    }
+  }
+
+
+  /**
+   * Closes and deletes the index.
+   * @throws IOException if the index can't be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.searcher.close();
+    this.reader.close();
+    BenchmarkIndex.destroy(this.directory);
+  }
+
+
+  /**
+   * Counts the documents intersecting a window.
+   * @return the number of hits
+   * @throws IOException if the index can't be read
+   */
+  @Benchmark
+  public int intersection() throws IOException {
+    return count(this.intersections[this.next++ & (QUERY_COUNT - 1)]);
+  }
+
+
+  /**
+   * Counts the documents containing a point.
+   * @return the number of hits
+   * @throws IOException if the index can't be read
+   */
+  @Benchmark
+  public int point() throws IOException {
+    return count(this.points[this.next++ & (QUERY_COUNT - 1)]);
+  }
+
+
+  /**
+   * Runs a query, collecting only the hit count.
+   * @param query the query to run
+   * @return the number of hits
+   * @throws IOException if the index can't be read
+   */
+  private int count(final Query query) throws IOException {
+    final TotalHitCountCollector collector = new TotalHitCountCollector();
+    this.searcher.search(query, collector);
+    return collector.getTotalHits();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.FilteredTermEnum;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Term enum over a sequence of inclusive term ranges in one field.
+ *
+ * <p>The ranges are given as alternating lower and upper bounds and must be
+ * ascending and disjoint.  Every term inside a range is accepted without
+ * further comparison.  The enum seeks to the lower bound of each range,
+ * unless the underlying enum is already positioned inside or past it, and
+ * moves on as soon as a term passes the upper bound, so terms outside the
+ * ranges are only visited when they end a range.
+ */
+class BoundedTermEnum extends FilteredTermEnum {
+
+  /**
+   * The Index Reader we are reading terms from.
+   */
+  private final IndexReader reader;
+
+  /**
+   * Template for terms in the field, used when seeking.
+   */
+  private final Term termTemplate;
+
+  /**
+   * The remaining bounds, alternating lower and upper.
+   */
+  private final Iterator<String> bounds;
+
+  /**
+   * The inclusive upper bound of the current range.
+   */
+  private String currentUpperBound = null;
+
+  /**
+   * The number of terms read from the underlying enums.
+   */
+  private int visitedTerms = 0;
+
+
+  /**
+   * Creates a term enum positioned on the first term in the ranges.
+   * @param reader the index to read terms from
+   * @param field the interned name of the field
+   * @param bounds alternating inclusive lower and upper bounds of ascending,
+   *               disjoint ranges
+   * @throws IOException if IO issues occur
+   */
+  BoundedTermEnum(final IndexReader reader,
+                  final String field,
+                  final List<String> bounds) throws IOException {
+    this.reader = reader;
+    this.termTemplate = new Term(field);
+    this.bounds = bounds.iterator();
+    next();
+  }
+
+
+  /**
+   * @return the number of terms read from the index so far, including the
+   *     terms that ended each range.
+   */
+  public int getVisitedTermCount() {
+    return this.visitedTerms;
+  }
+
+
+  @Override
+  public float difference() {
+    return 1.0f; // Just used as a boost and we don't care about scores.
+  }
+
+
+  /** This is a dummy, it is not used by this class. */
+  @Override
+  protected boolean endEnum() {
+    throw new UnsupportedOperationException("not implemented");
+  }
+
+
+  /** This is a dummy, it is not used by this class. */
+  @Override
+  protected void setEnum(final TermEnum actualEnum) {
+    throw new UnsupportedOperationException("not implemented");
+  }
+
+
+  /**
+   * Compares if the current upper bound is reached.  In contrast to
+   * {@link FilteredTermEnum}, a return value of false ends iterating the
+   * current range and forwards to the next one.
+   */
+  @Override
+  protected boolean termCompare(final Term term) {
+    return term.field() == this.termTemplate.field()
+        && term.text().compareTo(this.currentUpperBound) <= 0;
+  }
+
+
+  @Override
+  public boolean next() throws IOException {
+    if (this.currentTerm != null) {
+      if (!this.actualEnum.next()) {
+        this.currentTerm = null;
+        return false;
+      }
+      this.visitedTerms++;
+      this.currentTerm = this.actualEnum.term();
+      if (termCompare(this.currentTerm)) {
+        return true;
+      }
+    }
+
+    // The underlying enum, if any, is now positioned on the first term after
+    // the previous range.
+    while (this.bounds.hasNext()) {
+      final String lowerBound = this.bounds.next();
+      this.currentUpperBound = this.bounds.next();
+
+      Term term = null;
+      if (this.actualEnum != null) {
+        term = this.actualEnum.term();
+        if (term == null || term.field() != this.termTemplate.field()) {
+          // Out of terms for this field, so no later range can match either.
+          break;
+        }
+      }
+
+      if (term == null || term.text().compareTo(lowerBound) < 0) {
+        if (this.actualEnum != null) {
+          this.actualEnum.close();
+        }
+        this.actualEnum = this.reader.terms(
+            this.termTemplate.createTerm(lowerBound));
+        term = this.actualEnum.term();
+        if (term == null || term.field() != this.termTemplate.field()) {
+          break;
+        }
+        this.visitedTerms++;
+      }
+
+      if (termCompare(term)) {
+        this.currentTerm = term;
+        return true;
+      }
+    }
+
+    this.currentTerm = null;
+    return false;
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    this.currentUpperBound = null;
+    super.close();
+  }
+}
@@ -116,4 +116,43 @@ public class DoubleInterval
     return Doubles.compare(this.start, other.start);
   }
 
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final DoubleInterval other = (DoubleInterval) o;
+    return Double.doubleToLongBits(this.start)
+        == Double.doubleToLongBits(other.start)
+        && Double.doubleToLongBits(this.end)
+        == Double.doubleToLongBits(other.end);
+  }
+
+
+  /**
+   * Hashes like {@link NumericInterval#hashCode()}, without boxing.
+   */
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Doubles.hashCode(this.start))
+        + Doubles.hashCode(this.end);
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{" + this.start + '-' + this.end + '}';
+  }
+
+
+  @Override
+  public String asString() {
+    return this.start + "-" + this.end;
+  }
+
 }
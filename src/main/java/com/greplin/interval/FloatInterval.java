@@ -116,4 +116,41 @@ public class FloatInterval
     return Floats.compare(this.start, other.start);
   }
 
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final FloatInterval other = (FloatInterval) o;
+    return Float.floatToIntBits(this.start) == Float.floatToIntBits(other.start)
+        && Float.floatToIntBits(this.end) == Float.floatToIntBits(other.end);
+  }
+
+
+  /**
+   * Hashes like {@link NumericInterval#hashCode()}, without boxing.
+   */
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Floats.hashCode(this.start))
+        + Floats.hashCode(this.end);
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{" + this.start + '-' + this.end + '}';
+  }
+
+
+  @Override
+  public String asString() {
+    return this.start + "-" + this.end;
+  }
+
 }
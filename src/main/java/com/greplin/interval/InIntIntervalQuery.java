@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+/**
+ * Query that finds 32 bit intervals, indexed with {@link IntIntervalField},
+ * containing a given value.
+ */
+public final class InIntIntervalQuery extends IntervalConstantScoreQuery {
+  /**
+   * The search value, as displayed.
+   */
+  private final Number value;
+
+
+  /**
+   * Creates a query to find int intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The value to find containing intervals.
+   */
+  public InIntIntervalQuery(final String name, final int value) {
+    this(name, value, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query to find int intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The search value.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public InIntIntervalQuery(final String name,
+                            final int value,
+                            final int precisionStep) {
+    this(name, value, precisionStep, Integer.valueOf(value));
+  }
+
+
+  /**
+   * Creates a query to find 32 bit intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The encoded search value.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @param displayValue The search value, as displayed.
+   */
+  private InIntIntervalQuery(final String name,
+                             final int value,
+                             final int precisionStep,
+                             final Number displayValue) {
+    super(new InNumericIntervalFilter(name, value, precisionStep, 32));
+    this.value = displayValue;
+  }
+
+
+  /**
+   * Creates a query to find float intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The value to find containing intervals.
+   * @return the query
+   */
+  public static InIntIntervalQuery forFloat(final String name,
+                                            final float value) {
+    return forFloat(name, value, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query to find float intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The value to find containing intervals.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @return the query
+   */
+  public static InIntIntervalQuery forFloat(final String name,
+                                            final float value,
+                                            final int precisionStep) {
+    return new InIntIntervalQuery(name,
+        IntervalTerms.sortableInt(value), precisionStep,
+        Float.valueOf(value));
+  }
+
+
+  @Override
+  public String toString(final String field) {
+    return String.format("inInterval(%s, %s)", this.value, field);
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2010 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filter that matches intervals containing a given value.
+ *
+ * <p>An indexed interval contains the value exactly when one of its
+ * segments is the block containing the value at that segment's shift, so
+ * the filter ORs the postings of those blocks, one per shift level, in to a
+ * bit set.  One {@link TermDocs} is reused for all terms.  The shift levels
+ * are read from the {@link IntervalSchema} recorded in each index searched.
+ *
+ * <p>Each segment is searched by the cheapest {@link IntervalQueryPlan}:
+ * a 64 bit field's {@link IntervalTree} or complete {@link IntervalColumn}
+ * when available, or otherwise the bit set above.  A point has exactly one
+ * term per level, so segments without a tree or loaded column aren't
+ * sampled; a lazy merge of the blocks' postings is only weighed when a
+ * tree or column is, or when forced.
+ */
+public final class InNumericIntervalFilter extends Filter
+    implements PlannedFilter {
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The search value.
+   */
+  private final long value;
+
+  /**
+   * The precision step used when indexing the field.
+   */
+  private final int precisionStep;
+
+  /**
+   * The number of bits in the indexed values, 64 or 32.
+   */
+  private final int valueSize;
+
+  /**
+   * The schema used if the index does not record one.
+   */
+  private final IntervalSchema fallbackSchema;
+
+  /**
+   * The terms of the blocks containing the value under the fallback schema.
+   */
+  private final Term[] fallbackTerms;
+
+  /**
+   * The strategy to use when available, or null to choose by cost.
+   */
+  private IntervalQueryPlan.Strategy forcedStrategy;
+
+
+  /**
+   * Creates a filter to find intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The search value.
+   */
+  public InNumericIntervalFilter(final String name, final long value) {
+    this(name, value, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a filter to find intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The search value.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public InNumericIntervalFilter(final String name,
+                                 final long value,
+                                 final int precisionStep) {
+    this(name, value, precisionStep, 64);
+  }
+
+
+  /**
+   * Creates a filter to find intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The search value, which must fit in an int for 32 bit
+   *              fields.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @param valueSize The number of bits in the indexed values, 64 or 32.
+   */
+  InNumericIntervalFilter(final String name,
+                          final long value,
+                          final int precisionStep,
+                          final int valueSize) {
+    this.name = name.intern();
+    this.value = value;
+    this.precisionStep = precisionStep;
+    this.valueSize = valueSize;
+
+    this.fallbackSchema = IntervalSchema.uniform(valueSize, precisionStep);
+    this.fallbackTerms = getTerms(this.fallbackSchema);
+  }
+
+
+  /**
+   * Gets the terms of the blocks containing the value.
+   * @param schema the schema of the field
+   * @return the terms, one per shift level
+   */
+  private Term[] getTerms(final IntervalSchema schema) {
+    final List<String> texts = IntervalTerms.pointTerms(this.value, schema);
+    final Term[] terms = new Term[texts.size()];
+    final Term template = new Term(this.name);
+    for (int i = 0; i < terms.length; i++) {
+      terms[i] = template.createTerm(texts.get(i));
+    }
+    return terms;
+  }
+
+
+  /**
+   * Forces a strategy wherever it is available, for testing.
+   * @param strategy the strategy, or null to choose by cost
+   * @return this filter
+   */
+  InNumericIntervalFilter forceStrategy(
+      final IntervalQueryPlan.Strategy strategy) {
+    this.forcedStrategy = strategy;
+    return this;
+  }
+
+
+  @Override
+  public IntervalQueryPlan plan(final IndexReader reader) throws IOException {
+    return IntervalQueryPlan.forSearch(reader, this.name,
+        this.value, this.value,
+        IntervalSchema.read(reader, this.name, this.fallbackSchema),
+        this.forcedStrategy);
+  }
+
+
+  @Override
+  public DocIdSet getDocIdSet(final IndexReader reader) throws IOException {
+    return getDocIdSet(reader, plan(reader));
+  }
+
+
+  @Override
+  public DocIdSet getDocIdSet(final IndexReader reader,
+                              final IntervalQueryPlan plan)
+      throws IOException {
+    if (!plan.needsTerms()) {
+      return plan.searchIntervals(reader);
+    }
+
+    final IntervalSchema schema =
+        IntervalSchema.read(reader, this.name, this.fallbackSchema);
+    final List<Term> terms = plan.hasOpenEndedTerms()
+        ? openEndedTerms(reader, schema) : Lists.<Term>newArrayList();
+    terms.addAll(Arrays.asList(schema.equals(this.fallbackSchema)
+        ? this.fallbackTerms : getTerms(schema)));
+    if (plan.getStrategy() == IntervalQueryPlan.Strategy.DISJUNCTION) {
+      return IntervalQueryPlan.disjunction(reader, terms);
+    }
+
+    FixedBitSet bitSet = null;
+    final int[] docs = new int[32];
+    final int[] freqs = new int[32];
+    final TermDocs termDocs = reader.termDocs();
+    try {
+      for (Term term : terms) {
+        termDocs.seek(term);
+        int count;
+        while ((count = termDocs.read(docs, freqs)) != 0) {
+          if (bitSet == null) {
+            bitSet = new FixedBitSet(reader.maxDoc());
+          }
+          for (int i = 0; i < count; i++) {
+            bitSet.set(docs[i]);
+          }
+        }
+      }
+    } finally {
+      termDocs.close();
+    }
+    return bitSet == null ? DocIdSet.EMPTY_DOCIDSET : bitSet;
+  }
+
+
+  /**
+   * Gets the indexed terms of the open-ended intervals containing the
+   * value, which are few as each such interval has one term per level.
+   * @param reader the segment to read terms from
+   * @param schema the schema of the field
+   * @return the terms
+   * @throws IOException if IO issues occur
+   */
+  private List<Term> openEndedTerms(final IndexReader reader,
+                                    final IntervalSchema schema)
+      throws IOException {
+    final List<Term> terms = Lists.newArrayList();
+    final BoundedTermEnum termEnum = new BoundedTermEnum(reader, this.name,
+        IntervalTerms.openEndedBounds(this.value, schema));
+    try {
+      do {
+        final Term term = termEnum.term();
+        if (term != null) {
+          terms.add(term);
+        }
+      } while (termEnum.next());
+    } finally {
+      termEnum.close();
+    }
+    return terms;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("inInterval(%d, %s)", this.value, this.name);
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = this.name.hashCode();
+    result = 31 * result + (int) (this.value ^ (this.value >>> 32));
+    result = 31 * result + this.precisionStep;
+    result = 31 * result + this.valueSize;
+    return 31 * result + (this.forcedStrategy == null
+        ? 0 : this.forcedStrategy.hashCode());
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || o.getClass() != this.getClass()) {
+      return false;
+    }
+    final InNumericIntervalFilter other = (InNumericIntervalFilter) o;
+    return other.name == this.name
+        && other.value == this.value
+        && other.precisionStep == this.precisionStep
+        && other.valueSize == this.valueSize
+        && other.forcedStrategy == this.forcedStrategy;
+  }
+}
@@ -16,24 +16,18 @@
 
 package com.greplin.interval;
 
-import org.apache.lucene.analysis.NumericTokenStream;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.tokenattributes.TermAttribute;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.TermQuery;
-
-import java.io.IOException;
-
 /**
  * Query that finds intervals containing a given value.
+ *
+ * <p>Matches are collected by an {@link InNumericIntervalFilter} and all get
+ * the same score, avoiding the cost of scoring a disjunction of one term
+ * query per shift level.
  */
-public final class InNumericIntervalQuery extends BooleanQuery {
+public final class InNumericIntervalQuery extends IntervalConstantScoreQuery {
   /**
-   * The search value.
+   * The search value, as displayed.
    */
-  private final long value;
+  private final Number value;
 
   /**
    * Creates a query to find intervals a number is in.
@@ -50,46 +44,67 @@ public final class InNumericIntervalQuery extends BooleanQuery {
    * Creates a query to find intervals a number is in.
    * @param name The name of the field to search.
    * @param value The search value.
-   * @param precisionStep The precision step used when indexing the field.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
    */
   public InNumericIntervalQuery(final String name,
                                 final long value,
                                 final int precisionStep) {
-    super(true);
-    this.value = value;
+    this(name, value, precisionStep, Long.valueOf(value));
+  }
 
-    TokenStream stream = new NumericTokenStream(precisionStep)
-        .setLongValue(value);
 
-    try {
-      stream.reset();
-      while (stream.incrementToken()) {
-        this.add(
-            new TermQuery(
-                new Term(name,
-                         stream.getAttribute(TermAttribute.class).term())),
-            BooleanClause.Occur.SHOULD);
-      }
-    } catch (IOException e) {
-      throw new IllegalStateException(
-          "This should never happen - NumericTokenStream does no IO.");
-    }
+  /**
+   * Creates a query to find intervals a number is in.
+   * @param name The name of the field to search.
+   * @param value The encoded search value.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @param displayValue The search value, as displayed.
+   */
+  private InNumericIntervalQuery(final String name,
+                                 final long value,
+                                 final int precisionStep,
+                                 final Number displayValue) {
+    super(new InNumericIntervalFilter(name, value, precisionStep));
+    this.value = displayValue;
   }
 
-  @Override
-  public String toString(final String field) {
-    return String.format("inInterval(%d, %s)", this.value, field);
+
+  /**
+   * Creates a query to find double intervals, indexed with
+   * {@link NumericIntervalField#setDoubleInterval(double, double)}, that a
+   * number is in.
+   * @param name The name of the field to search.
+   * @param value The value to find containing intervals.
+   * @return the query
+   * @throws IllegalArgumentException if the value is NaN
+   */
+  public static InNumericIntervalQuery forDouble(final String name,
+                                                 final double value) {
+    return forDouble(name, value, NumericIntervalField.DEFAULT_PRECISION_STEP);
   }
 
-  @Override
-  public int hashCode() {
-    return (int) this.value;
+
+  /**
+   * Creates a query to find double intervals that a number is in.
+   * @param name The name of the field to search.
+   * @param value The value to find containing intervals.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @return the query
+   * @throws IllegalArgumentException if the value is NaN
+   */
+  public static InNumericIntervalQuery forDouble(final String name,
+                                                 final double value,
+                                                 final int precisionStep) {
+    return new InNumericIntervalQuery(name,
+        IntervalTerms.sortableLong(value), precisionStep,
+        Double.valueOf(value));
   }
 
   @Override
-  public boolean equals(final Object o) {
-    return o != null
-        && o.getClass() == this.getClass()
-        && ((InNumericIntervalQuery) o).value == this.value;
+  public String toString(final String field) {
+    return String.format("inInterval(%s, %s)", this.value, field);
   }
 }
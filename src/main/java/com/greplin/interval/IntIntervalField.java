@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.AbstractField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo;
+
+import java.io.Reader;
+
+/**
+ * Field that stores a 32 bit numeric interval, either of ints or of floats.
+ *
+ * <p>Terms are prefix coded ints, so a 32 bit interval needs half the shift
+ * levels of a {@link NumericIntervalField} and shorter terms.  Query the
+ * field with {@link IntIntervalIntersectionQuery} and
+ * {@link InIntIntervalQuery}; the long queries do not match its terms.
+ * Float intervals are indexed as sortable ints, see
+ * {@link org.apache.lucene.util.NumericUtils#floatToSortableInt(float)},
+ * and must be queried with the float factory methods of those queries.
+ *
+ * <p>Like {@link NumericIntervalField}, instances can be reused across
+ * documents.
+ */
+public final class IntIntervalField extends AbstractField {
+  /**
+   * The stream of tokens used for the index.
+   */
+  private final NumericIntervalTokenStream tokenStreamValue;
+
+
+  /**
+   * Creates a new int interval field.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   */
+  public IntIntervalField(final String name,
+                          final boolean index,
+                          final int min,
+                          final int max) {
+    this(name, index, min, max, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a new int interval field.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @param precisionStep The precision step used to control
+   *                      index size vs query speed.
+   */
+  public IntIntervalField(final String name,
+                          final boolean index,
+                          final int min,
+                          final int max,
+                          final int precisionStep) {
+    this(name, index, precisionStep);
+    setInterval(min, max);
+  }
+
+
+  /**
+   * Creates a new, empty 32 bit interval field for reuse.  The interval
+   * must be set before the field is added to an index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   */
+  public IntIntervalField(final String name, final boolean index) {
+    this(name, index, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a new, empty 32 bit interval field for reuse.  The interval
+   * must be set before the field is added to an index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param precisionStep The precision step used to control
+   *                      index size vs query speed.
+   */
+  public IntIntervalField(final String name,
+                          final boolean index,
+                          final int precisionStep) {
+    this(name, index, IntervalSchema.uniform(32, precisionStep));
+  }
+
+
+  /**
+   * Creates a new, empty 32 bit interval field with a custom schedule of shift
+   * levels.  Queries read the schedule from the index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param schema The 32 bit shift levels to index segments at.
+   */
+  public IntIntervalField(final String name,
+                          final boolean index,
+                          final IntervalSchema schema) {
+    super(name,
+        Field.Store.NO,
+        index ? Field.Index.ANALYZED_NO_NORMS : Field.Index.NO,
+        Field.TermVector.NO);
+    if (schema.getValueSize() != 32) {
+      throw new IllegalArgumentException(
+          "Expected a 32 bit schema: " + schema);
+    }
+    setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+    this.tokenStreamValue = new NumericIntervalTokenStream(schema);
+  }
+
+
+  /**
+   * Sets the int interval stored by this field, replacing any previous one.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field
+   */
+  public IntIntervalField setInterval(final int min, final int max) {
+    this.tokenStreamValue.setInterval(min, max);
+    return this;
+  }
+
+
+  /**
+   * Sets the float interval stored by this field, replacing any previous
+   * one.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field
+   */
+  public IntIntervalField setFloatInterval(final float min, final float max) {
+    return setInterval(IntervalTerms.sortableInt(min),
+                       IntervalTerms.sortableInt(max));
+  }
+
+
+  /**
+   * Sets the interval stored by this field, replacing any previous one.
+   * @param interval The interval.
+   * @return this field
+   */
+  public IntIntervalField setInterval(final IntegerInterval interval) {
+    return setInterval(interval.getStart(), interval.getEnd());
+  }
+
+
+  /**
+   * Sets the float interval stored by this field, replacing any previous
+   * one.
+   * @param interval The interval.
+   * @return this field
+   */
+  public IntIntervalField setInterval(final FloatInterval interval) {
+    return setFloatInterval(interval.getStart(), interval.getEnd());
+  }
+
+
+  @Override
+  public String stringValue() {
+    return null;
+  }
+
+  @Override
+  public Reader readerValue() {
+    return null;
+  }
+
+  @Override
+  public TokenStream tokenStreamValue() {
+    return this.isIndexed() ? this.tokenStreamValue : null;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+
+/**
+ * Query that matches 32 bit intervals, indexed with
+ * {@link IntIntervalField}, partially contained by the given interval.
+ */
+public final class IntIntervalIntersectionQuery extends MultiTermQuery {
+
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The encoded start of the interval.
+   */
+  private final int start;
+
+  /**
+   * The encoded end of the interval.
+   */
+  private final int end;
+
+  /**
+   * The precision step used when indexing the field.
+   */
+  private final int precisionStep;
+
+  /**
+   * Whether the bounds are sortable encoded floats.
+   */
+  private final boolean floats;
+
+
+  /**
+   * Creates a new int interval intersection query.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   */
+  public IntIntervalIntersectionQuery(final String name,
+                                      final int start,
+                                      final int end) {
+    this(name, start, end, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a new int interval intersection query.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public IntIntervalIntersectionQuery(final String name,
+                                      final int start,
+                                      final int end,
+                                      final int precisionStep) {
+    this(name, start, end, precisionStep, false);
+  }
+
+
+  /**
+   * Creates a new 32 bit interval intersection query.
+   * @param name The name of the field.
+   * @param start The encoded start of the interval.
+   * @param end The encoded end of the interval.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @param floats Whether the bounds are sortable encoded floats.
+   */
+  private IntIntervalIntersectionQuery(final String name,
+                                       final int start,
+                                       final int end,
+                                       final int precisionStep,
+                                       final boolean floats) {
+    this.name = name.intern();
+    this.start = start;
+    this.end = end;
+    this.precisionStep = precisionStep;
+    this.floats = floats;
+    setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+  }
+
+
+  /**
+   * Creates a query matching float intervals that intersect the given one.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   * @return the query
+   */
+  public static IntIntervalIntersectionQuery forFloats(
+      final String name, final float start, final float end) {
+    return forFloats(name, start, end,
+        NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query matching float intervals that intersect the given one.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @return the query
+   */
+  public static IntIntervalIntersectionQuery forFloats(
+      final String name, final float start, final float end,
+      final int precisionStep) {
+    return new IntIntervalIntersectionQuery(name,
+        IntervalTerms.sortableInt(start),
+        IntervalTerms.sortableInt(end),
+        precisionStep, true);
+  }
+
+
+  @Override
+  protected FilteredTermEnum getEnum(final IndexReader reader)
+      throws IOException {
+    return new BoundedTermEnum(reader, this.name,
+        IntervalTerms.intersectionBounds(
+            this.start, this.end, IntervalSchema.read(reader, this.name,
+                IntervalSchema.uniform(32, this.precisionStep))));
+  }
+
+
+  @Override
+  public String toString(final String field) {
+    if (this.floats) {
+      return String.format("containedInInterval(%s - %s, %s)",
+          NumericUtils.sortableIntToFloat(this.start),
+          NumericUtils.sortableIntToFloat(this.end), field);
+    }
+    return String.format("containedInInterval(%d - %d, %s)",
+        this.start, this.end, field);
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = super.hashCode();
+    result = 31 * result + this.name.hashCode();
+    result = 31 * result + this.start;
+    result = 31 * result + this.end;
+    result = 31 * result + (this.floats ? 1 : 0);
+    return 31 * result + this.precisionStep;
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    final IntIntervalIntersectionQuery other = (IntIntervalIntersectionQuery) o;
+    return other.name == this.name
+        && other.start == this.start
+        && other.end == this.end
+        && other.floats == this.floats
+        && other.precisionStep == this.precisionStep;
+  }
+}
@@ -117,4 +117,40 @@ public class IntegerInterval
     return Ints.compare(this.start, other.start);
   }
 
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final IntegerInterval other = (IntegerInterval) o;
+    return this.start == other.start && this.end == other.end;
+  }
+
+
+  /**
+   * Hashes like {@link NumericInterval#hashCode()}, without boxing.
+   */
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Ints.hashCode(this.start))
+        + Ints.hashCode(this.end);
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{" + this.start + '-' + this.end + '}';
+  }
+
+
+  @Override
+  public String asString() {
+    return this.start + "-" + this.end;
+  }
+
 }
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Indexes documents with interval sets from many threads.
+ *
+ * <p>{@link IndexWriter#addDocument} is thread safe, and each calling thread
+ * decomposes and inverts its own document, so indexing scales with the
+ * number of threads feeding one writer.  The indexer runs a fixed pool of
+ * workers that take documents from a bounded queue; {@link #add} blocks
+ * when the queue is full, so a fast producer can't run ahead of the
+ * workers.  Each worker reuses a single {@link NumericIntervalSetField}.
+ *
+ * <p>The writer only inverts documents concurrently on as many threads as
+ * {@link org.apache.lucene.index.IndexWriterConfig#setMaxThreadStates} allows,
+ * so raise that to the number of threads.  Closing the indexer waits for
+ * queued documents but leaves the writer open.
+ *
+ * <p>Once a worker fails, no further documents are indexed: {@link #add}
+ * throws, and documents already queued are counted by
+ * {@link #getDroppedCount()} and discarded.  Documents indexed before the
+ * failure stay in the writer, so it may hold a partial batch; roll the
+ * writer back, or use {@link #getDocumentCount()} and the dropped count to
+ * find out what is missing.
+ */
+public final class IntervalBulkIndexer implements Closeable {
+  /**
+   * Marks the end of the queue for a worker.
+   */
+  private static final Record END = new Record(null, null);
+
+
+  /**
+   * The writer documents are added to.
+   */
+  private final IndexWriter writer;
+
+  /**
+   * The name of the interval field.
+   */
+  private final String field;
+
+  /**
+   * The schema intervals are indexed with.
+   */
+  private final IntervalSchema schema;
+
+  /**
+   * The number of worker threads.
+   */
+  private final int threads;
+
+  /**
+   * Documents waiting for a worker.
+   */
+  private final BlockingQueue<Record> queue;
+
+  /**
+   * The worker threads.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * The first failure of a worker, if any.
+   */
+  private final AtomicReference<Throwable> failure =
+      new AtomicReference<Throwable>();
+
+  /**
+   * The number of documents indexed.
+   */
+  private final AtomicLong documents = new AtomicLong();
+
+  /**
+   * The number of queued documents not indexed because a worker failed,
+   * including the document that failed.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * The number of intervals indexed.
+   */
+  private final AtomicLong intervals = new AtomicLong();
+
+  /**
+   * Nanoseconds workers spent indexing.
+   */
+  private final AtomicLong indexingNanos = new AtomicLong();
+
+  /**
+   * Nanoseconds {@link #add} spent blocked on a full queue.
+   */
+  private final AtomicLong blockedNanos = new AtomicLong();
+
+  /**
+   * When the indexer was created.
+   */
+  private final long startNanos = System.nanoTime();
+
+  /**
+   * When the indexer finished, or 0 while it runs.
+   */
+  private volatile long endNanos = 0;
+
+  /**
+   * Whether {@link #close} was called.
+   */
+  private boolean closed = false;
+
+
+  /**
+   * Creates an indexer with the default precision step.
+   * @param writer the writer to add documents to
+   * @param field the name of the interval field
+   * @param threads the number of worker threads
+   */
+  public IntervalBulkIndexer(final IndexWriter writer,
+                             final String field,
+                             final int threads) {
+    this(writer,
+        field,
+        IntervalSchema.uniform(64, NumericIntervalField.DEFAULT_PRECISION_STEP),
+        threads,
+        threads * 64);
+  }
+
+
+  /**
+   * Creates an indexer.
+   * @param writer the writer to add documents to
+   * @param field the name of the interval field
+   * @param schema the 64 bit shift levels to index intervals at
+   * @param threads the number of worker threads
+   * @param queueCapacity the number of documents that may wait for a worker
+   *                      before {@link #add} blocks
+   */
+  public IntervalBulkIndexer(final IndexWriter writer,
+                             final String field,
+                             final IntervalSchema schema,
+                             final int threads,
+                             final int queueCapacity) {
+    if (threads < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException(
+          "threads and queueCapacity must be positive");
+    }
+    if (schema.getValueSize() != 64) {
+      throw new IllegalArgumentException(
+          "Expected a 64 bit schema: " + schema);
+    }
+    this.writer = writer;
+    this.field = field;
+    this.schema = schema;
+    this.threads = threads;
+    this.queue = new ArrayBlockingQueue<Record>(queueCapacity);
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder()
+            .setNameFormat("interval-indexer-%d")
+            .setDaemon(true)
+            .build());
+    for (int i = 0; i < threads; i++) {
+      this.executor.execute(new Worker());
+    }
+  }
+
+
+  /**
+   * Queues a document for indexing, blocking while the queue is full.
+   * @param documentIntervals the intervals of the document
+   * @param fields the other fields of the document, such as its id
+   * @throws IOException if a worker failed to index an earlier document, in
+   *     which case this document is not queued
+   * @throws InterruptedException if interrupted while waiting for space
+   */
+  public void add(final Collection<LongInterval> documentIntervals,
+                  final Fieldable... fields)
+      throws IOException, InterruptedException {
+    if (this.closed) {
+      throw new IllegalStateException("The indexer is closed");
+    }
+    checkFailure();
+    final Record record = new Record(documentIntervals, fields);
+    if (!this.queue.offer(record)) {
+      final long blockedAt = System.nanoTime();
+      this.queue.put(record);
+      this.blockedNanos.addAndGet(System.nanoTime() - blockedAt);
+    }
+  }
+
+
+  /**
+   * Waits for queued documents to be indexed and stops the workers.  The
+   * writer stays open.
+   * @throws IOException if a worker failed to index a document; the message
+   *     gives the number of queued documents that were not indexed
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      for (int i = 0; i < this.threads; i++) {
+        this.queue.put(END);
+      }
+      this.executor.shutdown();
+      while (!this.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        continue;
+      }
+    } catch (InterruptedException e) {
+      this.executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while closing the indexer", e);
+    } finally {
+      this.endNanos = System.nanoTime();
+    }
+    checkFailure();
+  }
+
+
+  /**
+   * Throws if a worker failed, with the first failure as the cause.  Errors
+   * are rethrown as they are.
+   * @throws IOException if a worker failed
+   */
+  private void checkFailure() throws IOException {
+    final Throwable t = this.failure.get();
+    if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new IOException("Failed to index a document; "
+          + this.dropped.get() + " queued documents were not indexed", t);
+    }
+  }
+
+
+  /**
+   * @return the number of documents indexed so far
+   */
+  public long getDocumentCount() {
+    return this.documents.get();
+  }
+
+
+  /**
+   * Gets the number of queued documents that were not indexed because a
+   * worker failed, including the document that failed.  It is final once
+   * {@link #close} returns or throws.
+   * @return the number of documents dropped so far
+   */
+  public long getDroppedCount() {
+    return this.dropped.get();
+  }
+
+
+  /**
+   * @return the number of intervals indexed so far
+   */
+  public long getIntervalCount() {
+    return this.intervals.get();
+  }
+
+
+  /**
+   * @return seconds since the indexer was created, up to when it closed
+   */
+  public double getElapsedSeconds() {
+    final long end = this.endNanos == 0 ? System.nanoTime() : this.endNanos;
+    return (end - this.startNanos) / 1e9;
+  }
+
+
+  /**
+   * @return documents indexed per second of elapsed time
+   */
+  public double getDocumentsPerSecond() {
+    final double elapsed = getElapsedSeconds();
+    return elapsed == 0 ? 0 : getDocumentCount() / elapsed;
+  }
+
+
+  /**
+   * The fraction of the workers' time spent indexing rather than waiting
+   * for documents.  Well below 1 means the producer is the bottleneck.
+   * @return the mean utilization of the worker threads
+   */
+  public double getWorkerUtilization() {
+    final double elapsed = getElapsedSeconds();
+    return elapsed == 0
+        ? 0 : this.indexingNanos.get() / 1e9 / (elapsed * this.threads);
+  }
+
+
+  /**
+   * Seconds {@link #add} spent blocked on a full queue.  A large share of
+   * the elapsed time means the workers are the bottleneck.
+   * @return the seconds the producer was blocked
+   */
+  public double getBlockedSeconds() {
+    return this.blockedNanos.get() / 1e9;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d documents, %d intervals in %.1fs: %.0f docs/s, "
+            + "%.0f%% worker utilization, %.1fs producer blocked",
+        getDocumentCount(), getIntervalCount(), getElapsedSeconds(),
+        getDocumentsPerSecond(), 100 * getWorkerUtilization(),
+        getBlockedSeconds());
+  }
+
+
+  /**
+   * A queued document.
+   */
+  private static final class Record {
+    /**
+     * The intervals of the document.
+     */
+    private final Collection<LongInterval> intervals;
+
+    /**
+     * The other fields of the document.
+     */
+    private final Fieldable[] fields;
+
+
+    /**
+     * Creates a record.
+     * @param intervals the intervals of the document
+     * @param fields the other fields of the document
+     */
+    Record(final Collection<LongInterval> intervals,
+           final Fieldable[] fields) {
+      this.intervals = intervals;
+      this.fields = fields;
+    }
+  }
+
+
+  /**
+   * Indexes queued documents until it takes {@link #END}.
+   */
+  private final class Worker implements Runnable {
+    /**
+     * The interval field, reused across documents.
+     */
+    private final NumericIntervalSetField intervalField =
+        new NumericIntervalSetField(
+            IntervalBulkIndexer.this.field, true,
+            IntervalBulkIndexer.this.schema);
+
+
+    @Override
+    public void run() {
+      try {
+        Record record;
+        while ((record = IntervalBulkIndexer.this.queue.take()) != END) {
+          // After a failure, keep draining so the producer and close() don't
+          // block forever, counting what is dropped.
+          if (IntervalBulkIndexer.this.failure.get() != null) {
+            IntervalBulkIndexer.this.dropped.incrementAndGet();
+            continue;
+          }
+          try {
+            index(record);
+          } catch (Throwable t) {
+            IntervalBulkIndexer.this.failure.compareAndSet(null, t);
+            IntervalBulkIndexer.this.dropped.incrementAndGet();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+
+    /**
+     * Indexes one document.
+     * @param record the document
+     * @throws IOException if the writer fails
+     */
+    private void index(final Record record) throws IOException {
+      final long start = System.nanoTime();
+      this.intervalField.clear();
+      for (LongInterval interval : record.intervals) {
+        this.intervalField.addInterval(interval);
+      }
+      final Document document = new Document();
+      for (Fieldable other : record.fields) {
+        document.add(other);
+      }
+      document.add(this.intervalField);
+      IntervalBulkIndexer.this.writer.addDocument(document);
+      IntervalBulkIndexer.this.documents.incrementAndGet();
+      IntervalBulkIndexer.this.intervals.addAndGet(record.intervals.size());
+      IntervalBulkIndexer.this.indexingNanos.addAndGet(
+          System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The start and end of every interval of a field, per document, in
+ * primitive arrays.
+ *
+ * <p>Fields indexed with {@code setColumn(true)} write one reserved term per
+ * interval recording its bounds.  {@link #get} un-inverts those terms the
+ * first time a reader asks, like {@link org.apache.lucene.search.FieldCache},
+ * and shares the column between queries until the reader closes.  Columns
+ * are per reader, so use the segment readers passed to filters and
+ * collectors rather than a top level reader.
+ *
+ * <p>Document {@code doc} has {@link #getValueCount(int)} intervals, stored
+ * from {@code getOffsets()[doc]} in {@link #getStarts()} and
+ * {@link #getEnds()}, sorted by start.  {@link NumericIntervalSetField}
+ * records its merged intervals, and double intervals are recorded as
+ * sortable longs.  Like the field cache, the column is shared by readers of
+ * the same segment core, so check {@link IndexReader#isDeleted} for
+ * documents deleted since it loaded.
+ */
+public final class IntervalColumn {
+  /**
+   * The first character of the reserved column terms, after the schema term
+   * and before every prefix coded term.
+   */
+  static final char COLUMN_PREFIX = '\u0002';
+
+  /**
+   * The length of a column term.
+   */
+  static final int TERM_LENGTH = 1 + 2 * NumericUtils.BUF_SIZE_LONG;
+
+  /**
+   * Loaded columns.
+   */
+  private static final ReaderCache<IntervalColumn> CACHE =
+      new ReaderCache<IntervalColumn>() {
+        @Override
+        protected IntervalColumn load(final IndexReader reader,
+                                      final String field)
+            throws IOException {
+          return IntervalColumn.load(reader, field);
+        }
+      };
+
+
+  /**
+   * Where each document's intervals start in the value arrays; the last
+   * element is the number of values.
+   */
+  private final int[] offsets;
+
+  /**
+   * Interval starts, grouped by document.
+   */
+  private final long[] starts;
+
+  /**
+   * Interval ends, grouped by document.
+   */
+  private final long[] ends;
+
+  /**
+   * Whether any document has more than one interval.
+   */
+  private final boolean multiValued;
+
+  /**
+   * Whether every document with the field has column terms.
+   */
+  private final boolean complete;
+
+
+  /**
+   * Creates a column.
+   * @param offsets where each document's intervals start
+   * @param starts interval starts, grouped by document
+   * @param ends interval ends, grouped by document
+   * @param complete whether every document with the field has column terms
+   */
+  private IntervalColumn(final int[] offsets,
+                         final long[] starts,
+                         final long[] ends,
+                         final boolean complete) {
+    this.offsets = offsets;
+    this.starts = starts;
+    this.ends = ends;
+    this.complete = complete;
+    boolean multi = false;
+    for (int doc = 0; doc + 1 < offsets.length && !multi; doc++) {
+      multi = offsets[doc + 1] - offsets[doc] > 1;
+    }
+    this.multiValued = multi;
+  }
+
+
+  /**
+   * Gets the column of a field, loading it on first use.  Documents of
+   * fields indexed without column terms have no intervals.
+   * @param reader the reader, usually a segment reader
+   * @param field the name of the field
+   * @return the column
+   * @throws IOException if IO issues occur
+   */
+  public static IntervalColumn get(final IndexReader reader,
+                                   final String field) throws IOException {
+    return CACHE.get(reader, field);
+  }
+
+
+  /**
+   * Gets the column of a field if it was already loaded.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the column, or null
+   */
+  static IntervalColumn getIfLoaded(final IndexReader reader,
+                                    final String field) {
+    return CACHE.getIfLoaded(reader, field);
+  }
+
+
+  /**
+   * Checks whether a field has column terms, without loading its column.
+   * @param reader the reader
+   * @param field the interned name of the field
+   * @return whether some document of the field has column terms
+   * @throws IOException if IO issues occur
+   */
+  static boolean hasColumnTerms(final IndexReader reader, final String field)
+      throws IOException {
+    final TermEnum terms =
+        reader.terms(new Term(field, String.valueOf(COLUMN_PREFIX)));
+    try {
+      final Term term = terms.term();
+      return term != null && term.field() == field
+          && term.text().charAt(0) == COLUMN_PREFIX;
+    } finally {
+      terms.close();
+    }
+  }
+
+
+  /**
+   * Un-inverts the column terms of a field.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the column
+   * @throws IOException if IO issues occur
+   */
+  private static IntervalColumn load(final IndexReader reader,
+                                     final String field) throws IOException {
+    final int maxDoc = reader.maxDoc();
+    final int[] counts = new int[maxDoc + 1];
+    int size = 0;
+    int[] docs = new int[64];
+    long[] starts = new long[64];
+    long[] ends = new long[64];
+
+    final FixedBitSet withField = new FixedBitSet(maxDoc);
+    final String internedField = field.intern();
+    final TermEnum terms = reader.terms(new Term(
+        internedField, String.valueOf(IntervalSchema.SCHEMA_PREFIX)));
+    final TermDocs termDocs = reader.termDocs();
+    final int[] docBuffer = new int[64];
+    final int[] freqBuffer = new int[64];
+    try {
+      for (Term term = terms.term(); term != null
+               && term.field() == internedField
+               && term.text().charAt(0) <= COLUMN_PREFIX;
+           term = terms.next() ? terms.term() : null) {
+        final String text = term.text();
+        if (text.charAt(0) == IntervalSchema.SCHEMA_PREFIX) {
+          termDocs.seek(terms);
+          while (termDocs.next()) {
+            withField.set(termDocs.doc());
+          }
+          continue;
+        }
+        final long start = startOf(text);
+        final long end = endOf(text);
+        termDocs.seek(terms);
+        int read;
+        while ((read = termDocs.read(docBuffer, freqBuffer)) > 0) {
+          if (size + read > docs.length) {
+            final int capacity = Math.max(size + read, docs.length << 1);
+            docs = Arrays.copyOf(docs, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+          }
+          for (int j = 0; j < read; j++) {
+            docs[size] = docBuffer[j];
+            starts[size] = start;
+            ends[size] = end;
+            counts[docBuffer[j] + 1]++;
+            size++;
+          }
+        }
+      }
+    } finally {
+      termDocs.close();
+      terms.close();
+    }
+
+    // Group by document.  Terms were visited in order, so each document's
+    // intervals stay sorted by start.
+    final int[] offsets = new int[maxDoc + 1];
+    int withColumn = 0;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      offsets[doc + 1] = offsets[doc] + counts[doc + 1];
+      if (counts[doc + 1] > 0) {
+        withColumn++;
+      }
+    }
+    final int[] next = Arrays.copyOf(offsets, maxDoc);
+    final long[] groupedStarts = new long[size];
+    final long[] groupedEnds = new long[size];
+    for (int j = 0; j < size; j++) {
+      final int slot = next[docs[j]]++;
+      groupedStarts[slot] = starts[j];
+      groupedEnds[slot] = ends[j];
+    }
+    return new IntervalColumn(offsets, groupedStarts, groupedEnds,
+        withColumn == withField.cardinality());
+  }
+
+
+  /**
+   * Writes the text of a column term.
+   * @param start the start of the interval
+   * @param end the end of the interval
+   * @param buffer the buffer to write to, at least {@link #TERM_LENGTH} long
+   * @return the length of the term
+   */
+  static int toTermText(final long start, final long end, final char[] buffer) {
+    final int length = NumericUtils.BUF_SIZE_LONG;
+    // NumericUtils writes from index 0, so shuffle each value into place.
+    NumericUtils.longToPrefixCoded(end, 0, buffer);
+    System.arraycopy(buffer, 0, buffer, 1 + length, length);
+    NumericUtils.longToPrefixCoded(start, 0, buffer);
+    System.arraycopy(buffer, 0, buffer, 1, length);
+    buffer[0] = COLUMN_PREFIX;
+    return TERM_LENGTH;
+  }
+
+
+  /**
+   * Reads the start of a column term.
+   * @param text the term text
+   * @return the start of the interval
+   */
+  static long startOf(final String text) {
+    return NumericUtils.prefixCodedToLong(
+        text.substring(1, 1 + NumericUtils.BUF_SIZE_LONG));
+  }
+
+
+  /**
+   * Reads the end of a column term.
+   * @param text the term text
+   * @return the end of the interval
+   */
+  static long endOf(final String text) {
+    return NumericUtils.prefixCodedToLong(
+        text.substring(1 + NumericUtils.BUF_SIZE_LONG));
+  }
+
+
+  /**
+   * @return the number of documents in the column
+   */
+  public int getDocumentCount() {
+    return this.offsets.length - 1;
+  }
+
+
+  /**
+   * @return whether any document has more than one interval
+   */
+  public boolean isMultiValued() {
+    return this.multiValued;
+  }
+
+
+  /**
+   * Returns whether every document with the field was indexed with column
+   * terms, so that the column holds all of the field's intervals.
+   * @return whether the column is complete
+   */
+  public boolean isComplete() {
+    return this.complete;
+  }
+
+
+  /**
+   * @param doc the document
+   * @return the number of intervals the document has
+   */
+  public int getValueCount(final int doc) {
+    return this.offsets[doc + 1] - this.offsets[doc];
+  }
+
+
+  /**
+   * @param doc the document
+   * @param i the index of the interval within the document
+   * @return the start of the interval
+   */
+  public long getStart(final int doc, final int i) {
+    return this.starts[this.offsets[doc] + i];
+  }
+
+
+  /**
+   * @param doc the document
+   * @param i the index of the interval within the document
+   * @return the end of the interval
+   */
+  public long getEnd(final int doc, final int i) {
+    return this.ends[this.offsets[doc] + i];
+  }
+
+
+  /**
+   * Returns whether any interval of a document intersects a range.
+   * @param doc the document
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return whether the document has an intersecting interval
+   */
+  public boolean intersects(final int doc, final long start, final long end) {
+    for (int j = this.offsets[doc]; j < this.offsets[doc + 1]; j++) {
+      if (this.starts[j] > end) {
+        return false;
+      }
+      if (this.ends[j] >= start) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Gets where each document's intervals start in the value arrays, with
+   * one extra element holding the number of values.  Shared, so don't
+   * modify it.
+   * @return the offsets
+   */
+  public int[] getOffsets() {
+    return this.offsets;
+  }
+
+
+  /**
+   * Gets the interval starts of every document.  Shared, so don't modify it.
+   * @return the starts, grouped by document
+   */
+  public long[] getStarts() {
+    return this.starts;
+  }
+
+
+  /**
+   * Gets the interval ends of every document.  Shared, so don't modify it.
+   * @return the ends, grouped by document
+   */
+  public long[] getEnds() {
+    return this.ends;
+  }
+
+
+  @Override
+  public String toString() {
+    return "IntervalColumn(" + getDocumentCount() + " documents, "
+        + this.starts.length + " intervals)";
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+
+/**
+ * Constant score query whose explanations show the segment's
+ * {@link IntervalQueryPlan} when filtering by a {@link PlannedFilter}.
+ */
+class IntervalConstantScoreQuery extends ConstantScoreQuery {
+  /**
+   * Creates a query.
+   * @param filter the filter to match
+   */
+  IntervalConstantScoreQuery(final Filter filter) {
+    super(filter);
+  }
+
+
+  @Override
+  public Weight createWeight(final Searcher searcher) throws IOException {
+    return new ConstantWeight(searcher) {
+      @Override
+      public Explanation explain(final IndexReader reader, final int doc)
+          throws IOException {
+        if (!(IntervalConstantScoreQuery.this.filter
+            instanceof PlannedFilter)) {
+          return super.explain(reader, doc);
+        }
+        // Runs the plan it shows instead of planning again.
+        final PlannedFilter filter =
+            (PlannedFilter) IntervalConstantScoreQuery.this.filter;
+        final IntervalQueryPlan plan = filter.plan(reader);
+        final DocIdSet docs = filter.getDocIdSet(reader, plan);
+        final DocIdSetIterator iterator = docs == null ? null : docs.iterator();
+        final ComplexExplanation explanation = new ComplexExplanation();
+        if (iterator != null && iterator.advance(doc) == doc) {
+          final float boost = IntervalConstantScoreQuery.this.getBoost();
+          explanation.setDescription(
+              IntervalConstantScoreQuery.this + ", product of:");
+          explanation.setValue(getValue());
+          explanation.setMatch(Boolean.TRUE);
+          explanation.addDetail(new Explanation(boost, "boost"));
+          explanation.addDetail(new Explanation(
+              boost == 0 ? 0 : getValue() / boost, "queryNorm"));
+        } else {
+          explanation.setDescription(
+              IntervalConstantScoreQuery.this + " doesn't match id " + doc);
+          explanation.setValue(0);
+          explanation.setMatch(Boolean.FALSE);
+        }
+        final ComplexExplanation result = new ComplexExplanation(
+            explanation.isMatch(), explanation.getValue(),
+            "interval plan " + plan + ":");
+        result.addDetail(explanation);
+        return result;
+      }
+    };
+  }
+}
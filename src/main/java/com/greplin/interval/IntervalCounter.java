@@ -0,0 +1,467 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Counts the documents with 64 bit intervals intersecting a range, without
+ * scoring or collecting them.
+ *
+ * <p>{@link #count(IndexReader, long, long)} is exact.  Each segment is
+ * searched by its {@link IntervalQueryPlan}, and the postings of the
+ * range's terms are ORed in to a bit set whose cardinality is the count, so
+ * documents matching through several terms or intervals are counted once.
+ *
+ * <p>{@link #estimate(IndexReader, long, long)} reads only document
+ * frequencies: those of the terms of the blocks containing the range's
+ * bounds, and a sample of the terms in the range at each shift level.  The
+ * returned {@link Estimate} has hard bounds.  For fields holding several
+ * intervals per document, flagged by {@link Estimate#isMultiValued()}, the
+ * estimate and its lower bound count intervals, so documents may be counted
+ * more than once.
+ */
+public final class IntervalCounter {
+  /**
+   * Document, posting and interval totals of segments, computed with one
+   * pass over a field's terms.
+   */
+  private static final ReaderCache<FieldTotals> TOTALS =
+      new ReaderCache<FieldTotals>() {
+        @Override
+        protected FieldTotals load(final IndexReader reader,
+                                   final String field) throws IOException {
+          return FieldTotals.read(reader, field);
+        }
+      };
+
+
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The schema used if the index does not record one.
+   */
+  private final IntervalSchema fallbackSchema;
+
+
+  /**
+   * Creates a counter.
+   * @param name The name of the field.
+   */
+  public IntervalCounter(final String name) {
+    this(name, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a counter.
+   * @param name The name of the field.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public IntervalCounter(final String name, final int precisionStep) {
+    this.name = name.intern();
+    this.fallbackSchema = IntervalSchema.uniform(64, precisionStep);
+  }
+
+
+  /**
+   * Counts the live documents with an interval intersecting a range.
+   * @param reader the reader
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the number of documents
+   * @throws IOException if IO issues occur
+   */
+  public int count(final IndexReader reader,
+                   final long start,
+                   final long end) throws IOException {
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    if (segments == null) {
+      return countSegment(reader, start, end);
+    }
+    int total = 0;
+    for (IndexReader segment : segments) {
+      total += count(segment, start, end);
+    }
+    return total;
+  }
+
+
+  /**
+   * Counts the live documents of a segment with an interval intersecting a
+   * range.
+   * @param segment the segment reader
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the number of documents
+   * @throws IOException if IO issues occur
+   */
+  private int countSegment(final IndexReader segment,
+                           final long start,
+                           final long end) throws IOException {
+    final IntervalSchema schema =
+        IntervalSchema.read(segment, this.name, this.fallbackSchema);
+    final IntervalQueryPlan plan =
+        IntervalQueryPlan.create(segment, this.name, start, end, schema);
+    if (!plan.needsTerms()) {
+      return plan.searchIntervals(segment).cardinality();
+    }
+
+    final FixedBitSet bits = new FixedBitSet(segment.maxDoc());
+    final int[] docs = new int[32];
+    final int[] freqs = new int[32];
+    final TermEnum terms = new BoundedTermEnum(segment, this.name,
+        IntervalTerms.intersectionBounds(start, end, schema));
+    final TermDocs termDocs = segment.termDocs();
+    try {
+      for (Term term = terms.term(); term != null;
+           term = terms.next() ? terms.term() : null) {
+        termDocs.seek(terms);
+        int count;
+        while ((count = termDocs.read(docs, freqs)) != 0) {
+          for (int i = 0; i < count; i++) {
+            bits.set(docs[i]);
+          }
+        }
+      }
+    } finally {
+      termDocs.close();
+      terms.close();
+    }
+    return bits.cardinality();
+  }
+
+
+  /**
+   * Estimates the number of live documents with an interval intersecting a
+   * range, from document frequencies alone.
+   * @param reader the reader
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the estimate
+   * @throws IOException if IO issues occur
+   */
+  public Estimate estimate(final IndexReader reader,
+                           final long start,
+                           final long end) throws IOException {
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    if (segments == null) {
+      return estimateSegment(reader, start, end);
+    }
+    double value = 0;
+    long lowerBound = 0;
+    long upperBound = 0;
+    boolean multiValued = false;
+    for (IndexReader segment : segments) {
+      final Estimate estimate = estimate(segment, start, end);
+      value += estimate.value;
+      lowerBound += estimate.lowerBound;
+      upperBound += estimate.upperBound;
+      multiValued |= estimate.multiValued;
+    }
+    return new Estimate(value, lowerBound, upperBound, multiValued);
+  }
+
+
+  /**
+   * Estimates the number of live documents of a segment with an interval
+   * intersecting a range.
+   *
+   * <p>Every interval containing a bound holds exactly one of the bound's
+   * block terms, so their document frequencies count those intervals, and
+   * every other match lies inside the range.  Those hold all of their
+   * terms in the range's term ranges, whose postings are sampled.
+   * @param segment the segment reader
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return the estimate
+   * @throws IOException if IO issues occur
+   */
+  private Estimate estimateSegment(final IndexReader segment,
+                                   final long start,
+                                   final long end) throws IOException {
+    final IntervalSchema schema =
+        IntervalSchema.read(segment, this.name, this.fallbackSchema);
+    final FieldTotals totals = TOTALS.get(segment, this.name);
+    final long atStart = pointPostings(segment, start, schema);
+    final long atEnd = start == end
+        ? atStart : pointPostings(segment, end, schema);
+    final IntervalQueryPlan plan =
+        IntervalQueryPlan.create(segment, this.name, start, end, schema);
+    final double postings =
+        Math.max(plan.getEstimatedPostings(), Math.max(atStart, atEnd));
+
+    final long deleted = segment.numDeletedDocs();
+    final long lowerBound = Math.max(0, Math.max(atStart, atEnd) - deleted);
+    long upperBound = Math.min(totals.documents, segment.numDocs());
+    if (plan.isExactEstimate()) {
+      // Every match holds at least one posting in the range.
+      upperBound = Math.min(upperBound, (long) postings);
+    }
+
+    final double inside = (postings - atStart - atEnd)
+        / Math.max(1, totals.getPostingsPerInterval());
+    final double value = (atStart + Math.max(0, atEnd - atStart)
+        + Math.max(0, inside)) * segment.numDocs()
+        / Math.max(1, segment.maxDoc());
+    return new Estimate(
+        Math.max(lowerBound, Math.min(upperBound, value)),
+        lowerBound, upperBound, totals.isMultiValued());
+  }
+
+
+  /**
+   * Sums the document frequencies of the blocks containing a value.
+   * @param segment the segment reader
+   * @param value the value
+   * @param schema the schema of the field in this segment
+   * @return the number of intervals containing the value, including those
+   *     of deleted documents
+   * @throws IOException if IO issues occur
+   */
+  private long pointPostings(final IndexReader segment,
+                             final long value,
+                             final IntervalSchema schema) throws IOException {
+    final Term template = new Term(this.name);
+    long total = 0;
+    for (String text : IntervalTerms.pointTerms(value, schema)) {
+      total += segment.docFreq(template.createTerm(text));
+    }
+    if (!IntervalTerms.hasOpenEndedTerms(segment, this.name)) {
+      return total;
+    }
+    // Each open-ended interval containing the value holds exactly one term
+    // in these ranges.
+    final TermEnum terms = new BoundedTermEnum(segment, this.name,
+        IntervalTerms.openEndedBounds(value, schema));
+    try {
+      for (Term term = terms.term(); term != null;
+           term = terms.next() ? terms.term() : null) {
+        total += terms.docFreq();
+      }
+    } finally {
+      terms.close();
+    }
+    return total;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("IntervalCounter(%s)", this.name);
+  }
+
+
+  /**
+   * An estimated count with hard bounds.
+   */
+  public static final class Estimate {
+    /**
+     * The estimate.
+     */
+    private final double value;
+
+    /**
+     * The lower bound.
+     */
+    private final long lowerBound;
+
+    /**
+     * The upper bound.
+     */
+    private final long upperBound;
+
+    /**
+     * Whether documents hold several intervals.
+     */
+    private final boolean multiValued;
+
+
+    /**
+     * Creates an estimate.
+     * @param value the estimate
+     * @param lowerBound the lower bound
+     * @param upperBound the upper bound
+     * @param multiValued whether documents hold several intervals
+     */
+    private Estimate(final double value,
+                     final long lowerBound,
+                     final long upperBound,
+                     final boolean multiValued) {
+      this.value = value;
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+      this.multiValued = multiValued;
+    }
+
+
+    /**
+     * @return the estimated count, rounded
+     */
+    public long getValue() {
+      return Math.round(this.value);
+    }
+
+
+    /**
+     * Gets a count the exact count is at least, unless
+     * {@link #isMultiValued()}, when this counts intervals instead.
+     * @return the lower bound
+     */
+    public long getLowerBound() {
+      return this.lowerBound;
+    }
+
+
+    /**
+     * @return a count the exact count is at most
+     */
+    public long getUpperBound() {
+      return this.upperBound;
+    }
+
+
+    /**
+     * @return the greatest distance from the estimate to either bound
+     */
+    public long getErrorBound() {
+      return Math.max(getValue() - this.lowerBound,
+          this.upperBound - getValue());
+    }
+
+
+    /**
+     * Gets whether some documents hold several intervals, as shown by the
+     * field's column terms.  The estimate and its lower bound then count
+     * intervals, so documents may be counted more than once.  Fields
+     * indexed without columns are assumed to hold one interval per
+     * document.
+     * @return whether documents may be counted more than once
+     */
+    public boolean isMultiValued() {
+      return this.multiValued;
+    }
+
+
+    @Override
+    public String toString() {
+      return String.format("%d [%d, %d]%s", getValue(), this.lowerBound,
+          this.upperBound, this.multiValued ? " (multi-valued)" : "");
+    }
+  }
+
+
+  /**
+   * Totals of one field in one segment, including deleted documents.
+   */
+  private static final class FieldTotals {
+    /**
+     * The number of documents with the field.
+     */
+    private final long documents;
+
+    /**
+     * The number of segment postings.
+     */
+    private final long postings;
+
+    /**
+     * The number of column values, or 0 without columns.
+     */
+    private final long intervals;
+
+
+    /**
+     * Creates totals.
+     * @param documents the number of documents with the field
+     * @param postings the number of segment postings
+     * @param intervals the number of column values
+     */
+    private FieldTotals(final long documents,
+                        final long postings,
+                        final long intervals) {
+      this.documents = documents;
+      this.postings = postings;
+      this.intervals = intervals;
+    }
+
+
+    /**
+     * Reads the totals of a field.
+     * @param segment the segment reader
+     * @param field the interned name of the field
+     * @return the totals
+     * @throws IOException if IO issues occur
+     */
+    static FieldTotals read(final IndexReader segment, final String field)
+        throws IOException {
+      long documents = 0;
+      long postings = 0;
+      long intervals = 0;
+      final TermEnum terms = segment.terms(new Term(field, ""));
+      try {
+        for (Term term = terms.term();
+             term != null && term.field() == field;
+             term = terms.next() ? terms.term() : null) {
+          final char prefix = term.text().isEmpty()
+              ? 0 : term.text().charAt(0);
+          if (prefix == IntervalSchema.SCHEMA_PREFIX) {
+            // Every document with the field holds at least one schema term.
+            documents = Math.max(documents, terms.docFreq());
+          } else if (prefix == IntervalColumn.COLUMN_PREFIX) {
+            intervals += terms.docFreq();
+          } else if (prefix >= NumericUtils.SHIFT_START_LONG) {
+            postings += terms.docFreq();
+          }
+        }
+      } finally {
+        terms.close();
+      }
+      return new FieldTotals(documents == 0 ? segment.maxDoc() : documents,
+          postings, intervals);
+    }
+
+
+    /**
+     * @return whether some documents hold several column values
+     */
+    boolean isMultiValued() {
+      return this.intervals > this.documents;
+    }
+
+
+    /**
+     * @return the average number of segment postings per interval
+     */
+    double getPostingsPerInterval() {
+      return (double) this.postings
+          / Math.max(1, Math.max(this.intervals, this.documents));
+    }
+  }
+}
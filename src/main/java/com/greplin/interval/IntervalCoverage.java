@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The number of intervals of a field active at each value, as a step
+ * function, over the documents matching a filter.
+ *
+ * <p>The intervals are read from each segment's {@link IntervalColumn}, so
+ * the field must be indexed with {@code setColumn(true)}.  Their starts and
+ * ends are sorted separately and swept once, so computing the function
+ * costs one sort of the matched intervals, however many steps it has.
+ *
+ * <p>Step {@code i} holds {@code getDepths()[i]} intervals at every value
+ * from {@code getPositions()[i]} up to the next position, and the last step
+ * extends to the end of the window.  No interval is active before the
+ * first position.
+ */
+public final class IntervalCoverage {
+  /**
+   * The values where the depth changes, ascending.
+   */
+  private final long[] positions;
+
+  /**
+   * The depth from each position.
+   */
+  private final int[] depths;
+
+  /**
+   * The start of the window.
+   */
+  private final long start;
+
+  /**
+   * The end of the window.
+   */
+  private final long end;
+
+  /**
+   * The index of the first deepest step, or -1 if there are no steps.
+   */
+  private final int deepest;
+
+
+  /**
+   * Creates a coverage function.
+   * @param positions the values where the depth changes
+   * @param depths the depth from each position
+   * @param start the start of the window
+   * @param end the end of the window
+   */
+  private IntervalCoverage(final long[] positions,
+                           final int[] depths,
+                           final long start,
+                           final long end) {
+    this.positions = positions;
+    this.depths = depths;
+    this.start = start;
+    this.end = end;
+    int index = -1;
+    for (int i = 0; i < depths.length; i++) {
+      if (index < 0 || depths[i] > depths[index]) {
+        index = i;
+      }
+    }
+    this.deepest = index;
+  }
+
+
+  /**
+   * Computes the coverage of every interval of a field.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param filter the filter matching the documents to include, or null for
+   *               all documents
+   * @return the coverage
+   * @throws IOException if IO issues occur
+   * @throws IllegalStateException if a segment has documents with the field
+   *     but without column terms
+   */
+  public static IntervalCoverage compute(final IndexReader reader,
+                                         final String field,
+                                         final Filter filter)
+      throws IOException {
+    return compute(reader, field, filter, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+
+  /**
+   * Computes the coverage of the intervals of a field within a window.
+   * Intervals are clipped to the window.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param filter the filter matching the documents to include, or null for
+   *               all documents
+   * @param start the start of the window
+   * @param end the end of the window
+   * @return the coverage
+   * @throws IOException if IO issues occur
+   * @throws IllegalStateException if a segment has documents with the field
+   *     but without column terms
+   */
+  public static IntervalCoverage compute(final IndexReader reader,
+                                         final String field,
+                                         final Filter filter,
+                                         final long start,
+                                         final long end)
+      throws IOException {
+    final LongIntervalArray intervals = new LongIntervalArray();
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    if (segments == null) {
+      collect(reader, field, filter, start, end, intervals);
+    } else {
+      for (IndexReader segment : segments) {
+        collect(segment, field, filter, start, end, intervals);
+      }
+    }
+
+    final int count = intervals.size();
+    final long[] starts = new long[count];
+    // Closing events are one past each end, except for ends at the maximum.
+    final long[] closes = new long[count];
+    int closeCount = 0;
+    for (int i = 0; i < count; i++) {
+      starts[i] = intervals.getStart(i);
+      if (intervals.getEnd(i) != Long.MAX_VALUE) {
+        closes[closeCount++] = intervals.getEnd(i) + 1;
+      }
+    }
+    Arrays.sort(starts);
+    Arrays.sort(closes, 0, closeCount);
+
+    long[] positions = new long[16];
+    int[] depths = new int[16];
+    int steps = 0;
+    int depth = 0;
+    for (int i = 0, j = 0; i < count || j < closeCount;) {
+      final long position = j == closeCount
+          || (i < count && starts[i] < closes[j]) ? starts[i] : closes[j];
+      for (; i < count && starts[i] == position; i++) {
+        depth++;
+      }
+      for (; j < closeCount && closes[j] == position; j++) {
+        depth--;
+      }
+      if (steps == 0 ? depth != 0 : depth != depths[steps - 1]) {
+        if (steps == positions.length) {
+          positions = Arrays.copyOf(positions, steps << 1);
+          depths = Arrays.copyOf(depths, steps << 1);
+        }
+        positions[steps] = position;
+        depths[steps++] = depth;
+      }
+    }
+    return new IntervalCoverage(Arrays.copyOf(positions, steps),
+        Arrays.copyOf(depths, steps), start, end);
+  }
+
+
+  /**
+   * Adds the clipped intervals of a segment's matching live documents.
+   * @param segment the segment reader
+   * @param field the name of the field
+   * @param filter the filter, or null
+   * @param start the start of the window
+   * @param end the end of the window
+   * @param intervals the intervals to add to
+   * @throws IOException if IO issues occur
+   */
+  private static void collect(final IndexReader segment,
+                              final String field,
+                              final Filter filter,
+                              final long start,
+                              final long end,
+                              final LongIntervalArray intervals)
+      throws IOException {
+    final IntervalColumn column = IntervalColumn.get(segment, field);
+    if (!column.isComplete()) {
+      throw new IllegalStateException(String.format(
+          "Field %s has documents without column terms in %s",
+          field, segment));
+    }
+    final FixedBitSet accepted =
+        IntervalHistogram.acceptedDocs(segment, filter);
+    for (int doc = 0; doc < segment.maxDoc(); doc++) {
+      if (accepted == null ? segment.isDeleted(doc) : !accepted.get(doc)) {
+        continue;
+      }
+      for (int i = 0; i < column.getValueCount(doc); i++) {
+        final long valueStart = column.getStart(doc, i);
+        final long valueEnd = column.getEnd(doc, i);
+        if (valueStart <= end && valueEnd >= start) {
+          intervals.add(Math.max(valueStart, start), Math.min(valueEnd, end));
+        }
+      }
+    }
+  }
+
+
+  /**
+   * @return the values where the depth changes, ascending
+   */
+  public long[] getPositions() {
+    return this.positions;
+  }
+
+
+  /**
+   * @return the number of intervals active from each position
+   */
+  public int[] getDepths() {
+    return this.depths;
+  }
+
+
+  /**
+   * Gets the number of intervals active at a value.
+   * @param value the value
+   * @return the number of intervals
+   */
+  public int getDepth(final long value) {
+    final int index = Arrays.binarySearch(this.positions, value);
+    if (index >= 0) {
+      return this.depths[index];
+    }
+    final int step = -index - 2;
+    return step < 0 ? 0 : this.depths[step];
+  }
+
+
+  /**
+   * @return the greatest number of intervals active at any value
+   */
+  public int getMaxDepth() {
+    return this.deepest < 0 ? 0 : this.depths[this.deepest];
+  }
+
+
+  /**
+   * @return the first value where the depth is greatest, or the start of
+   *     the window if there are no intervals
+   */
+  public long getMaxDepthStart() {
+    return this.deepest < 0 ? this.start : this.positions[this.deepest];
+  }
+
+
+  /**
+   * @return the last value of the first run of values where the depth is
+   *     greatest, or the end of the window if there are no intervals
+   */
+  public long getMaxDepthEnd() {
+    if (this.deepest < 0) {
+      return this.end;
+    }
+    return this.deepest + 1 < this.positions.length
+        ? this.positions[this.deepest + 1] - 1 : this.end;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("IntervalCoverage(%d steps, max %d at %d - %d)",
+        this.positions.length, getMaxDepth(), getMaxDepthStart(),
+        getMaxDepthEnd());
+  }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds the ranges of a window not covered by any 64 bit interval of the
+ * documents matching a filter, in order, such as the free slots of a room.
+ *
+ * <p>The finder moves a cursor through the window using only the terms
+ * near it.  A value is covered exactly when the block containing it at
+ * some shift level has a matching posting, as for
+ * {@link NumericIntervalIntersectionQuery}, and the cursor then skips to
+ * the end of the coarsest such block.  From a free value, the next covered
+ * value is the start of the first later block with a matching posting at
+ * any level, found by scanning each level forward no further than the best
+ * candidate so far.  Finding the first free slot of a day therefore reads
+ * the terms around the bookings before it, not the whole day's.
+ */
+public final class IntervalGapFinder {
+  /**
+   * Receives gaps in order.
+   */
+  public interface Collector {
+    /**
+     * Receives a gap.
+     * @param start the first uncovered value
+     * @param end the last uncovered value
+     * @return whether to look for more gaps
+     */
+    boolean gap(long start, long end);
+  }
+
+
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The schema used if the index does not record one.
+   */
+  private final IntervalSchema fallbackSchema;
+
+
+  /**
+   * Creates a gap finder.
+   * @param name The name of the field.
+   */
+  public IntervalGapFinder(final String name) {
+    this(name, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a gap finder.
+   * @param name The name of the field.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public IntervalGapFinder(final String name, final int precisionStep) {
+    this.name = name.intern();
+    this.fallbackSchema = IntervalSchema.uniform(64, precisionStep);
+  }
+
+
+  /**
+   * Finds the first gaps of at least a given length.
+   * @param reader the reader
+   * @param start the start of the window
+   * @param end the end of the window
+   * @param filter the filter matching the documents whose intervals cover
+   *               values, or null for all documents
+   * @param minLength the least number of values in a gap
+   * @param limit the greatest number of gaps to find
+   * @return the gaps, in order
+   * @throws IOException if IO issues occur
+   */
+  public List<LongInterval> find(final IndexReader reader,
+                                 final long start,
+                                 final long end,
+                                 final Filter filter,
+                                 final long minLength,
+                                 final int limit) throws IOException {
+    final List<LongInterval> result = Lists.newArrayList();
+    if (limit > 0) {
+      find(reader, start, end, filter, minLength, new Collector() {
+        @Override
+        public boolean gap(final long gapStart, final long gapEnd) {
+          result.add(new LongInterval(gapStart, gapEnd));
+          return result.size() < limit;
+        }
+      });
+    }
+    return result;
+  }
+
+
+  /**
+   * Streams the gaps of at least a given length to a collector, in order,
+   * until it asks to stop.
+   * @param reader the reader
+   * @param start the start of the window
+   * @param end the end of the window
+   * @param filter the filter matching the documents whose intervals cover
+   *               values, or null for all documents
+   * @param minLength the least number of values in a gap
+   * @param collector the collector
+   * @throws IOException if IO issues occur
+   * @throws IllegalArgumentException if the minimum length isn't positive
+   */
+  public void find(final IndexReader reader,
+                   final long start,
+                   final long end,
+                   final Filter filter,
+                   final long minLength,
+                   final Collector collector) throws IOException {
+    if (minLength <= 0) {
+      throw new IllegalArgumentException("Gaps hold at least one value");
+    }
+    if (start > end) {
+      return;
+    }
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    final Cover[] covers = new Cover[segments == null ? 1 : segments.length];
+    try {
+      for (int i = 0; i < covers.length; i++) {
+        covers[i] = new Cover(segments == null ? reader : segments[i],
+            filter);
+      }
+
+      long cursor = start;
+      while (true) {
+        // Skip to the first free value.
+        while (true) {
+          boolean covered = false;
+          long coveredEnd = cursor;
+          for (Cover cover : covers) {
+            if (cover.covers(cursor)) {
+              covered = true;
+              coveredEnd = Math.max(coveredEnd, cover.getCoveredEnd());
+            }
+          }
+          if (!covered) {
+            break;
+          }
+          if (coveredEnd >= end) {
+            return;
+          }
+          cursor = coveredEnd + 1;
+        }
+
+        long gapEnd = end;
+        for (Cover cover : covers) {
+          gapEnd = cover.freeEnd(cursor, gapEnd);
+        }
+        if (gapEnd - cursor + Long.MIN_VALUE >= minLength - 1 + Long.MIN_VALUE
+            && !collector.gap(cursor, gapEnd)) {
+          return;
+        }
+        if (gapEnd >= end) {
+          return;
+        }
+        cursor = gapEnd + 1;
+      }
+    } finally {
+      for (Cover cover : covers) {
+        if (cover != null) {
+          cover.close();
+        }
+      }
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("IntervalGapFinder(%s)", this.name);
+  }
+
+
+  /**
+   * Reads the covered values of one segment.
+   */
+  private final class Cover {
+    /**
+     * The segment reader.
+     */
+    private final IndexReader segment;
+
+    /**
+     * The schema of the field in the segment.
+     */
+    private final IntervalSchema schema;
+
+    /**
+     * The documents whose intervals count, or null for all live documents.
+     */
+    private final FixedBitSet accepted;
+
+    /**
+     * Reused to read postings.
+     */
+    private final TermDocs termDocs;
+
+    /**
+     * Creates terms of the field.
+     */
+    private final Term template;
+
+    /**
+     * The end of the block last found covering a value.
+     */
+    private long coveredEnd;
+
+    /**
+     * Whether the segment has open-ended interval terms in the field.
+     */
+    private final boolean openEnded;
+
+
+    /**
+     * Opens a segment.
+     * @param segment the segment reader
+     * @param filter the filter, or null
+     * @throws IOException if IO issues occur
+     */
+    Cover(final IndexReader segment, final Filter filter) throws IOException {
+      this.segment = segment;
+      this.schema = IntervalSchema.read(segment,
+          IntervalGapFinder.this.name, IntervalGapFinder.this.fallbackSchema);
+      this.accepted = IntervalHistogram.acceptedDocs(segment, filter);
+      this.termDocs = segment.termDocs();
+      this.template = new Term(IntervalGapFinder.this.name);
+      this.openEnded = IntervalTerms.hasOpenEndedTerms(
+          segment, IntervalGapFinder.this.name);
+    }
+
+
+    /**
+     * Checks whether a value is covered, and if so how far.
+     * @param value the value
+     * @return whether the value is covered
+     * @throws IOException if IO issues occur
+     * @see #getCoveredEnd()
+     */
+    boolean covers(final long value) throws IOException {
+      if (this.openEnded) {
+        final TermEnum terms = new BoundedTermEnum(this.segment,
+            this.template.field(),
+            IntervalTerms.openEndedBounds(value, this.schema));
+        try {
+          for (Term term = terms.term(); term != null;
+               term = terms.next() ? terms.term() : null) {
+            if (matches(terms)) {
+              this.coveredEnd = Long.MAX_VALUE;
+              return true;
+            }
+          }
+        } finally {
+          terms.close();
+        }
+      }
+      for (int level = this.schema.getLevelCount() - 1; level >= 0; level--) {
+        final int shift = this.schema.getShift(level);
+        if (matches(NumericUtils.longToPrefixCoded(value, shift))) {
+          this.coveredEnd = shift == 0 ? value : value | ((1L << shift) - 1);
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+    /**
+     * @return the end of the coarsest matching block containing the value
+     *     last found covered
+     */
+    long getCoveredEnd() {
+      return this.coveredEnd;
+    }
+
+
+    /**
+     * Finds how far a free value stays free.
+     * @param value the free value
+     * @param limit the last value to look at
+     * @return the last free value before the next covered one, or the limit
+     * @throws IOException if IO issues occur
+     */
+    long freeEnd(final long value, final long limit) throws IOException {
+      long best = limit;
+      if (this.openEnded && value < best) {
+        // The value is free, so no open-ended interval starts before it.
+        final String upper = IntervalTerms.openTerm(best, 0);
+        final TermEnum terms = this.segment.terms(this.template.createTerm(
+            IntervalTerms.openTerm(value + 1, 0)));
+        try {
+          for (Term term = terms.term();
+               term != null && term.field() == this.template.field()
+                   && term.text().compareTo(upper) <= 0;
+               term = terms.next() ? terms.term() : null) {
+            if (matches(terms)) {
+              best = IntervalTerms.blockStart(term.text(), 64) - 1;
+              break;
+            }
+          }
+        } finally {
+          terms.close();
+        }
+      }
+      for (int level = 0; level < this.schema.getLevelCount(); level++) {
+        final int shift = this.schema.getShift(level);
+        if (value >> shift == Long.MAX_VALUE >> shift) {
+          continue;
+        }
+        final long from = ((value >> shift) + 1) << shift;
+        if (from > best) {
+          continue;
+        }
+        final String upper = NumericUtils.longToPrefixCoded(best, shift);
+        final TermEnum terms = this.segment.terms(this.template.createTerm(
+            NumericUtils.longToPrefixCoded(from, shift)));
+        try {
+          for (Term term = terms.term();
+               term != null && term.field() == this.template.field()
+                   && term.text().compareTo(upper) <= 0;
+               term = terms.next() ? terms.term() : null) {
+            if (matches(terms)) {
+              best = NumericUtils.prefixCodedToLong(term.text()) - 1;
+              break;
+            }
+          }
+        } finally {
+          terms.close();
+        }
+      }
+      return best;
+    }
+
+
+    /**
+     * Checks whether a term has a matching posting.
+     * @param text the text of the term
+     * @return whether it does
+     * @throws IOException if IO issues occur
+     */
+    private boolean matches(final String text) throws IOException {
+      this.termDocs.seek(this.template.createTerm(text));
+      return matchesPostings();
+    }
+
+
+    /**
+     * Checks whether an enumerated term has a matching posting.
+     * @param terms the enumeration, positioned on the term
+     * @return whether it does
+     * @throws IOException if IO issues occur
+     */
+    private boolean matches(final TermEnum terms) throws IOException {
+      this.termDocs.seek(terms);
+      return matchesPostings();
+    }
+
+
+    /**
+     * @return whether the sought postings have a matching document
+     * @throws IOException if IO issues occur
+     */
+    private boolean matchesPostings() throws IOException {
+      while (this.termDocs.next()) {
+        if (this.accepted == null || this.accepted.get(this.termDocs.doc())) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+    /**
+     * Releases the postings.
+     * @throws IOException if IO issues occur
+     */
+    void close() throws IOException {
+      this.termDocs.close();
+    }
+  }
+}
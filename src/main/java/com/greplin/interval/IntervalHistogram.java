@@ -0,0 +1,350 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts, for each fixed width bucket of a range, the documents with a 64
+ * bit interval intersecting the bucket, in one pass.
+ *
+ * <p>The range's terms are enumerated once, as by
+ * {@link NumericIntervalIntersectionQuery}.  Each term is a block of values
+ * overlapping a run of buckets, so a coarse term shared by many buckets is
+ * read once and its postings applied to the whole run.  Each posting
+ * becomes an event opening and an event closing its run for its document;
+ * sorting the events by document lets overlapping runs of one document be
+ * counted once, and the counts are accumulated as differences.  Segments
+ * whose {@link IntervalQueryPlan} prefers a complete {@link IntervalColumn}
+ * are counted from the column instead.
+ */
+public final class IntervalHistogram {
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The schema used if the index does not record one.
+   */
+  private final IntervalSchema fallbackSchema;
+
+
+  /**
+   * Creates a histogram aggregation.
+   * @param name The name of the field.
+   */
+  public IntervalHistogram(final String name) {
+    this(name, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a histogram aggregation.
+   * @param name The name of the field.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public IntervalHistogram(final String name, final int precisionStep) {
+    this.name = name.intern();
+    this.fallbackSchema = IntervalSchema.uniform(64, precisionStep);
+  }
+
+
+  /**
+   * Counts the live documents intersecting each bucket of a range.
+   * @param reader the reader
+   * @param start the start of the range, and of the first bucket
+   * @param end the end of the range, which cuts the last bucket short
+   * @param width the width of each bucket
+   * @return the number of documents intersecting each bucket
+   * @throws IOException if IO issues occur
+   * @throws IllegalArgumentException if the range is empty, the width
+   *     isn't positive or there are too many buckets
+   */
+  public int[] count(final IndexReader reader,
+                     final long start,
+                     final long end,
+                     final long width) throws IOException {
+    return count(reader, start, end, width, null);
+  }
+
+
+  /**
+   * Counts the live documents accepted by a filter intersecting each bucket
+   * of a range.
+   * @param reader the reader
+   * @param start the start of the range, and of the first bucket
+   * @param end the end of the range, which cuts the last bucket short
+   * @param width the width of each bucket
+   * @param filter the filter restricting the documents counted, or null
+   * @return the number of documents intersecting each bucket
+   * @throws IOException if IO issues occur
+   * @throws IllegalArgumentException if the range is empty, the width
+   *     isn't positive or there are too many buckets
+   */
+  public int[] count(final IndexReader reader,
+                     final long start,
+                     final long end,
+                     final long width,
+                     final Filter filter) throws IOException {
+    if (start > end) {
+      throw new IllegalArgumentException("Empty range");
+    }
+    if (width <= 0) {
+      throw new IllegalArgumentException("Bucket width must be positive");
+    }
+    final long lastBucket = unsignedDivide(end - start, width);
+    if (lastBucket < 0 || lastBucket >= Integer.MAX_VALUE - 1) {
+      throw new IllegalArgumentException("Too many buckets");
+    }
+
+    final int[] differences = new int[(int) lastBucket + 2];
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    if (segments == null) {
+      countSegment(reader, start, end, width, filter, differences);
+    } else {
+      for (IndexReader segment : segments) {
+        countSegment(segment, start, end, width, filter, differences);
+      }
+    }
+
+    final int[] counts = new int[differences.length - 1];
+    int count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      count += differences[i];
+      counts[i] = count;
+    }
+    return counts;
+  }
+
+
+  /**
+   * Adds the counts of a segment.
+   * @param segment the segment reader
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param width the width of each bucket
+   * @param filter the filter restricting the documents counted, or null
+   * @param differences the differences between consecutive bucket counts
+   * @throws IOException if IO issues occur
+   */
+  private void countSegment(final IndexReader segment,
+                            final long start,
+                            final long end,
+                            final long width,
+                            final Filter filter,
+                            final int[] differences) throws IOException {
+    final FixedBitSet accepted = acceptedDocs(segment, filter);
+    if (accepted != null && accepted.cardinality() == 0) {
+      return;
+    }
+    final IntervalSchema schema =
+        IntervalSchema.read(segment, this.name, this.fallbackSchema);
+    final IntervalQueryPlan plan =
+        IntervalQueryPlan.create(segment, this.name, start, end, schema);
+    final IntervalColumn column =
+        plan.getStrategy() == IntervalQueryPlan.Strategy.COLUMN
+            ? plan.getColumn() : null;
+    if (column != null) {
+      countColumn(segment, column, start, end, width, accepted, differences);
+      return;
+    }
+
+    // Events are (document, bucket, opens) packed in to longs in that order.
+    long[] events = new long[64];
+    int eventCount = 0;
+    final int[] docs = new int[32];
+    final int[] freqs = new int[32];
+    // Open-ended intervals are read from their exact, unshifted starts.
+    final List<String> bounds = Lists.newArrayList(
+        IntervalTerms.openTerm(Long.MIN_VALUE, 0),
+        IntervalTerms.openTerm(end, 0));
+    bounds.addAll(IntervalTerms.segmentBounds(start, end, schema));
+    final TermEnum terms = new BoundedTermEnum(segment, this.name, bounds);
+    final TermDocs termDocs = segment.termDocs();
+    try {
+      for (Term term = terms.term(); term != null;
+           term = terms.next() ? terms.term() : null) {
+        final String text = term.text();
+        final int shift = IntervalTerms.shiftOf(text, 64);
+        final long low = IntervalTerms.blockStart(text, 64);
+        final long high = text.charAt(0) == IntervalTerms.OPEN_PREFIX
+            ? Long.MAX_VALUE : low | ((1L << shift) - 1);
+        final long first = bucket(Math.max(low, start), start, width);
+        final long next = bucket(Math.min(high, end), start, width) + 1;
+
+        termDocs.seek(terms);
+        int count;
+        while ((count = termDocs.read(docs, freqs)) != 0) {
+          if (eventCount + 2 * count > events.length) {
+            events = Arrays.copyOf(events,
+                Math.max(events.length << 1, eventCount + 2 * count));
+          }
+          for (int i = 0; i < count; i++) {
+            if (accepted == null || accepted.get(docs[i])) {
+              final long doc = (long) docs[i] << 32;
+              events[eventCount++] = doc | first << 1 | 1;
+              events[eventCount++] = doc | next << 1;
+            }
+          }
+        }
+      }
+    } finally {
+      termDocs.close();
+      terms.close();
+    }
+
+    Arrays.sort(events, 0, eventCount);
+    int depth = 0;
+    for (int i = 0; i < eventCount; i++) {
+      final int bucket = (int) (events[i] & 0xFFFFFFFFL) >>> 1;
+      if ((events[i] & 1) == 1) {
+        if (depth++ == 0) {
+          differences[bucket]++;
+        }
+      } else if (--depth == 0) {
+        differences[bucket]--;
+      }
+    }
+  }
+
+
+  /**
+   * Adds the counts of a segment from its column.
+   * @param segment the segment reader
+   * @param column the segment's complete column
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param width the width of each bucket
+   * @param accepted the documents to count, or null for all
+   * @param differences the differences between consecutive bucket counts
+   */
+  private static void countColumn(final IndexReader segment,
+                                  final IntervalColumn column,
+                                  final long start,
+                                  final long end,
+                                  final long width,
+                                  final FixedBitSet accepted,
+                                  final int[] differences) {
+    final int maxDoc = segment.maxDoc();
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if (accepted == null ? segment.isDeleted(doc) : !accepted.get(doc)) {
+        continue;
+      }
+      // Values are sorted by start, so runs of buckets only grow rightward.
+      long runFirst = -1;
+      long runNext = -1;
+      for (int i = 0; i < column.getValueCount(doc); i++) {
+        final long valueStart = column.getStart(doc, i);
+        final long valueEnd = column.getEnd(doc, i);
+        if (valueStart > end || valueEnd < start) {
+          continue;
+        }
+        final long first = bucket(Math.max(valueStart, start), start, width);
+        final long next = bucket(Math.min(valueEnd, end), start, width) + 1;
+        if (runNext < first) {
+          if (runNext >= 0) {
+            differences[(int) runFirst]++;
+            differences[(int) runNext]--;
+          }
+          runFirst = first;
+        }
+        runNext = Math.max(runNext, next);
+      }
+      if (runNext >= 0) {
+        differences[(int) runFirst]++;
+        differences[(int) runNext]--;
+      }
+    }
+  }
+
+
+  /**
+   * Gets the live documents accepted by a filter.
+   * @param segment the segment reader
+   * @param filter the filter, or null
+   * @return the accepted live documents, or null to accept all live ones
+   * @throws IOException if IO issues occur
+   */
+  static FixedBitSet acceptedDocs(final IndexReader segment,
+                                  final Filter filter) throws IOException {
+    if (filter == null) {
+      return null;
+    }
+    final FixedBitSet result = new FixedBitSet(segment.maxDoc());
+    final DocIdSet docIdSet = filter.getDocIdSet(segment);
+    final DocIdSetIterator iterator =
+        docIdSet == null ? null : docIdSet.iterator();
+    if (iterator != null) {
+      result.or(iterator);
+    }
+    if (segment.hasDeletions()) {
+      for (int doc = 0; doc < result.length(); doc++) {
+        if (segment.isDeleted(doc)) {
+          result.clear(doc);
+        }
+      }
+    }
+    return result;
+  }
+
+
+  /**
+   * Gets the bucket of a value.
+   * @param value a value in the range
+   * @param start the start of the range
+   * @param width the width of each bucket
+   * @return the bucket's index
+   */
+  private static long bucket(final long value,
+                             final long start,
+                             final long width) {
+    return unsignedDivide(value - start, width);
+  }
+
+
+  /**
+   * Divides an unsigned value by a positive one.
+   * @param dividend the dividend, read as unsigned
+   * @param divisor the positive divisor
+   * @return the quotient, read as unsigned
+   */
+  private static long unsignedDivide(final long dividend, final long divisor) {
+    if (dividend >= 0) {
+      return dividend / divisor;
+    }
+    long quotient = ((dividend >>> 1) / divisor) << 1;
+    final long remainder = dividend - quotient * divisor;
+    if (remainder + Long.MIN_VALUE >= divisor + Long.MIN_VALUE) {
+      quotient++;
+    }
+    return quotient;
+  }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Term and postings statistics of an interval field, per shift level.
+ * Terms of open-ended intervals are counted in a bucket of their own.
+ *
+ * <p>Run {@link #main(String[])} to print the statistics of the interval
+ * fields of an index and, given a stored field holding the intervals as
+ * "a-b" strings, a {@link PrecisionStepAdvisor} report recommending a
+ * precision step.
+ */
+public final class IntervalIndexStats {
+  /**
+   * The name of the field.
+   */
+  private final String field;
+
+  /**
+   * The number of bits in the indexed values, 64 or 32.
+   */
+  private final int valueSize;
+
+  /**
+   * The recorded schema, or null if none is recorded.
+   */
+  private final IntervalSchema schema;
+
+  /**
+   * The number of documents with the field, or -1 if unknown.
+   */
+  private final int documentCount;
+
+  /**
+   * The number of intervals recorded by column terms, or -1 if the field
+   * has no column terms.
+   */
+  private final long intervalCount;
+
+  /**
+   * The number of distinct terms at each shift.
+   */
+  private final long[] termCounts;
+
+  /**
+   * The number of postings at each shift.
+   */
+  private final long[] postingCounts;
+
+  /**
+   * The number of distinct open-ended interval terms.
+   */
+  private final long openTermCount;
+
+  /**
+   * The number of postings of open-ended interval terms.
+   */
+  private final long openPostingCount;
+
+
+  /**
+   * Creates statistics.
+   * @param field the name of the field
+   * @param valueSize the number of bits in the indexed values
+   * @param schema the recorded schema, or null
+   * @param documentCount the number of documents with the field, or -1
+   * @param intervalCount the number of intervals with column terms, or -1
+   * @param termCounts the number of distinct terms at each shift
+   * @param postingCounts the number of postings at each shift
+   * @param openTermCount the number of distinct open-ended terms
+   * @param openPostingCount the number of postings of open-ended terms
+   */
+  private IntervalIndexStats(final String field,
+                             final int valueSize,
+                             final IntervalSchema schema,
+                             final int documentCount,
+                             final long intervalCount,
+                             final long[] termCounts,
+                             final long[] postingCounts,
+                             final long openTermCount,
+                             final long openPostingCount) {
+    this.field = field;
+    this.valueSize = valueSize;
+    this.schema = schema;
+    this.documentCount = documentCount;
+    this.intervalCount = intervalCount;
+    this.termCounts = termCounts;
+    this.postingCounts = postingCounts;
+    this.openTermCount = openTermCount;
+    this.openPostingCount = openPostingCount;
+  }
+
+
+  /**
+   * Reads the statistics of a 64 bit interval field.  Postings include
+   * deleted documents that have not been merged away yet.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the statistics
+   * @throws IOException if IO issues occur
+   */
+  public static IntervalIndexStats read(final IndexReader reader,
+                                        final String field)
+      throws IOException {
+    return read(reader, field, 64);
+  }
+
+
+  /**
+   * Reads the statistics of an interval field.  Postings include deleted
+   * documents that have not been merged away yet.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @return the statistics
+   * @throws IOException if IO issues occur
+   */
+  public static IntervalIndexStats read(final IndexReader reader,
+                                        final String field,
+                                        final int valueSize)
+      throws IOException {
+    final char shiftStart = valueSize == 32
+        ? NumericUtils.SHIFT_START_INT : NumericUtils.SHIFT_START_LONG;
+    final IntervalSchema schema =
+        IntervalSchema.read(reader, field, valueSize);
+    final String schemaPrefix = IntervalSchema.SCHEMA_PREFIX
+        + Integer.toString(valueSize) + ':';
+
+    final long[] termCounts = new long[valueSize];
+    final long[] postingCounts = new long[valueSize];
+    int documentCount = schema == null ? -1 : 0;
+    long intervalCount = -1;
+    long openTermCount = 0;
+    long openPostingCount = 0;
+
+    final String internedField = field.intern();
+    final TermEnum terms = reader.terms(new Term(internedField, ""));
+    try {
+      for (Term term = terms.term();
+           term != null && term.field() == internedField;
+           term = terms.next() ? terms.term() : null) {
+        final String text = term.text();
+        if (text.startsWith(schemaPrefix)) {
+          // Every document with the field holds at least one schema term.
+          documentCount = Math.max(documentCount, terms.docFreq());
+          continue;
+        }
+        if (!text.isEmpty() && text.charAt(0) == IntervalColumn.COLUMN_PREFIX) {
+          // One column term per distinct interval of each document.
+          intervalCount = Math.max(intervalCount, 0) + terms.docFreq();
+          continue;
+        }
+        if (!text.isEmpty() && text.charAt(0) == IntervalTerms.OPEN_PREFIX) {
+          openTermCount++;
+          openPostingCount += terms.docFreq();
+          continue;
+        }
+        final int shift = text.isEmpty() ? -1 : text.charAt(0) - shiftStart;
+        if (shift >= 0 && shift < valueSize) {
+          termCounts[shift]++;
+          postingCounts[shift] += terms.docFreq();
+        }
+      }
+    } finally {
+      terms.close();
+    }
+
+    return new IntervalIndexStats(field, valueSize, schema, documentCount,
+        intervalCount, termCounts, postingCounts, openTermCount,
+        openPostingCount);
+  }
+
+
+  /**
+   * @return the name of the field.
+   */
+  public String getField() {
+    return this.field;
+  }
+
+
+  /**
+   * @return the schema recorded for the field, or null if none is recorded.
+   */
+  public IntervalSchema getSchema() {
+    return this.schema;
+  }
+
+
+  /**
+   * Gets the number of documents with the field.  When segments record
+   * different schemas this is a lower bound.
+   * @return the number of documents, or -1 if the field records no schema
+   */
+  public int getDocumentCount() {
+    return this.documentCount;
+  }
+
+
+  /**
+   * Gets the number of intervals, counted from the terms of fields indexed
+   * with column terms.  Equal intervals of one document count once, and
+   * documents indexed without column terms are not counted.
+   * @return the number of intervals, or -1 if the field has no column terms
+   */
+  public long getIntervalCount() {
+    return this.intervalCount;
+  }
+
+
+  /**
+   * @return the ascending shifts that have at least one term.
+   */
+  public int[] getShifts() {
+    int count = 0;
+    for (long termCount : this.termCounts) {
+      count += termCount > 0 ? 1 : 0;
+    }
+    final int[] shifts = new int[count];
+    for (int shift = 0, i = 0; shift < this.valueSize; shift++) {
+      if (this.termCounts[shift] > 0) {
+        shifts[i++] = shift;
+      }
+    }
+    return shifts;
+  }
+
+
+  /**
+   * Gets the number of distinct terms at a shift.
+   * @param shift the shift
+   * @return the number of terms
+   */
+  public long getTermCount(final int shift) {
+    return this.termCounts[shift];
+  }
+
+
+  /**
+   * Gets the number of postings at a shift, which is the number of indexed
+   * segments at that shift.
+   * @param shift the shift
+   * @return the number of postings
+   */
+  public long getPostingCount(final int shift) {
+    return this.postingCounts[shift];
+  }
+
+
+  /**
+   * Gets the number of distinct open-ended interval terms, which are not
+   * counted at any shift.
+   * @return the number of terms
+   */
+  public long getOpenEndedTermCount() {
+    return this.openTermCount;
+  }
+
+
+  /**
+   * Gets the number of postings of open-ended interval terms, one per shift
+   * level of each open-ended interval.
+   * @return the number of postings
+   */
+  public long getOpenEndedPostingCount() {
+    return this.openPostingCount;
+  }
+
+
+  /**
+   * @return the number of distinct terms at all shifts, including
+   *     open-ended interval terms.
+   */
+  public long getTotalTermCount() {
+    long total = this.openTermCount;
+    for (long termCount : this.termCounts) {
+      total += termCount;
+    }
+    return total;
+  }
+
+
+  /**
+   * @return the number of postings at all shifts, including open-ended
+   *     interval terms.
+   */
+  public long getTotalPostingCount() {
+    long total = this.openPostingCount;
+    for (long postingCount : this.postingCounts) {
+      total += postingCount;
+    }
+    return total;
+  }
+
+
+  /**
+   * Gets the average number of value tokens per document.  Documents with
+   * several intervals, such as those of set fields, count all of their
+   * tokens; see {@link #getTokensPerInterval()}.
+   * @return the average, or NaN if the document count is unknown
+   */
+  public double getTokensPerDocument() {
+    return this.documentCount > 0
+        ? (double) getTotalPostingCount() / this.documentCount
+        : Double.NaN;
+  }
+
+
+  /**
+   * Gets the average number of value tokens per interval.  Intervals are
+   * counted from column terms, so this is only known for fields indexed
+   * with them.
+   * @return the average, or NaN if the interval count is unknown
+   */
+  public double getTokensPerInterval() {
+    return this.intervalCount > 0
+        ? (double) getTotalPostingCount() / this.intervalCount
+        : Double.NaN;
+  }
+
+
+  /**
+   * Prints the statistics as a table.
+   * @param out the stream to print to
+   */
+  public void print(final PrintStream out) {
+    if (this.intervalCount >= 0) {
+      out.printf("field %s: %s, %d documents, %d intervals, "
+          + "%.2f tokens per interval%n", this.field, this.schema,
+          this.documentCount, this.intervalCount, getTokensPerInterval());
+    } else {
+      out.printf("field %s: %s, %d documents, %.2f tokens per document%n",
+          this.field, this.schema, this.documentCount,
+          getTokensPerDocument());
+    }
+    out.printf("%6s %12s %14s %10s%n", "shift", "terms", "postings", "share");
+    final long totalPostings = getTotalPostingCount();
+    for (int shift : getShifts()) {
+      out.printf("%6d %12d %14d %9.1f%%%n", shift, this.termCounts[shift],
+          this.postingCounts[shift],
+          100.0 * this.postingCounts[shift] / totalPostings);
+    }
+    if (this.openTermCount > 0) {
+      out.printf("%6s %12d %14d %9.1f%%%n", "open", this.openTermCount,
+          this.openPostingCount, 100.0 * this.openPostingCount / totalPostings);
+    }
+    out.printf("%6s %12d %14d%n", "total", getTotalTermCount(), totalPostings);
+  }
+
+
+  @Override
+  public String toString() {
+    return "IntervalIndexStats{" + this.field + ", " + this.schema
+        + ", documents=" + this.documentCount
+        + (this.intervalCount >= 0 ? ", intervals=" + this.intervalCount : "")
+        + ", terms=" + getTotalTermCount()
+        + ", postings=" + getTotalPostingCount() + '}';
+  }
+
+
+  /**
+   * Prints interval field statistics and a precision step recommendation.
+   *
+   * <p>Usage: {@code IntervalIndexStats <index dir> <interval field>
+   * [<stored interval field> <query width>...]}.  With a stored field of
+   * "a-b" strings, up to 10000 stored intervals are sampled and every
+   * precision step is simulated against queries of the given widths
+   * starting at sampled interval starts.  A width of 0 simulates point
+   * queries.
+   * @param args the command line arguments
+   * @throws IOException if IO issues occur
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: IntervalIndexStats <index dir> "
+          + "<interval field> [<stored interval field> <query width>...]");
+      System.exit(1);
+    }
+
+    final IndexReader reader =
+        IndexReader.open(FSDirectory.open(new File(args[0])));
+    try {
+      final IntervalIndexStats stats = read(reader, args[1]);
+      stats.print(System.out);
+      if (args.length < 3) {
+        return;
+      }
+
+      final List<LongInterval> sample = Lists.newArrayList();
+      final int stride = Math.max(1, reader.maxDoc() / 10000);
+      int sampledDocuments = 0;
+      for (int doc = 0; doc < reader.maxDoc(); doc += stride) {
+        if (reader.isDeleted(doc)) {
+          continue;
+        }
+        sampledDocuments++;
+        final Document document = reader.document(doc);
+        for (String value : document.getValues(args[2])) {
+          sample.add(LongInterval.valueOf(value));
+        }
+      }
+
+      final List<LongInterval> queries = Lists.newArrayList();
+      for (int i = 3; i < args.length; i++) {
+        final long width = Long.parseLong(args[i]);
+        for (int j = 0; j < sample.size(); j += 10) {
+          final long start = sample.get(j).getStart();
+          queries.add(new LongInterval(start, start + width));
+        }
+      }
+
+      final long intervalCount = (long) sample.size()
+          * reader.numDocs() / Math.max(1, sampledDocuments);
+      new PrecisionStepAdvisor(sample, intervalCount)
+          .print(queries, System.out);
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Parses {@code "a-b"} intervals without creating intermediate strings.
+ *
+ * <p>Either bound may be negative, so {@code "-5--2"} is the interval from
+ * -5 to -2.  Whitespace (any character up to {@code ' '}, as in
+ * {@link String#trim()}) is allowed around both bounds.  Malformed input
+ * throws {@link NumberFormatException}, like {@link Long#parseLong}.
+ *
+ * <p>A parser holds the bounds of the last interval it parsed, so one
+ * instance can be reused across many lines but not shared between threads.
+ * {@link #parseFile} and {@link #parseLines} parse one interval per line
+ * into a packed array of {@code start, end} pairs.
+ */
+public final class IntervalParser {
+  /**
+   * Bytes mapped at a time by {@link #parseFile}.
+   */
+  private static final int MAP_SIZE = 1 << 30;
+
+
+  /**
+   * The text being parsed, if it is a char sequence.
+   */
+  private CharSequence sequence;
+
+  /**
+   * The text being parsed, if it is a char array.
+   */
+  private char[] chars;
+
+  /**
+   * The text being parsed, if it is ASCII bytes.
+   */
+  private ByteBuffer bytes;
+
+  /**
+   * The position of the next character to parse.
+   */
+  private int position;
+
+  /**
+   * The end of the text being parsed.
+   */
+  private int limit;
+
+  /**
+   * The start of the last interval parsed.
+   */
+  private long start;
+
+  /**
+   * The end of the last interval parsed.
+   */
+  private long end;
+
+
+  /**
+   * @return the start of the last interval parsed
+   */
+  public long getStart() {
+    return this.start;
+  }
+
+
+  /**
+   * @return the end of the last interval parsed
+   */
+  public long getEnd() {
+    return this.end;
+  }
+
+
+  /**
+   * Parses an interval.
+   * @param text the text to parse
+   * @return this parser, holding the interval
+   * @throws NumberFormatException if the text isn't an interval
+   */
+  public IntervalParser parse(final CharSequence text) {
+    return parse(text, 0, text.length());
+  }
+
+
+  /**
+   * Parses an interval from part of a char sequence.
+   * @param text the text to parse
+   * @param offset the index of the first character to parse
+   * @param length the number of characters to parse
+   * @return this parser, holding the interval
+   * @throws NumberFormatException if the text isn't an interval
+   */
+  public IntervalParser parse(final CharSequence text,
+                              final int offset,
+                              final int length) {
+    this.sequence = text;
+    try {
+      return parse(offset, length);
+    } finally {
+      this.sequence = null;
+    }
+  }
+
+
+  /**
+   * Parses an interval from part of a char array.
+   * @param text the text to parse
+   * @param offset the index of the first character to parse
+   * @param length the number of characters to parse
+   * @return this parser, holding the interval
+   * @throws NumberFormatException if the text isn't an interval
+   */
+  public IntervalParser parse(final char[] text,
+                              final int offset,
+                              final int length) {
+    this.chars = text;
+    try {
+      return parse(offset, length);
+    } finally {
+      this.chars = null;
+    }
+  }
+
+
+  /**
+   * Parses an interval from ASCII bytes.  The buffer's position is not
+   * changed.
+   * @param text the text to parse
+   * @param offset the absolute index of the first byte to parse
+   * @param length the number of bytes to parse
+   * @return this parser, holding the interval
+   * @throws NumberFormatException if the text isn't an interval
+   */
+  public IntervalParser parse(final ByteBuffer text,
+                              final int offset,
+                              final int length) {
+    this.bytes = text;
+    try {
+      return parse(offset, length);
+    } finally {
+      this.bytes = null;
+    }
+  }
+
+
+  /**
+   * Parses an interval from the current text.
+   * @param offset the index of the first character to parse
+   * @param length the number of characters to parse
+   * @return this parser, holding the interval
+   */
+  private IntervalParser parse(final int offset, final int length) {
+    this.position = offset;
+    this.limit = offset + length;
+    final long parsedStart = parseLong(offset);
+    skipWhitespace();
+    if (this.position == this.limit || charAt(this.position) != '-') {
+      throw invalid(offset);
+    }
+    this.position++;
+    final long parsedEnd = parseLong(offset);
+    skipWhitespace();
+    if (this.position != this.limit) {
+      throw invalid(offset);
+    }
+    this.start = parsedStart;
+    this.end = parsedEnd;
+    return this;
+  }
+
+
+  /**
+   * Parses a long at the current position, after optional whitespace.
+   * Accumulates negatively, like {@link Long#parseLong}, so that
+   * {@link Long#MIN_VALUE} parses.
+   * @param offset the start of the interval, for error messages
+   * @return the long
+   */
+  private long parseLong(final int offset) {
+    skipWhitespace();
+    boolean negative = false;
+    if (this.position < this.limit && charAt(this.position) == '-') {
+      negative = true;
+      this.position++;
+    }
+    final long bound = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    final long multiplyBound = bound / 10;
+    final int first = this.position;
+    long result = 0;
+    while (this.position < this.limit) {
+      final int digit = charAt(this.position) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (result < multiplyBound) {
+        throw invalid(offset);
+      }
+      result *= 10;
+      if (result < bound + digit) {
+        throw invalid(offset);
+      }
+      result -= digit;
+      this.position++;
+    }
+    if (this.position == first) {
+      throw invalid(offset);
+    }
+    return negative ? result : -result;
+  }
+
+
+  /**
+   * Advances past whitespace.
+   */
+  private void skipWhitespace() {
+    while (this.position < this.limit && charAt(this.position) <= ' ') {
+      this.position++;
+    }
+  }
+
+
+  /**
+   * Reads a character of the current text.
+   * @param index the index of the character
+   * @return the character
+   */
+  private char charAt(final int index) {
+    if (this.chars != null) {
+      return this.chars[index];
+    } else if (this.bytes != null) {
+      return (char) (this.bytes.get(index) & 0xff);
+    }
+    return this.sequence.charAt(index);
+  }
+
+
+  /**
+   * Creates the exception for malformed text.
+   * @param offset the start of the interval
+   * @return the exception
+   */
+  private NumberFormatException invalid(final int offset) {
+    final StringBuilder text = new StringBuilder();
+    for (int i = offset; i < this.limit; i++) {
+      text.append(charAt(i));
+    }
+    return new NumberFormatException(
+        "For input string: \"" + text + "\"");
+  }
+
+
+  /**
+   * Parses one interval per line of ASCII bytes, skipping blank lines.  The
+   * buffer's position is not changed.
+   * @param text the lines, from the buffer's position to its limit
+   * @return the intervals as {@code start, end} pairs
+   * @throws NumberFormatException if a line isn't an interval
+   */
+  public static long[] parseLines(final ByteBuffer text) {
+    final PackedIntervals result = new PackedIntervals();
+    result.addLines(text, text.position(), text.limit());
+    return result.toArray();
+  }
+
+
+  /**
+   * Parses one interval per line of an ASCII file, skipping blank lines.
+   * The file is memory-mapped rather than read through the heap.
+   * @param file the file to parse
+   * @return the intervals as {@code start, end} pairs
+   * @throws IOException if the file can't be read
+   * @throws NumberFormatException if a line isn't an interval
+   */
+  public static long[] parseFile(final File file) throws IOException {
+    final PackedIntervals result = new PackedIntervals();
+    final RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = input.getChannel();
+      final long size = channel.size();
+      long offset = 0;
+      while (offset < size) {
+        final int length = (int) Math.min(MAP_SIZE, size - offset);
+        final MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        // Stop at the last line break so no line straddles two mappings.
+        int parsed = length;
+        if (offset + length < size) {
+          while (parsed > 0 && buffer.get(parsed - 1) != '\n') {
+            parsed--;
+          }
+          if (parsed == 0) {
+            throw new IOException("Line longer than " + MAP_SIZE + " bytes");
+          }
+        }
+        result.addLines(buffer, 0, parsed);
+        offset += parsed;
+      }
+    } finally {
+      input.close();
+    }
+    return result.toArray();
+  }
+
+
+  /**
+   * A growable array of {@code start, end} pairs.
+   */
+  private static final class PackedIntervals {
+    /**
+     * Reused to parse each line.
+     */
+    private final IntervalParser parser = new IntervalParser();
+
+    /**
+     * The pairs parsed so far.
+     */
+    private long[] values = new long[64];
+
+    /**
+     * The number of values used.
+     */
+    private int size = 0;
+
+
+    /**
+     * Parses the lines in part of a buffer.
+     * @param text the buffer
+     * @param from the index of the first byte
+     * @param to the index after the last byte
+     */
+    void addLines(final ByteBuffer text, final int from, final int to) {
+      int lineStart = from;
+      for (int i = from; i <= to; i++) {
+        if (i == to || text.get(i) == '\n') {
+          if (!isBlank(text, lineStart, i)) {
+            this.parser.parse(text, lineStart, i - lineStart);
+            add(this.parser.getStart(), this.parser.getEnd());
+          }
+          lineStart = i + 1;
+        }
+      }
+    }
+
+
+    /**
+     * Returns whether part of a buffer is whitespace.
+     * @param text the buffer
+     * @param from the index of the first byte
+     * @param to the index after the last byte
+     * @return whether every byte is whitespace
+     */
+    private static boolean isBlank(final ByteBuffer text,
+                                   final int from,
+                                   final int to) {
+      for (int i = from; i < to; i++) {
+        if ((text.get(i) & 0xff) > ' ') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+
+    /**
+     * Adds a pair.
+     * @param start the start of the interval
+     * @param end the end of the interval
+     */
+    private void add(final long start, final long end) {
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size << 1);
+      }
+      this.values[this.size++] = start;
+      this.values[this.size++] = end;
+    }
+
+
+    /**
+     * @return the pairs, trimmed to size
+     */
+    long[] toArray() {
+      return Arrays.copyOf(this.values, this.size);
+    }
+  }
+}
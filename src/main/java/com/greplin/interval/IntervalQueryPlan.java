@@ -0,0 +1,705 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cheapest way to run an interval query on one segment.
+ *
+ * <p>Costs are estimated from the terms in the query's range at each shift
+ * level.  Up to {@value #SAMPLE_TERMS} terms are read from the start of
+ * each range, and their document frequencies are extrapolated over the
+ * query width at that level.
+ *
+ * <ul>
+ * <li>{@link Strategy#TERMS} enumerates the terms and ORs their postings
+ *     into a bit set.  The bit set costs a pass over the segment, but each
+ *     posting is cheap.
+ * <li>{@link Strategy#DISJUNCTION} merges the postings of the terms lazily,
+ *     which suits queries matching few documents through few terms.
+ * <li>{@link Strategy#COLUMN} scans a loaded, complete
+ *     {@link IntervalColumn}, which suits queries so wide that most terms of
+ *     the field would be read.
+ * <li>{@link Strategy#TREE} searches a built {@link IntervalTree}.
+ * </ul>
+ *
+ * <p>Plans are chosen per segment by the interval query filters and shown
+ * in their explanations.  When the segment has neither a tree nor a loaded
+ * column, {@link #forSearch} only weighs {@link Strategy#TERMS} against
+ * {@link Strategy#DISJUNCTION}, so it reads just the first term of each
+ * range, whose document frequency is extrapolated like a full sample.
+ * Point queries skip even that, since they are planned
+ * {@link Strategy#TERMS} from their exact terms, one per level.
+ */
+final class IntervalQueryPlan {
+  /**
+   * Ways to run an interval query.
+   */
+  enum Strategy {
+    /**
+     * Search the segment's interval tree.
+     */
+    TREE,
+
+    /**
+     * Scan the segment's interval column.
+     */
+    COLUMN,
+
+    /**
+     * Enumerate terms in to a bit set.
+     */
+    TERMS,
+
+    /**
+     * Merge the postings of the terms lazily.
+     */
+    DISJUNCTION
+  }
+
+
+  /**
+   * The number of terms read at each shift level to estimate its density.
+   */
+  private static final int SAMPLE_TERMS = 16;
+
+  /**
+   * The number of terms read at each shift level when only the term
+   * strategies are available.
+   */
+  private static final int BOUND_SAMPLE_TERMS = 1;
+
+  /**
+   * Relative cost of a dictionary seek.
+   */
+  private static final double SEEK_COST = 200;
+
+  /**
+   * Relative cost of reading a term.
+   */
+  private static final double TERM_COST = 10;
+
+  /**
+   * Relative cost of opening a term's postings for a lazy merge.
+   */
+  private static final double OPEN_COST = 100;
+
+  /**
+   * Relative cost of reading a posting in to a bit set.
+   */
+  private static final double POSTING_COST = 2;
+
+  /**
+   * Relative cost of moving a posting through a heap level.
+   */
+  private static final double HEAP_COST = 4;
+
+  /**
+   * Relative cost of allocating and iterating one word of a bit set.
+   */
+  private static final double BIT_SET_WORD_COST = 2;
+
+  /**
+   * Relative cost of checking one interval in a column or tree.
+   */
+  private static final double INTERVAL_COST = 3;
+
+
+  /**
+   * The chosen strategy.
+   */
+  private final Strategy strategy;
+
+  /**
+   * The start of the query.
+   */
+  private final long start;
+
+  /**
+   * The end of the query.
+   */
+  private final long end;
+
+  /**
+   * The segment's tree, if built.
+   */
+  private final IntervalTree tree;
+
+  /**
+   * The segment's column, if loaded and complete.
+   */
+  private final IntervalColumn column;
+
+  /**
+   * The estimated number of terms in the query's ranges.
+   */
+  private final double terms;
+
+  /**
+   * The estimated number of postings of those terms.
+   */
+  private final double postings;
+
+  /**
+   * Whether every term in the query's ranges was read while estimating.
+   */
+  private final boolean exact;
+
+  /**
+   * The estimated cost of each strategy, infinite when unavailable.
+   */
+  private final double[] costs;
+
+  /**
+   * Whether the segment holds open-ended intervals in the field.
+   */
+  private final boolean openEnded;
+
+
+  /**
+   * Creates a plan.
+   * @param strategy the chosen strategy
+   * @param start the start of the query
+   * @param end the end of the query
+   * @param tree the tree, or null
+   * @param column the column, or null
+   * @param terms the estimated number of terms
+   * @param postings the estimated number of postings
+   * @param exact whether the estimates are exact
+   * @param costs the estimated cost of each strategy
+   * @param openEnded whether the segment holds open-ended intervals
+   */
+  private IntervalQueryPlan(final Strategy strategy,
+                            final long start,
+                            final long end,
+                            final IntervalTree tree,
+                            final IntervalColumn column,
+                            final double terms,
+                            final double postings,
+                            final boolean exact,
+                            final double[] costs,
+                            final boolean openEnded) {
+    this.strategy = strategy;
+    this.start = start;
+    this.end = end;
+    this.tree = tree;
+    this.column = column;
+    this.terms = terms;
+    this.postings = postings;
+    this.exact = exact;
+    this.costs = costs;
+    this.openEnded = openEnded;
+  }
+
+
+  /**
+   * Plans a query to run.  Terms are sampled fully only when the segment has
+   * a tree or a loaded, complete column to weigh against them; otherwise
+   * the term strategies are chosen between from the first term of each
+   * range, and point queries aren't sampled at all.
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param schema the schema of the field in this segment
+   * @param forced the strategy to use if available, or null to choose
+   * @return the plan
+   * @throws IOException if IO issues occur
+   */
+  static IntervalQueryPlan forSearch(final IndexReader reader,
+                                     final String field,
+                                     final long start,
+                                     final long end,
+                                     final IntervalSchema schema,
+                                     final Strategy forced)
+      throws IOException {
+    if ((forced != null && forced != Strategy.TERMS)
+        || tree(reader, field, schema) != null
+        || column(reader, field, schema) != null) {
+      return create(reader, field, start, end, schema, forced, SAMPLE_TERMS);
+    }
+    if (forced == null && start != end) {
+      return create(
+          reader, field, start, end, schema, null, BOUND_SAMPLE_TERMS);
+    }
+    final double[] costs = new double[Strategy.values().length];
+    Arrays.fill(costs, Double.NaN);
+    return new IntervalQueryPlan(Strategy.TERMS, start, end, null, null,
+        Double.NaN, Double.NaN, false, costs,
+        openEnded(reader, field, schema));
+  }
+
+
+  /**
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param schema the schema of the field in this segment
+   * @return whether the segment holds open-ended intervals in the field
+   * @throws IOException if IO issues occur
+   */
+  private static boolean openEnded(final IndexReader reader,
+                                   final String field,
+                                   final IntervalSchema schema)
+      throws IOException {
+    return schema.getValueSize() == 64
+        && IntervalTerms.hasOpenEndedTerms(reader, field);
+  }
+
+
+  /**
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param schema the schema of the field in this segment
+   * @return the segment's built tree, or null
+   */
+  private static IntervalTree tree(final IndexReader reader,
+                                   final String field,
+                                   final IntervalSchema schema) {
+    return schema.getValueSize() == 64
+        ? IntervalTree.getIfBuilt(reader, field) : null;
+  }
+
+
+  /**
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param schema the schema of the field in this segment
+   * @return the segment's loaded and complete column, or null
+   */
+  private static IntervalColumn column(final IndexReader reader,
+                                       final String field,
+                                       final IntervalSchema schema) {
+    final IntervalColumn column = schema.getValueSize() == 64
+        ? IntervalColumn.getIfLoaded(reader, field) : null;
+    return column != null && column.isComplete() ? column : null;
+  }
+
+
+  /**
+   * Plans a query for intervals intersecting a range.
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param schema the schema of the field in this segment
+   * @return the plan
+   * @throws IOException if IO issues occur
+   */
+  static IntervalQueryPlan create(final IndexReader reader,
+                                  final String field,
+                                  final long start,
+                                  final long end,
+                                  final IntervalSchema schema)
+      throws IOException {
+    return create(reader, field, start, end, schema, null);
+  }
+
+
+  /**
+   * Plans a query, optionally forcing a strategy.
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param schema the schema of the field in this segment
+   * @param forced the strategy to use if available, or null to choose
+   * @return the plan
+   * @throws IOException if IO issues occur
+   */
+  static IntervalQueryPlan create(final IndexReader reader,
+                                  final String field,
+                                  final long start,
+                                  final long end,
+                                  final IntervalSchema schema,
+                                  final Strategy forced) throws IOException {
+    return create(reader, field, start, end, schema, forced, SAMPLE_TERMS);
+  }
+
+
+  /**
+   * Plans a query from a sample of the terms in its ranges.
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param schema the schema of the field in this segment
+   * @param forced the strategy to use if available, or null to choose
+   * @param sampleTerms the number of terms to read at each shift level
+   * @return the plan
+   * @throws IOException if IO issues occur
+   */
+  private static IntervalQueryPlan create(final IndexReader reader,
+                                          final String field,
+                                          final long start,
+                                          final long end,
+                                          final IntervalSchema schema,
+                                          final Strategy forced,
+                                          final int sampleTerms)
+      throws IOException {
+    final int maxDoc = reader.maxDoc();
+    final Term template = new Term(field);
+    double terms = 0;
+    double postings = 0;
+    boolean exact = true;
+    int seeks = 0;
+    final boolean openEnded = openEnded(reader, field, schema);
+    final List<String> bounds =
+        IntervalTerms.intersectionBounds(start, end, schema);
+    for (int i = 0; i < bounds.size(); i += 2) {
+      final String lower = bounds.get(i);
+      final String upper = bounds.get(i + 1);
+      if (lower.charAt(0) == IntervalTerms.OPEN_PREFIX && !openEnded) {
+        continue;
+      }
+      final int shift = IntervalTerms.shiftOf(lower, schema.getValueSize());
+      final long low = IntervalTerms.blockStart(lower, schema.getValueSize());
+      final long high = IntervalTerms.blockStart(upper, schema.getValueSize());
+      final TermEnum termEnum = reader.terms(template.createTerm(lower));
+      try {
+        seeks++;
+        int count = 0;
+        long docFreq = 0;
+        String last = null;
+        boolean exhausted = true;
+        do {
+          final Term term = termEnum.term();
+          if (term == null || term.field() != field
+              || term.text().compareTo(upper) > 0) {
+            break;
+          }
+          if (count == sampleTerms) {
+            exhausted = false;
+            break;
+          }
+          count++;
+          docFreq += termEnum.docFreq();
+          last = term.text();
+        } while (termEnum.next());
+
+        if (exhausted) {
+          terms += count;
+          postings += docFreq;
+        } else {
+          exact = false;
+          final double scale = ((double) (high >> shift)
+              - (double) (low >> shift) + 1)
+              / ((double) (IntervalTerms.blockStart(
+                      last, schema.getValueSize()) >> shift)
+                  - (double) (low >> shift) + 1);
+          terms += count * scale;
+          postings += docFreq * scale;
+        }
+      } finally {
+        termEnum.close();
+      }
+    }
+
+    final double[] costs = new double[Strategy.values().length];
+    final IntervalTree tree = tree(reader, field, schema);
+    final IntervalColumn column = column(reader, field, schema);
+    final double matches = Math.min(postings, maxDoc);
+    costs[Strategy.TREE.ordinal()] = tree == null
+        ? Double.POSITIVE_INFINITY
+        : INTERVAL_COST * (log2(tree.size()) + matches)
+            + BIT_SET_WORD_COST * maxDoc / 64;
+    costs[Strategy.COLUMN.ordinal()] = column == null
+        ? Double.POSITIVE_INFINITY
+        : INTERVAL_COST * (column.getStarts().length + maxDoc)
+            + BIT_SET_WORD_COST * maxDoc / 64;
+    costs[Strategy.TERMS.ordinal()] =
+        SEEK_COST * seeks + TERM_COST * terms + POSTING_COST * postings
+            + BIT_SET_WORD_COST * maxDoc / 64;
+    costs[Strategy.DISJUNCTION.ordinal()] =
+        SEEK_COST * seeks + (TERM_COST + OPEN_COST) * terms
+            + HEAP_COST * postings * Math.max(1, log2(terms));
+
+    Strategy best = null;
+    if (forced != null && costs[forced.ordinal()] < Double.POSITIVE_INFINITY) {
+      best = forced;
+    } else {
+      for (Strategy candidate : Strategy.values()) {
+        if (best == null
+            || costs[candidate.ordinal()] < costs[best.ordinal()]) {
+          best = candidate;
+        }
+      }
+    }
+    return new IntervalQueryPlan(
+        best, start, end, tree, column, terms, postings, exact, costs,
+        openEnded);
+  }
+
+
+  /**
+   * @param value a non-negative value
+   * @return the base 2 logarithm of the value, 0 for values below 1
+   */
+  private static double log2(final double value) {
+    return value < 1 ? 0 : Math.log(value) / Math.log(2);
+  }
+
+
+  /**
+   * @return the chosen strategy
+   */
+  Strategy getStrategy() {
+    return this.strategy;
+  }
+
+
+  /**
+   * @return the estimated number of postings in the query's ranges,
+   *     including those of deleted documents
+   */
+  double getEstimatedPostings() {
+    return this.postings;
+  }
+
+
+  /**
+   * @return whether the estimates are exact, because every term in the
+   *     query's ranges was read
+   */
+  boolean isExactEstimate() {
+    return this.exact;
+  }
+
+
+  /**
+   * @return whether the segment holds open-ended intervals in the field,
+   *     whose term ranges are otherwise skipped
+   */
+  boolean hasOpenEndedTerms() {
+    return this.openEnded;
+  }
+
+
+  /**
+   * @return the segment's loaded and complete column, or null
+   */
+  IntervalColumn getColumn() {
+    return this.column;
+  }
+
+
+  /**
+   * @return whether the strategy reads terms
+   */
+  boolean needsTerms() {
+    return this.strategy == Strategy.TERMS
+        || this.strategy == Strategy.DISJUNCTION;
+  }
+
+
+  /**
+   * Runs the {@link Strategy#TREE} or {@link Strategy#COLUMN} strategy.
+   * @param reader the segment reader
+   * @return the matching live documents
+   */
+  FixedBitSet searchIntervals(final IndexReader reader) {
+    final FixedBitSet result = new FixedBitSet(reader.maxDoc());
+    if (this.strategy == Strategy.TREE) {
+      this.tree.intersecting(reader, this.start, this.end, result);
+    } else if (this.strategy == Strategy.COLUMN) {
+      for (int doc = 0; doc < reader.maxDoc(); doc++) {
+        if (this.column.intersects(doc, this.start, this.end)
+            && !reader.isDeleted(doc)) {
+          result.set(doc);
+        }
+      }
+    } else {
+      throw new IllegalStateException("Plan reads terms: " + this);
+    }
+    return result;
+  }
+
+
+  /**
+   * Creates a set that lazily merges the postings of terms, for the
+   * {@link Strategy#DISJUNCTION} strategy.
+   * @param reader the segment reader
+   * @param terms the terms
+   * @return the documents with any of the terms
+   */
+  static DocIdSet disjunction(final IndexReader reader,
+                              final List<Term> terms) {
+    if (terms.isEmpty()) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    final Term[] copy = terms.toArray(new Term[terms.size()]);
+    return new DocIdSet() {
+      @Override
+      public DocIdSetIterator iterator() throws IOException {
+        return new DisjunctionIterator(reader, copy);
+      }
+    };
+  }
+
+
+  @Override
+  public String toString() {
+    if (Double.isNaN(this.terms)) {
+      return this.strategy + " (not sampled: "
+          + (this.start == this.end ? "point query" : "forced")
+          + ", no tree or loaded column)";
+    }
+    final StringBuilder result = new StringBuilder()
+        .append(this.strategy)
+        .append(String.format(" (estimated %.0f terms, %.0f postings; cost",
+            this.terms, this.postings));
+    for (Strategy candidate : Strategy.values()) {
+      final double cost = this.costs[candidate.ordinal()];
+      result.append(' ').append(candidate).append('=')
+          .append(cost == Double.POSITIVE_INFINITY
+              ? "n/a" : String.format("%.0f", cost));
+    }
+    return result.append(')').toString();
+  }
+
+
+  /**
+   * Merges the postings of several terms with a heap ordered by document.
+   * Postings are closed as they run out, so all are closed once the
+   * iterator is exhausted; like Lucene's own scorers, an iterator abandoned
+   * earlier leaves its remaining postings to the reader.
+   */
+  private static final class DisjunctionIterator extends DocIdSetIterator {
+    /**
+     * Postings not yet exhausted, a heap on their current document.
+     */
+    private final TermDocs[] heap;
+
+    /**
+     * The number of postings in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * The current document.
+     */
+    private int doc = -1;
+
+
+    /**
+     * Opens the postings of every term.
+     * @param reader the segment reader
+     * @param terms the terms
+     * @throws IOException if IO issues occur
+     */
+    DisjunctionIterator(final IndexReader reader, final Term[] terms)
+        throws IOException {
+      this.heap = new TermDocs[terms.length];
+      boolean opened = false;
+      try {
+        for (Term term : terms) {
+          final TermDocs termDocs = reader.termDocs(term);
+          if (termDocs.next()) {
+            this.heap[this.size++] = termDocs;
+          } else {
+            termDocs.close();
+          }
+        }
+        opened = true;
+      } finally {
+        if (!opened) {
+          close();
+        }
+      }
+      for (int i = (this.size >>> 1) - 1; i >= 0; i--) {
+        siftDown(i);
+      }
+    }
+
+
+    @Override
+    public int docID() {
+      return this.doc;
+    }
+
+
+    @Override
+    public int nextDoc() throws IOException {
+      return advance(this.doc + 1);
+    }
+
+
+    @Override
+    public int advance(final int target) throws IOException {
+      while (this.size > 0 && this.heap[0].doc() < target) {
+        final TermDocs top = this.heap[0];
+        if (top.skipTo(target)) {
+          siftDown(0);
+        } else {
+          top.close();
+          this.heap[0] = this.heap[--this.size];
+          this.heap[this.size] = null;
+          siftDown(0);
+        }
+      }
+      this.doc = this.size == 0 ? NO_MORE_DOCS : this.heap[0].doc();
+      return this.doc;
+    }
+
+
+    /**
+     * Closes the postings still in the heap, when opening them fails.
+     * @throws IOException if IO issues occur
+     */
+    private void close() throws IOException {
+      while (this.size > 0) {
+        this.heap[--this.size].close();
+        this.heap[this.size] = null;
+      }
+    }
+
+
+    /**
+     * Restores the heap below an index.
+     * @param index the index whose postings may have advanced
+     */
+    private void siftDown(final int index) {
+      int i = index;
+      while (true) {
+        final int left = (i << 1) + 1;
+        if (left >= this.size) {
+          return;
+        }
+        final int right = left + 1;
+        final int child = right < this.size
+            && this.heap[right].doc() < this.heap[left].doc() ? right : left;
+        if (this.heap[i].doc() <= this.heap[child].doc()) {
+          return;
+        }
+        final TermDocs swap = this.heap[i];
+        this.heap[i] = this.heap[child];
+        this.heap[child] = swap;
+        i = child;
+      }
+    }
+  }
+}
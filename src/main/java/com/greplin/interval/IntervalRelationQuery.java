@@ -0,0 +1,564 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Query that matches 64 bit intervals standing in a given relation to a
+ * query interval, such as containing it or lying within it.
+ *
+ * <p>An indexed interval is the disjoint union of its segments, so the
+ * postings of the terms at a point, or in a range, give exactly the
+ * documents with an interval covering that point, or intersecting that
+ * range.  Each {@link Relation} is a combination of a few such sets; for
+ * instance an interval contains the query exactly when it covers both of
+ * the query's bounds, and an interval intersecting the query lies within
+ * it unless it covers the value just before or after it.  Sets are read at
+ * points or the query range wherever possible, since ranges reaching to
+ * the ends of the value space read most postings of the field.  Documents
+ * are accepted or rejected on those sets alone, without reading their
+ * intervals.
+ *
+ * <p>That is exact for documents with one interval.  Relations hold for a
+ * document when any of its intervals satisfies them, so documents that the
+ * field's {@link IntervalColumn} shows to hold several intervals are
+ * verified against their values instead.  Documents of fields indexed
+ * without columns can't be verified and are matched from the sets alone,
+ * which is only exact for documents holding one interval.
+ */
+public final class IntervalRelationQuery extends IntervalConstantScoreQuery {
+  /**
+   * Relations between an indexed interval {@code [a, b]} and the query
+   * interval {@code [s, e]}.
+   */
+  public enum Relation {
+    /**
+     * The intervals share a value: {@code a <= e && b >= s}.
+     */
+    INTERSECTS {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a <= e && b >= s;
+      }
+    },
+
+    /**
+     * The indexed interval lies within the query: {@code s <= a && b <= e}.
+     */
+    WITHIN {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return s <= a && b <= e;
+      }
+    },
+
+    /**
+     * The indexed interval contains the query: {@code a <= s && e <= b}.
+     */
+    CONTAINS {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a <= s && e <= b;
+      }
+    },
+
+    /**
+     * The intervals are the same: {@code a == s && b == e}.
+     */
+    EQUALS {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a == s && b == e;
+      }
+    },
+
+    /**
+     * The indexed interval ends before the query starts: {@code b < s}.
+     */
+    BEFORE {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return b < s;
+      }
+    },
+
+    /**
+     * The indexed interval starts after the query ends: {@code a > e}.
+     */
+    AFTER {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a > e;
+      }
+    },
+
+    /**
+     * The indexed interval starts before the query: {@code a < s}.
+     */
+    STARTS_BEFORE {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a < s;
+      }
+    },
+
+    /**
+     * The indexed interval ends after the query: {@code b > e}.
+     */
+    ENDS_AFTER {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return b > e;
+      }
+    },
+
+    /**
+     * The indexed interval overlaps the start of the query only:
+     * {@code a < s <= b < e}.
+     */
+    OVERLAPS_LEFT {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return a < s && s <= b && b < e;
+      }
+    },
+
+    /**
+     * The indexed interval overlaps the end of the query only:
+     * {@code s < a <= e < b}.
+     */
+    OVERLAPS_RIGHT {
+      @Override
+      boolean holds(final long a, final long b, final long s, final long e) {
+        return s < a && a <= e && e < b;
+      }
+    };
+
+
+    /**
+     * Checks the relation.
+     * @param a the start of the indexed interval
+     * @param b the end of the indexed interval
+     * @param s the start of the query
+     * @param e the end of the query
+     * @return whether the relation holds
+     */
+    abstract boolean holds(long a, long b, long s, long e);
+  }
+
+
+  /**
+   * The query interval and relation, as displayed.
+   */
+  private final String description;
+
+
+  /**
+   * Creates a query to find intervals in a relation to a query interval.
+   * @param name The name of the field.
+   * @param start The start of the query interval.
+   * @param end The end of the query interval.
+   * @param relation The relation indexed intervals must have to the query.
+   */
+  public IntervalRelationQuery(final String name,
+                               final long start,
+                               final long end,
+                               final Relation relation) {
+    this(name, start, end, relation,
+        NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query to find intervals in a relation to a query interval.
+   * @param name The name of the field.
+   * @param start The start of the query interval.
+   * @param end The end of the query interval.
+   * @param relation The relation indexed intervals must have to the query.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @throws IllegalArgumentException if the query interval is empty
+   */
+  public IntervalRelationQuery(final String name,
+                               final long start,
+                               final long end,
+                               final Relation relation,
+                               final int precisionStep) {
+    super(new RelationFilter(name, start, end, relation, precisionStep));
+    if (start > end) {
+      throw new IllegalArgumentException("Empty query interval");
+    }
+    this.description = String.format("%s(%d - %d",
+        relation.name().toLowerCase(), start, end);
+  }
+
+
+  @Override
+  public String toString(final String field) {
+    return String.format("%s, %s)", this.description, field);
+  }
+
+
+  /**
+   * Filter that evaluates a relation on each segment.
+   */
+  private static final class RelationFilter extends Filter {
+    /**
+     * The name of the field.
+     */
+    private final String name;
+
+    /**
+     * The start of the query interval.
+     */
+    private final long start;
+
+    /**
+     * The end of the query interval.
+     */
+    private final long end;
+
+    /**
+     * The relation.
+     */
+    private final Relation relation;
+
+    /**
+     * The precision step used when indexing the field.
+     */
+    private final int precisionStep;
+
+
+    /**
+     * Creates a filter.
+     * @param name the name of the field
+     * @param start the start of the query interval
+     * @param end the end of the query interval
+     * @param relation the relation
+     * @param precisionStep the precision step used when indexing the field
+     */
+    RelationFilter(final String name,
+                   final long start,
+                   final long end,
+                   final Relation relation,
+                   final int precisionStep) {
+      this.name = name.intern();
+      this.start = start;
+      this.end = end;
+      this.relation = relation;
+      this.precisionStep = precisionStep;
+    }
+
+
+    @Override
+    public DocIdSet getDocIdSet(final IndexReader reader) throws IOException {
+      final Sets sets = new Sets(reader, this.name, IntervalSchema.read(
+          reader, this.name, IntervalSchema.uniform(64, this.precisionStep)));
+      final long s = this.start;
+      final long e = this.end;
+      final FixedBitSet result;
+      try {
+        switch (this.relation) {
+          case INTERSECTS:
+            result = sets.intersecting(s, e);
+            break;
+          case WITHIN:
+            // An interval intersecting the query extends past it only if it
+            // covers the value just before or after it.
+            result = sets.intersecting(s, e);
+            sets.remove(result, s - 1, s - 1, s != Long.MIN_VALUE);
+            sets.remove(result, e + 1, e + 1, e != Long.MAX_VALUE);
+            break;
+          case CONTAINS:
+            result = sets.intersecting(s, s);
+            result.and(sets.intersecting(e, e));
+            break;
+          case EQUALS:
+            result = sets.intersecting(s, s);
+            result.and(sets.intersecting(e, e));
+            sets.remove(result, s - 1, s - 1, s != Long.MIN_VALUE);
+            sets.remove(result, e + 1, e + 1, e != Long.MAX_VALUE);
+            break;
+          case BEFORE:
+            result = sets.withField();
+            sets.remove(result, s, Long.MAX_VALUE, true);
+            break;
+          case AFTER:
+            result = sets.withField();
+            sets.remove(result, Long.MIN_VALUE, e, true);
+            break;
+          case STARTS_BEFORE:
+            result = s == Long.MIN_VALUE
+                ? new FixedBitSet(reader.maxDoc())
+                : sets.intersecting(Long.MIN_VALUE, s - 1);
+            break;
+          case ENDS_AFTER:
+            result = e == Long.MAX_VALUE
+                ? new FixedBitSet(reader.maxDoc())
+                : sets.intersecting(e + 1, Long.MAX_VALUE);
+            break;
+          case OVERLAPS_LEFT:
+            if (s == Long.MIN_VALUE) {
+              result = new FixedBitSet(reader.maxDoc());
+            } else {
+              result = sets.intersecting(s - 1, s - 1);
+              result.and(sets.intersecting(s, s));
+              sets.remove(result, e, e, true);
+            }
+            break;
+          case OVERLAPS_RIGHT:
+            if (e == Long.MAX_VALUE) {
+              result = new FixedBitSet(reader.maxDoc());
+            } else {
+              result = sets.intersecting(e, e);
+              result.and(sets.intersecting(e + 1, e + 1));
+              sets.remove(result, s, s, true);
+            }
+            break;
+          default:
+            throw new IllegalStateException(
+                "Unknown relation " + this.relation);
+        }
+      } finally {
+        sets.close();
+      }
+      verifyMultiValued(reader, result);
+      return result;
+    }
+
+
+    /**
+     * Re-evaluates documents holding several intervals from the column.
+     * Only fields with column terms can be verified, so others aren't
+     * un-inverted.
+     * @param reader the segment reader
+     * @param result the documents found from terms, updated in place
+     * @throws IOException if IO issues occur
+     */
+    private void verifyMultiValued(final IndexReader reader,
+                                   final FixedBitSet result)
+        throws IOException {
+      IntervalColumn column = IntervalColumn.getIfLoaded(reader, this.name);
+      if (column == null) {
+        if (!IntervalColumn.hasColumnTerms(reader, this.name)) {
+          return;
+        }
+        column = IntervalColumn.get(reader, this.name);
+      }
+      if (!column.isMultiValued()) {
+        return;
+      }
+      for (int doc = 0; doc < reader.maxDoc(); doc++) {
+        final int count = column.getValueCount(doc);
+        if (count < 2) {
+          continue;
+        }
+        boolean holds = false;
+        for (int i = 0; i < count && !holds; i++) {
+          holds = this.relation.holds(column.getStart(doc, i),
+              column.getEnd(doc, i), this.start, this.end);
+        }
+        if (holds && !reader.isDeleted(doc)) {
+          result.set(doc);
+        } else {
+          result.clear(doc);
+        }
+      }
+    }
+
+
+    @Override
+    public String toString() {
+      return String.format("%s(%d - %d, %s)",
+          this.relation.name().toLowerCase(), this.start, this.end,
+          this.name);
+    }
+
+
+    @Override
+    public int hashCode() {
+      int result = this.name.hashCode();
+      result = 31 * result + (int) (this.start ^ (this.start >>> 32));
+      result = 31 * result + (int) (this.end ^ (this.end >>> 32));
+      result = 31 * result + this.relation.hashCode();
+      return 31 * result + this.precisionStep;
+    }
+
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || o.getClass() != this.getClass()) {
+        return false;
+      }
+      final RelationFilter other = (RelationFilter) o;
+      return other.name == this.name
+          && other.start == this.start
+          && other.end == this.end
+          && other.relation == this.relation
+          && other.precisionStep == this.precisionStep;
+    }
+  }
+
+
+  /**
+   * Reads document sets of a field in a segment from postings.
+   */
+  private static final class Sets {
+    /**
+     * The segment reader.
+     */
+    private final IndexReader reader;
+
+    /**
+     * The interned name of the field.
+     */
+    private final String field;
+
+    /**
+     * The schema of the field in the segment.
+     */
+    private final IntervalSchema schema;
+
+    /**
+     * Reused to read postings.
+     */
+    private final TermDocs termDocs;
+
+    /**
+     * Reused to read postings in bulk.
+     */
+    private final int[] docs = new int[32];
+
+    /**
+     * Reused to read frequencies in bulk.
+     */
+    private final int[] freqs = new int[32];
+
+
+    /**
+     * Opens a segment.
+     * @param reader the segment reader
+     * @param field the interned name of the field
+     * @param schema the schema of the field in the segment
+     * @throws IOException if IO issues occur
+     */
+    Sets(final IndexReader reader,
+         final String field,
+         final IntervalSchema schema) throws IOException {
+      this.reader = reader;
+      this.field = field;
+      this.schema = schema;
+      this.termDocs = reader.termDocs();
+    }
+
+
+    /**
+     * Gets the live documents with an interval intersecting a range.
+     * @param from the start of the range
+     * @param to the end of the range
+     * @return the documents
+     * @throws IOException if IO issues occur
+     */
+    FixedBitSet intersecting(final long from, final long to)
+        throws IOException {
+      final FixedBitSet result = new FixedBitSet(this.reader.maxDoc());
+      or(result, IntervalTerms.intersectionBounds(from, to, this.schema));
+      return result;
+    }
+
+
+    /**
+     * Gets the live documents with the field, which all hold a schema term.
+     * @return the documents
+     * @throws IOException if IO issues occur
+     */
+    FixedBitSet withField() throws IOException {
+      final FixedBitSet result = new FixedBitSet(this.reader.maxDoc());
+      final String prefix = String.valueOf(IntervalSchema.SCHEMA_PREFIX);
+      or(result, Arrays.asList(prefix, prefix + '\uffff'));
+      return result;
+    }
+
+
+    /**
+     * Removes the documents with an interval intersecting a range.
+     * @param result the documents to remove from
+     * @param from the start of the range
+     * @param to the end of the range
+     * @param nonEmpty whether the range exists; nothing is removed if not
+     * @throws IOException if IO issues occur
+     */
+    void remove(final FixedBitSet result,
+                final long from,
+                final long to,
+                final boolean nonEmpty) throws IOException {
+      if (nonEmpty) {
+        result.andNot(intersecting(from, to));
+      }
+    }
+
+
+    /**
+     * ORs the postings of the terms in ranges in to a set.
+     * @param result the set
+     * @param bounds alternating inclusive lower and upper bounds
+     * @throws IOException if IO issues occur
+     */
+    private void or(final FixedBitSet result, final List<String> bounds)
+        throws IOException {
+      final TermEnum terms =
+          new BoundedTermEnum(this.reader, this.field, bounds);
+      try {
+        for (Term term = terms.term(); term != null;
+             term = terms.next() ? terms.term() : null) {
+          this.termDocs.seek(terms);
+          int count;
+          while ((count = this.termDocs.read(this.docs, this.freqs)) != 0) {
+            for (int i = 0; i < count; i++) {
+              result.set(this.docs[i]);
+            }
+          }
+        }
+      } finally {
+        terms.close();
+      }
+    }
+
+
+    /**
+     * Releases the postings.
+     * @throws IOException if IO issues occur
+     */
+    void close() throws IOException {
+      this.termDocs.close();
+    }
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.base.Joiner;
+import com.google.common.primitives.Ints;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Describes how an interval field is indexed: the number of bits in its
+ * values and the shift levels its segments are indexed at.  Schemas are
+ * either {@link #uniform uniform}, with a fixed precision step, or use a
+ * custom schedule of {@link #withShifts shift levels}.
+ *
+ * <p>Interval fields record their schema in the index as a reserved term
+ * in the field itself.  The term starts with {@link #SCHEMA_PREFIX}, which
+ * sorts before every prefix coded term, so it never falls inside the term
+ * ranges queries enumerate.  Queries read the schema of each reader they
+ * run against, so they use the right shift levels without being told the
+ * precision step the field was indexed with.
+ */
+public final class IntervalSchema {
+  /**
+   * First character of the reserved schema term.
+   */
+  static final char SCHEMA_PREFIX = '\u0001';
+
+  /**
+   * The largest step allowed between levels of a custom schedule.
+   */
+  static final int MAX_STEP = 8;
+
+  /**
+   * Cached schemas of 64 bit values, by reader core and field.
+   */
+  private static final ReaderCache<IntervalSchema> LONG_SCHEMAS = cache(64);
+
+  /**
+   * Cached schemas of 32 bit values, by reader core and field.
+   */
+  private static final ReaderCache<IntervalSchema> INT_SCHEMAS = cache(32);
+
+  /**
+   * The number of bits in the indexed values, 64 or 32.
+   */
+  private final int valueSize;
+
+  /**
+   * The ascending shift levels segments are indexed at.
+   */
+  private final int[] shifts;
+
+
+  /**
+   * Creates a schema.
+   * @param valueSize the number of bits in the indexed values
+   * @param shifts the ascending shift levels
+   */
+  private IntervalSchema(final int valueSize, final int[] shifts) {
+    this.valueSize = valueSize;
+    this.shifts = shifts;
+  }
+
+
+  /**
+   * Gets the schema of a field indexed with a fixed precision step.
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @param precisionStep the precision step
+   * @return the schema
+   */
+  public static IntervalSchema uniform(final int valueSize,
+                                       final int precisionStep) {
+    checkValueSize(valueSize);
+    if (precisionStep < 1) {
+      throw new IllegalArgumentException("precisionStep must be >=1");
+    }
+    final int[] shifts = new int[(valueSize - 1) / precisionStep + 1];
+    for (int i = 0; i < shifts.length; i++) {
+      shifts[i] = i * precisionStep;
+    }
+    return new IntervalSchema(valueSize, shifts);
+  }
+
+
+  /**
+   * Gets a schema with a custom schedule of shift levels.  The step between
+   * consecutive levels can vary, for example fine steps at low shifts for
+   * short intervals and coarse steps at high shifts for long ones.  The
+   * last level steps to the value size, so its blocks cover the whole value
+   * range.  An interval splits in to at most {@code 2 * (2^step - 1)}
+   * segments at each level below the last, where step is the distance to
+   * the next level, and at most {@code 2^step} at the last level.  Steps,
+   * including the last, may be at most 8, which bounds the segments of any
+   * interval, even one spanning every value.
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @param shifts the ascending shift levels, starting at 0
+   * @return the schema
+   * @throws IllegalArgumentException if the levels are not ascending from
+   *     0, or a step is larger than 8
+   */
+  public static IntervalSchema withShifts(final int valueSize,
+                                          final int... shifts) {
+    checkShifts(valueSize, shifts);
+    for (int i = 0; i < shifts.length; i++) {
+      final int next = i + 1 < shifts.length ? shifts[i + 1] : valueSize;
+      if (next - shifts[i] > MAX_STEP) {
+        throw new IllegalArgumentException(
+            "Steps between shifts, and from the last shift to " + valueSize
+            + ", must be at most " + MAX_STEP + ": "
+            + Arrays.toString(shifts));
+      }
+    }
+    return new IntervalSchema(valueSize, shifts.clone());
+  }
+
+
+  /**
+   * Checks that shift levels ascend from 0 and stay below the value size.
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @param shifts the shift levels
+   */
+  private static void checkShifts(final int valueSize, final int[] shifts) {
+    checkValueSize(valueSize);
+    if (shifts.length == 0 || shifts[0] != 0) {
+      throw new IllegalArgumentException("The first shift must be 0");
+    }
+    for (int i = 1; i < shifts.length; i++) {
+      if (shifts[i] <= shifts[i - 1] || shifts[i] >= valueSize) {
+        throw new IllegalArgumentException(
+            "Shifts must be ascending and less than " + valueSize + ": "
+            + Arrays.toString(shifts));
+      }
+    }
+  }
+
+
+  /**
+   * @return the number of bits in the indexed values, 64 or 32.
+   */
+  public int getValueSize() {
+    return this.valueSize;
+  }
+
+
+  /**
+   * @return the ascending shift levels segments are indexed at.
+   */
+  public int[] getShifts() {
+    return this.shifts.clone();
+  }
+
+
+  /**
+   * @return the number of shift levels.
+   */
+  int getLevelCount() {
+    return this.shifts.length;
+  }
+
+
+  /**
+   * Gets a shift level.
+   * @param level the index of the level
+   * @return the shift of the level
+   */
+  int getShift(final int level) {
+    return this.shifts[level];
+  }
+
+
+  /**
+   * @return the text of the reserved term that records this schema.
+   */
+  String toTermText() {
+    return SCHEMA_PREFIX + Integer.toString(this.valueSize) + ':'
+        + Joiner.on(',').join(Ints.asList(this.shifts));
+  }
+
+
+  /**
+   * Parses the text of a reserved schema term.  Step sizes are not checked,
+   * so the recorded schemas of uniform fields with large precision steps
+   * can be read back.
+   * @param text the term text
+   * @return the schema
+   */
+  static IntervalSchema fromTermText(final String text) {
+    final int colon = text.indexOf(':');
+    if (text.isEmpty() || text.charAt(0) != SCHEMA_PREFIX || colon < 0) {
+      throw new IllegalArgumentException("Not a schema term: " + text);
+    }
+    final int valueSize = Integer.parseInt(text.substring(1, colon));
+    checkValueSize(valueSize);
+    final String[] parts = text.substring(colon + 1).split(",");
+    final int[] shifts = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      shifts[i] = Integer.parseInt(parts[i]);
+    }
+    checkShifts(valueSize, shifts);
+    return new IntervalSchema(valueSize, shifts);
+  }
+
+
+  /**
+   * Reads the schema a field was indexed with.  If the reader spans
+   * segments indexed with different schemas, the returned schema contains
+   * the shift levels of all of them, which is what queries need to find
+   * every indexed segment.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param valueSize the number of bits in the values to look for
+   * @return the schema, or null if the field has no recorded schema with
+   *     values of the given size
+   * @throws IOException if IO issues occur
+   */
+  public static IntervalSchema read(final IndexReader reader,
+                                    final String field,
+                                    final int valueSize) throws IOException {
+    checkValueSize(valueSize);
+    return (valueSize == 32 ? INT_SCHEMAS : LONG_SCHEMAS).get(reader, field);
+  }
+
+
+  /**
+   * Creates a cache of the schemas of one value size.
+   * @param valueSize the number of bits in the values to look for
+   * @return the cache
+   */
+  private static ReaderCache<IntervalSchema> cache(final int valueSize) {
+    return new ReaderCache<IntervalSchema>() {
+      @Override
+      protected IntervalSchema load(final IndexReader reader,
+                                    final String field) throws IOException {
+        return readUncached(reader, field, valueSize);
+      }
+    };
+  }
+
+
+  /**
+   * Reads the schema a field was indexed with, or falls back to a default.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param fallback the schema to use when none is recorded
+   * @return the recorded schema, or the fallback
+   * @throws IOException if IO issues occur
+   */
+  static IntervalSchema read(final IndexReader reader,
+                             final String field,
+                             final IntervalSchema fallback)
+      throws IOException {
+    final IntervalSchema schema = read(reader, field, fallback.valueSize);
+    return schema == null ? fallback : schema;
+  }
+
+
+  /**
+   * Reads the schema terms of a field.
+   * @param reader the reader
+   * @param field the name of the field
+   * @param valueSize the number of bits in the values to look for
+   * @return the schema, or null if none is recorded
+   * @throws IOException if IO issues occur
+   */
+  private static IntervalSchema readUncached(final IndexReader reader,
+                                             final String field,
+                                             final int valueSize)
+      throws IOException {
+    final String internedField = field.intern();
+    final TermEnum terms = reader.terms(
+        new Term(internedField, String.valueOf(SCHEMA_PREFIX)));
+    try {
+      IntervalSchema result = null;
+      SortedSet<Integer> merged = null;
+      for (Term term = terms.term(); term != null
+               && term.field() == internedField
+               && term.text().charAt(0) == SCHEMA_PREFIX;
+           term = terms.next() ? terms.term() : null) {
+        final IntervalSchema schema = fromTermText(term.text());
+        if (schema.valueSize != valueSize) {
+          continue;
+        }
+        if (result == null) {
+          result = schema;
+        } else if (!result.equals(schema)) {
+          if (merged == null) {
+            merged = new TreeSet<Integer>(Ints.asList(result.shifts));
+          }
+          merged.addAll(Ints.asList(schema.shifts));
+        }
+      }
+      if (merged != null) {
+        result = new IntervalSchema(valueSize, Ints.toArray(merged));
+      }
+      return result;
+    } finally {
+      terms.close();
+    }
+  }
+
+
+  /**
+   * Checks that a value size is valid.
+   * @param valueSize the value size
+   */
+  private static void checkValueSize(final int valueSize) {
+    if (valueSize != 64 && valueSize != 32) {
+      throw new IllegalArgumentException("valueSize must be 32 or 64");
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "IntervalSchema{" + this.valueSize + " bits, shifts "
+        + Arrays.toString(this.shifts) + '}';
+  }
+
+
+  @Override
+  public int hashCode() {
+    return 31 * this.valueSize + Arrays.hashCode(this.shifts);
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || o.getClass() != this.getClass()) {
+      return false;
+    }
+    final IntervalSchema other = (IntervalSchema) o;
+    return other.valueSize == this.valueSize
+        && Arrays.equals(other.shifts, this.shifts);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Reusable list of the segments an interval decomposes in to.  Each segment
+ * is the start of an aligned block and the number of bits the block covers.
+ * Segments are kept in primitive arrays that grow as needed and are reused
+ * across calls to {@link #clear()}, so decomposing an interval does not
+ * allocate once the arrays are large enough.
+ *
+ * <p>Intervals are split like
+ * {@link org.apache.lucene.util.NumericUtils#splitLongRange}, generalized
+ * to the shift levels of an {@link IntervalSchema}: the step at each level
+ * is the distance to the next shift level.  For a uniform schema the
+ * segments are exactly those of {@code NumericUtils}.
+ */
+final class IntervalSegments implements Serializable {
+  /**
+   * The initial capacity of the segment arrays.
+   */
+  private static final int INITIAL_CAPACITY = 32;
+
+  /**
+   * The starts of the segments.
+   */
+  private long[] starts = new long[INITIAL_CAPACITY];
+
+  /**
+   * The number of bits each segment covers.
+   */
+  private int[] shifts = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of segments.
+   */
+  private int size = 0;
+
+
+  /**
+   * Removes all segments, keeping the allocated arrays.
+   */
+  public void clear() {
+    this.size = 0;
+  }
+
+
+  /**
+   * Decomposes an interval and appends its segments.
+   * @param min the start of the interval
+   * @param max the end of the interval
+   * @param schema the shift levels to split the interval at; the values of
+   *               32 bit schemas must fit in an int
+   */
+  public void add(final long min, final long max, final IntervalSchema schema) {
+    if (min > max) {
+      return;
+    }
+    long minBound = min;
+    long maxBound = max;
+    final int levels = schema.getLevelCount();
+    for (int level = 0; level < levels; level++) {
+      final int shift = schema.getShift(level);
+      if (level == levels - 1) {
+        // We are in the lowest precision.
+        addRange(minBound, maxBound, shift);
+        return;
+      }
+
+      // Calculate new bounds for the next level.
+      final int nextShift = schema.getShift(level + 1);
+      final long diff = 1L << nextShift;
+      final long mask = ((1L << (nextShift - shift)) - 1L) << shift;
+      final boolean hasLower = (minBound & mask) != 0L;
+      final boolean hasUpper = (maxBound & mask) != mask;
+      final long nextMinBound = (hasLower ? minBound + diff : minBound) & ~mask;
+      final long nextMaxBound = (hasUpper ? maxBound - diff : maxBound) & ~mask;
+      final boolean lowerWrapped = nextMinBound < minBound;
+      final boolean upperWrapped = nextMaxBound > maxBound;
+
+      if (nextMinBound > nextMaxBound || lowerWrapped || upperWrapped) {
+        // The next level is not available.
+        addRange(minBound, maxBound, shift);
+        return;
+      }
+      if (hasLower) {
+        addRange(minBound, minBound | mask, shift);
+      }
+      if (hasUpper) {
+        addRange(maxBound & ~mask, maxBound, shift);
+      }
+      minBound = nextMinBound;
+      maxBound = nextMaxBound;
+    }
+  }
+
+
+  /**
+   * Appends every block of a range at one shift.
+   * @param min the start of the range, aligned to the shift
+   * @param max the end of the range
+   * @param shift the number of bits each block covers
+   */
+  private void addRange(final long min, final long max, final int shift) {
+    // Unsigned arithmetic so ranges touching Long.MAX_VALUE don't overflow.
+    final long count = ((max - min) >>> shift) + 1;
+    long currentMinimum = min;
+    for (long j = 0; j < count; j++) {
+      append(currentMinimum, shift);
+      currentMinimum += 1L << shift;
+    }
+  }
+
+
+  /**
+   * Appends a single segment.
+   * @param start the start of the segment
+   * @param shift the number of bits the segment covers
+   */
+  void append(final long start, final int shift) {
+    if (this.size == this.starts.length) {
+      final int capacity = this.size << 1;
+      this.starts = Arrays.copyOf(this.starts, capacity);
+      this.shifts = Arrays.copyOf(this.shifts, capacity);
+    }
+    this.starts[this.size] = start;
+    this.shifts[this.size] = shift;
+    this.size++;
+  }
+
+
+  /**
+   * @return the number of segments.
+   */
+  public int size() {
+    return this.size;
+  }
+
+
+  /**
+   * Gets the start of a segment.
+   * @param i the index of the segment
+   * @return the start of the segment
+   */
+  public long getStart(final int i) {
+    return this.starts[i];
+  }
+
+
+  /**
+   * Gets the number of bits a segment covers.
+   * @param i the index of the segment
+   * @return the number of bits
+   */
+  public int getShift(final int i) {
+    return this.shifts[i];
+  }
+
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < this.size; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(this.starts[i]).append('/').append(this.shifts[i]);
+    }
+    return builder.append(']').toString();
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = this.size;
+    for (int i = 0; i < this.size; i++) {
+      result = 31 * result + (int) (this.starts[i] ^ (this.starts[i] >>> 32));
+      result = 31 * result + this.shifts[i];
+    }
+    return result;
+  }
+
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || obj.getClass() != this.getClass()) {
+      return false;
+    }
+    final IntervalSegments other = (IntervalSegments) obj;
+    if (other.size != this.size) {
+      return false;
+    }
+    for (int i = 0; i < this.size; i++) {
+      if (other.starts[i] != this.starts[i]
+          || other.shifts[i] != this.shifts[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
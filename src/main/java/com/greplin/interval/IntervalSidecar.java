@@ -0,0 +1,636 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Maps;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The intervals of one field of one segment, sorted by start, in a memory
+ * mapped file outside the index.
+ *
+ * <p>Segments never change once written, so a sidecar file named after the
+ * segment stays valid for the segment's lifetime.  {@link #get} writes the
+ * file from the field's {@link IntervalColumn} terms the first time a
+ * segment is seen, then maps it; after a restart the existing file is
+ * mapped without inverting the index.  Column terms are read straight from
+ * the term dictionary, so the on-heap {@link IntervalColumn} is never
+ * loaded, and reads go straight to the mapping, so the intervals never
+ * occupy the heap.  Use one sidecar directory per index, and delete files
+ * of merged away segments with {@link #deleteUnused}.
+ *
+ * <p>Search sidecars with an {@link IntervalSidecarFilter}.  Other queries
+ * and {@link IntervalQueryPlan} don't know about sidecar directories, so
+ * they don't use sidecars on their own.
+ *
+ * <p>A file starts with a 20 byte header holding a magic number, the
+ * segment's maxDoc, its deletion count when written and a fingerprint of
+ * its index files, so a file left by another index with the same segment
+ * names is rewritten rather than reused.  Then come the records, each a
+ * start, an end and a document in 20 bytes, the greatest end of each block
+ * of {@value #BLOCK_SIZE} records, the record count and a CRC32 of all of
+ * it.  Files are verified when mapped, written to a unique temporary file
+ * and renamed in to place, so concurrent or interrupted writers never leave
+ * a file that gets mapped.  Records are mapped in chunks, so they may
+ * exceed 2GB.  Records may include documents deleted since the file was
+ * written; check {@link IndexReader#isDeleted} as {@link #intersecting}
+ * does.
+ */
+public final class IntervalSidecar {
+  /**
+   * Identifies sidecar files.
+   */
+  private static final int MAGIC = 0x49565332;
+
+  /**
+   * The length of the header.
+   */
+  private static final int HEADER_LENGTH = 20;
+
+  /**
+   * The length of the trailer holding the record count and checksum.
+   */
+  private static final int TRAILER_LENGTH = 12;
+
+  /**
+   * The length of a record.
+   */
+  private static final int RECORD_LENGTH = 20;
+
+  /**
+   * Log2 of the number of records per mapped chunk, since a single mapping
+   * can't exceed 2GB.
+   */
+  private static final int CHUNK_BITS = 25;
+
+  /**
+   * The number of records per block with a recorded greatest end.
+   */
+  static final int BLOCK_SIZE = 64;
+
+  /**
+   * Log2 of {@link #BLOCK_SIZE}.
+   */
+  private static final int BLOCK_BITS = 6;
+
+  /**
+   * The file name extension of sidecar files.
+   */
+  private static final String EXTENSION = ".ivs";
+
+  /**
+   * Serializes writers of the same file within this process, striped by
+   * the file's path.
+   */
+  private static final Object[] LOCKS = new Object[64];
+
+  static {
+    for (int i = 0; i < LOCKS.length; i++) {
+      LOCKS[i] = new Object();
+    }
+  }
+
+  /**
+   * Mapped sidecars by reader core, then field.
+   */
+  private static final Map<Object, Map<String, IntervalSidecar>> CACHE =
+      new WeakHashMap<Object, Map<String, IntervalSidecar>>();
+
+  /**
+   * Drops the sidecars of a reader when it closes.
+   */
+  private static final IndexReader.ReaderFinishedListener PURGE =
+      new IndexReader.ReaderFinishedListener() {
+        @Override
+        public void finished(final IndexReader reader) {
+          synchronized (CACHE) {
+            CACHE.remove(reader.getCoreCacheKey());
+          }
+        }
+      };
+
+
+  /**
+   * The mapped records, in chunks of {@code 1 << CHUNK_BITS}.
+   */
+  private final ByteBuffer[] chunks;
+
+  /**
+   * The number of records.
+   */
+  private final int size;
+
+  /**
+   * The mapped greatest end of each block of records.
+   */
+  private final ByteBuffer blockEnds;
+
+
+  /**
+   * Creates a sidecar over mapped records.
+   * @param chunks the mapped records
+   * @param size the number of records
+   * @param blockEnds the mapped greatest end of each block of records
+   */
+  private IntervalSidecar(final ByteBuffer[] chunks,
+                          final int size,
+                          final ByteBuffer blockEnds) {
+    this.chunks = chunks;
+    this.size = size;
+    this.blockEnds = blockEnds;
+  }
+
+
+  /**
+   * Gets the sidecar of a field of a segment, writing it if it doesn't
+   * exist yet.
+   * @param directory the directory holding this index's sidecars
+   * @param segment a segment reader
+   * @param field the name of the field, indexed with column terms
+   * @return the sidecar
+   * @throws IOException if the file can't be written or mapped
+   */
+  public static IntervalSidecar get(final File directory,
+                                    final IndexReader segment,
+                                    final String field) throws IOException {
+    final Object key = segment.getCoreCacheKey();
+    synchronized (CACHE) {
+      final Map<String, IntervalSidecar> fields = CACHE.get(key);
+      final IntervalSidecar cached = fields == null ? null : fields.get(field);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    final File file = fileFor(directory, segment, field);
+    final long fingerprint = fingerprint(segment, field);
+    final int stripe = file.getAbsolutePath().hashCode() & (LOCKS.length - 1);
+    IntervalSidecar sidecar;
+    synchronized (LOCKS[stripe]) {
+      sidecar = map(file, segment, fingerprint);
+      if (sidecar == null) {
+        write(segment, field, fingerprint, file);
+        sidecar = map(file, segment, fingerprint);
+        if (sidecar == null) {
+          throw new IOException("Invalid sidecar written to " + file);
+        }
+      }
+    }
+
+    synchronized (CACHE) {
+      Map<String, IntervalSidecar> fields = CACHE.get(key);
+      if (fields == null) {
+        fields = Maps.newHashMap();
+        CACHE.put(key, fields);
+        segment.addReaderFinishedListener(PURGE);
+      }
+      final IntervalSidecar existing = fields.get(field);
+      if (existing != null) {
+        return existing;
+      }
+      fields.put(field, sidecar);
+    }
+    return sidecar;
+  }
+
+
+  /**
+   * Deletes the sidecar files of segments a reader no longer has, such as
+   * segments merged away since the files were written.
+   * @param directory the directory holding this index's sidecars
+   * @param reader a reader over the whole index
+   * @return the number of files deleted
+   */
+  public static int deleteUnused(final File directory,
+                                 final IndexReader reader) {
+    final Set<String> live = new HashSet<String>();
+    for (IndexReader segment : reader.getSequentialSubReaders()) {
+      live.add(segmentName(segment));
+    }
+    int deleted = 0;
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    for (File file : files) {
+      final String name = file.getName();
+      final int separator = name.indexOf('.');
+      // Temporary files of merged away segments are left by failed writes.
+      if ((name.endsWith(EXTENSION) || name.endsWith(".tmp"))
+          && separator > 0
+          && !live.contains(name.substring(0, separator))
+          && file.delete()) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+
+  /**
+   * Names the sidecar file of a field of a segment.
+   * @param directory the sidecar directory
+   * @param segment the segment reader
+   * @param field the name of the field
+   * @return the file
+   */
+  private static File fileFor(final File directory,
+                              final IndexReader segment,
+                              final String field) {
+    return new File(directory,
+        segmentName(segment) + '.' + escape(field) + EXTENSION);
+  }
+
+
+  /**
+   * Escapes a field name for use in a file name.  Letters, digits, '-' and
+   * '_' are kept and every other character becomes '%' and four hex
+   * digits, so distinct fields get distinct names.
+   * @param field the name of the field
+   * @return the escaped name
+   */
+  static String escape(final String field) {
+    final StringBuilder result = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      final char c = field.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+        result.append(c);
+      } else {
+        result.append(String.format("%%%04x", (int) c));
+      }
+    }
+    return result.toString();
+  }
+
+
+  /**
+   * Fingerprints a segment.  Segment files are written once, so their
+   * names, lengths and modification times identify the segment across
+   * indexes that reuse its name, along with the field's first column term.
+   * @param segment the segment reader
+   * @param field the name of the field
+   * @return the fingerprint
+   * @throws IOException if the directory or terms can't be read
+   */
+  static long fingerprint(final IndexReader segment, final String field)
+      throws IOException {
+    final String prefix = segmentName(segment) + '.';
+    final Directory directory = segment.directory();
+    final String[] names = directory.listAll();
+    Arrays.sort(names);
+    long result = segment.maxDoc();
+    for (String name : names) {
+      if (name.startsWith(prefix)) {
+        result = 31 * result + name.hashCode();
+        result = 31 * result + directory.fileLength(name);
+        result = 31 * result + directory.fileModified(name);
+      }
+    }
+    result = 31 * result + segment.getUniqueTermCount();
+
+    final TermEnum terms = segment.terms(new Term(
+        field, String.valueOf(IntervalColumn.COLUMN_PREFIX)));
+    try {
+      final Term first = terms.term();
+      return first == null ? result : 31 * result + first.hashCode();
+    } finally {
+      terms.close();
+    }
+  }
+
+
+  /**
+   * Gets the name of a segment.
+   * @param segment the segment reader
+   * @return the segment name
+   */
+  private static String segmentName(final IndexReader segment) {
+    if (!(segment instanceof SegmentReader)) {
+      throw new IllegalArgumentException(
+          "Sidecars are per segment, not for " + segment);
+    }
+    return ((SegmentReader) segment).getSegmentName();
+  }
+
+
+  /**
+   * Maps a sidecar file after verifying it.
+   * @param file the file
+   * @param segment the segment reader
+   * @param fingerprint the fingerprint of the segment
+   * @return the sidecar, or null if the file is missing, corrupt or written
+   *     for another segment
+   * @throws IOException if the file can't be read or mapped
+   */
+  private static IntervalSidecar map(final File file,
+                                     final IndexReader segment,
+                                     final long fingerprint)
+      throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    final RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      final long length = input.length();
+      if (length < HEADER_LENGTH + TRAILER_LENGTH
+          || input.readInt() != MAGIC
+          || input.readInt() != segment.maxDoc()
+          || input.readInt() > segment.numDeletedDocs()
+          || input.readLong() != fingerprint) {
+        return null;
+      }
+      input.seek(length - TRAILER_LENGTH);
+      final int records = input.readInt();
+      final long checksum = input.readLong();
+      final long blocks = blocks(records);
+      if (records < 0 || length != HEADER_LENGTH
+          + (long) records * RECORD_LENGTH + blocks * 8 + TRAILER_LENGTH
+          || checksum(file, length - 8) != checksum) {
+        return null;
+      }
+
+      final FileChannel channel = input.getChannel();
+      final int chunkRecords = 1 << CHUNK_BITS;
+      final ByteBuffer[] chunks =
+          new ByteBuffer[(int) ((records + chunkRecords - 1L) >>> CHUNK_BITS)];
+      for (int k = 0; k < chunks.length; k++) {
+        final long first = (long) k << CHUNK_BITS;
+        chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY,
+            HEADER_LENGTH + first * RECORD_LENGTH,
+            Math.min(chunkRecords, records - first) * RECORD_LENGTH);
+      }
+      final ByteBuffer blockEnds = channel.map(FileChannel.MapMode.READ_ONLY,
+          HEADER_LENGTH + (long) records * RECORD_LENGTH, blocks * 8);
+      return new IntervalSidecar(chunks, records, blockEnds);
+    } finally {
+      // The mappings stay valid after the channel closes.
+      input.close();
+    }
+  }
+
+
+  /**
+   * @param records a number of records
+   * @return the number of blocks holding them
+   */
+  private static long blocks(final long records) {
+    return (records + BLOCK_SIZE - 1) >>> BLOCK_BITS;
+  }
+
+
+  /**
+   * Computes the CRC32 of the start of a file.
+   * @param file the file
+   * @param length the number of bytes to check
+   * @return the checksum
+   * @throws IOException if the file can't be read
+   */
+  private static long checksum(final File file, final long length)
+      throws IOException {
+    final CheckedInputStream input = new CheckedInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16),
+        new CRC32());
+    try {
+      final byte[] buffer = new byte[1 << 16];
+      long remaining = length;
+      while (remaining > 0) {
+        final int read = input.read(buffer, 0,
+            (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          throw new IOException("Sidecar shrank while reading " + file);
+        }
+        remaining -= read;
+      }
+      return input.getChecksum().getValue();
+    } finally {
+      input.close();
+    }
+  }
+
+
+  /**
+   * Writes the sidecar of a field of a segment from its column terms, which
+   * are already sorted by start, to a unique temporary file, then renames
+   * it in to place.
+   * @param segment the segment reader
+   * @param field the name of the field
+   * @param fingerprint the fingerprint of the segment
+   * @param file the file to write
+   * @throws IOException if the file can't be written
+   */
+  private static void write(final IndexReader segment,
+                            final String field,
+                            final long fingerprint,
+                            final File file) throws IOException {
+    final File temporary = File.createTempFile(
+        file.getName(), ".tmp", file.getParentFile());
+    boolean written = false;
+    final CheckedOutputStream checked = new CheckedOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16),
+        new CRC32());
+    final DataOutputStream output = new DataOutputStream(checked);
+    final String internedField = field.intern();
+    final TermEnum terms = segment.terms(new Term(
+        internedField, String.valueOf(IntervalColumn.COLUMN_PREFIX)));
+    final TermDocs termDocs = segment.termDocs();
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(segment.maxDoc());
+      output.writeInt(segment.numDeletedDocs());
+      output.writeLong(fingerprint);
+      int records = 0;
+      long[] blockEnds = new long[16];
+      for (Term term = terms.term(); term != null
+               && term.field() == internedField
+               && term.text().charAt(0) == IntervalColumn.COLUMN_PREFIX;
+           term = terms.next() ? terms.term() : null) {
+        final long start = IntervalColumn.startOf(term.text());
+        final long end = IntervalColumn.endOf(term.text());
+        termDocs.seek(terms);
+        while (termDocs.next()) {
+          output.writeLong(start);
+          output.writeLong(end);
+          output.writeInt(termDocs.doc());
+          final int block = records >>> BLOCK_BITS;
+          if (block == blockEnds.length) {
+            blockEnds = Arrays.copyOf(blockEnds, block << 1);
+          }
+          blockEnds[block] = (records & (BLOCK_SIZE - 1)) == 0
+              ? end : Math.max(blockEnds[block], end);
+          records++;
+        }
+      }
+      for (int block = 0; block < blocks(records); block++) {
+        output.writeLong(blockEnds[block]);
+      }
+      output.writeInt(records);
+      output.writeLong(checked.getChecksum().getValue());
+      output.close();
+      written = true;
+    } finally {
+      termDocs.close();
+      terms.close();
+      if (!written) {
+        output.close();
+        temporary.delete();
+      }
+    }
+    // Replace the previous file, which readers may still have mapped.
+    if (!temporary.renameTo(file)
+        && !(file.delete() && temporary.renameTo(file))) {
+      temporary.delete();
+      throw new IOException("Can't rename " + temporary + " to " + file);
+    }
+  }
+
+
+  /**
+   * @return the number of intervals
+   */
+  public int size() {
+    return this.size;
+  }
+
+
+  /**
+   * @param i the index of an interval, in start order
+   * @return the start of the interval
+   */
+  public long getStart(final int i) {
+    return chunk(i).getLong(offset(i));
+  }
+
+
+  /**
+   * @param i the index of an interval, in start order
+   * @return the end of the interval
+   */
+  public long getEnd(final int i) {
+    return chunk(i).getLong(offset(i) + 8);
+  }
+
+
+  /**
+   * @param i the index of an interval, in start order
+   * @return the document the interval belongs to
+   */
+  public int getDoc(final int i) {
+    return chunk(i).getInt(offset(i) + 16);
+  }
+
+
+  /**
+   * @param i the index of a record
+   * @return the chunk holding the record
+   */
+  private ByteBuffer chunk(final int i) {
+    return this.chunks[i >>> CHUNK_BITS];
+  }
+
+
+  /**
+   * @param i the index of a record
+   * @return the offset of the record in its chunk
+   */
+  private static int offset(final int i) {
+    return (i & ((1 << CHUNK_BITS) - 1)) * RECORD_LENGTH;
+  }
+
+
+  /**
+   * Finds the first interval starting after a value.
+   * @param value the value
+   * @return the index of the interval, or {@link #size()} if none does
+   */
+  public int firstStartAfter(final long value) {
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (getStart(middle) <= value) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * Marks the live documents with an interval intersecting a range.  Scans
+   * the intervals starting at or before the end of the range, skipping
+   * blocks of {@value #BLOCK_SIZE} whose intervals all end before it, so
+   * it reads one block end per block plus the blocks holding matches.
+   * @param segment the segment reader the sidecar belongs to
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param result the set to mark documents in
+   */
+  public void intersecting(final IndexReader segment,
+                           final long start,
+                           final long end,
+                           final FixedBitSet result) {
+    final int last = firstStartAfter(end);
+    for (int i = 0; i < last; i++) {
+      if ((i & (BLOCK_SIZE - 1)) == 0
+          && this.blockEnds.getLong((i >>> BLOCK_BITS) << 3) < start) {
+        i += BLOCK_SIZE - 1;
+        continue;
+      }
+      if (getEnd(i) >= start) {
+        final int doc = getDoc(i);
+        if (!segment.isDeleted(doc)) {
+          result.set(doc);
+        }
+      }
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "IntervalSidecar(" + this.size + " intervals)";
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Filter that matches intervals intersecting a range by searching each
+ * segment's {@link IntervalSidecar}, without reading the term dictionary.
+ *
+ * <p>Sidecars are written the first time a segment is searched, from the
+ * field's column terms, and mapped afterwards, so the field must be
+ * indexed with column terms and the intervals stay off the heap.  Wrap the
+ * filter in a {@link org.apache.lucene.search.ConstantScoreQuery} to use it
+ * as a query.  Searchers call filters once per segment; the filter rejects
+ * readers that span several segments.
+ */
+public final class IntervalSidecarFilter extends Filter {
+  /**
+   * The directory holding the index's sidecars.
+   */
+  private final File directory;
+
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The start of the range.
+   */
+  private final long start;
+
+  /**
+   * The end of the range.
+   */
+  private final long end;
+
+
+  /**
+   * Creates a filter to find intervals intersecting a range.
+   * @param directory The directory holding the index's sidecars.
+   * @param name The name of the field to search, indexed with column terms.
+   * @param start The start of the range.
+   * @param end The end of the range.
+   */
+  public IntervalSidecarFilter(final File directory,
+                               final String name,
+                               final long start,
+                               final long end) {
+    this.directory = directory;
+    this.name = name.intern();
+    this.start = start;
+    this.end = end;
+  }
+
+
+  @Override
+  public DocIdSet getDocIdSet(final IndexReader reader) throws IOException {
+    if (this.start > this.end || reader.maxDoc() == 0) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    final FixedBitSet result = new FixedBitSet(reader.maxDoc());
+    IntervalSidecar.get(this.directory, reader, this.name)
+        .intersecting(reader, this.start, this.end, result);
+    return result;
+  }
+
+
+  @Override
+  public String toString() {
+    return String.format("sidecarIntersects(%d - %d, %s)",
+        this.start, this.end, this.name);
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = this.directory.hashCode();
+    result = 31 * result + this.name.hashCode();
+    result = 31 * result + (int) (this.start ^ (this.start >>> 32));
+    return 31 * result + (int) (this.end ^ (this.end >>> 32));
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || o.getClass() != this.getClass()) {
+      return false;
+    }
+    final IntervalSidecarFilter other = (IntervalSidecarFilter) o;
+    return other.directory.equals(this.directory)
+        && other.name == this.name
+        && other.start == this.start
+        && other.end == this.end;
+  }
+}
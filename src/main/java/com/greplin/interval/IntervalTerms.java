@@ -0,0 +1,301 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds the prefix coded terms queries look up in interval fields.
+ */
+final class IntervalTerms {
+  /**
+   * The first character of the reserved terms recording the start of an
+   * open-ended interval, after the column terms and before every prefix
+   * coded term.  The rest of the term is the start prefix coded at a shift.
+   */
+  static final char OPEN_PREFIX = '\u0003';
+
+  /**
+   * Whether each segment has open-ended interval terms, by field.
+   */
+  private static final ReaderCache<Boolean> OPEN_ENDED =
+      new ReaderCache<Boolean>() {
+        @Override
+        protected Boolean load(final IndexReader reader, final String field)
+            throws IOException {
+          final TermEnum terms = reader.terms(
+              new Term(field, String.valueOf(OPEN_PREFIX)));
+          try {
+            final Term term = terms.term();
+            return term != null && term.field() == field
+                && term.text().charAt(0) == OPEN_PREFIX;
+          } finally {
+            terms.close();
+          }
+        }
+      };
+
+
+  /**
+   * Utility class.
+   */
+  private IntervalTerms() { }
+
+
+  /**
+   * Encodes a double so that the encoded longs sort like the doubles.
+   * Negative zero is encoded like zero, matching {@link DoubleInterval}'s
+   * comparisons, and infinities sort outside all finite values.
+   * @param value the value
+   * @return the sortable long
+   * @throws IllegalArgumentException if the value is NaN
+   */
+  static long sortableLong(final double value) {
+    if (Double.isNaN(value)) {
+      throw new IllegalArgumentException("Intervals can't contain NaN");
+    }
+    return NumericUtils.doubleToSortableLong(value == 0.0 ? 0.0 : value);
+  }
+
+
+  /**
+   * Encodes a float so that the encoded ints sort like the floats.
+   * Negative zero is encoded like zero, matching {@link FloatInterval}'s
+   * comparisons, and infinities sort outside all finite values.
+   * @param value the value
+   * @return the sortable int
+   * @throws IllegalArgumentException if the value is NaN
+   */
+  static int sortableInt(final float value) {
+    if (Float.isNaN(value)) {
+      throw new IllegalArgumentException("Intervals can't contain NaN");
+    }
+    return NumericUtils.floatToSortableInt(value == 0.0f ? 0.0f : value);
+  }
+
+
+  /**
+   * Prefix codes a value.
+   * @param value the value, which must fit in an int for 32 bit fields
+   * @param shift the number of low bits to strip
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @return the prefix coded term text
+   */
+  static String toPrefixCoded(final long value,
+                              final int shift,
+                              final int valueSize) {
+    return valueSize == 32
+        ? NumericUtils.intToPrefixCoded((int) value, shift)
+        : NumericUtils.longToPrefixCoded(value, shift);
+  }
+
+
+  /**
+   * Gets the terms of the blocks containing a value, one per shift level.
+   * @param value the value
+   * @param schema the schema of the field
+   * @return the term texts, in term order
+   */
+  static List<String> pointTerms(final long value,
+                                 final IntervalSchema schema) {
+    final List<String> terms = Lists.newArrayList();
+    for (int level = 0; level < schema.getLevelCount(); level++) {
+      terms.add(toPrefixCoded(
+          value, schema.getShift(level), schema.getValueSize()));
+    }
+    return terms;
+  }
+
+
+  /**
+   * Gets the ranges of terms whose blocks intersect an interval, one range
+   * per shift level, preceded for 64 bit fields by the ranges of the
+   * open-ended intervals starting at or before its end.
+   * @param start the start of the interval
+   * @param end the end of the interval
+   * @param schema the schema of the field
+   * @return alternating inclusive lower and upper bounds, in term order
+   */
+  static List<String> intersectionBounds(final long start,
+                                         final long end,
+                                         final IntervalSchema schema) {
+    final List<String> bounds = schema.getValueSize() == 64
+        ? openEndedBounds(end, schema) : Lists.<String>newArrayList();
+    bounds.addAll(segmentBounds(start, end, schema));
+    return bounds;
+  }
+
+
+  /**
+   * Gets the ranges of segment terms whose blocks intersect an interval,
+   * one range per shift level.
+   * @param start the start of the interval
+   * @param end the end of the interval
+   * @param schema the schema of the field
+   * @return alternating inclusive lower and upper bounds, in term order
+   */
+  static List<String> segmentBounds(final long start,
+                                    final long end,
+                                    final IntervalSchema schema) {
+    final List<String> bounds = Lists.newArrayList();
+    for (int level = 0; level < schema.getLevelCount(); level++) {
+      final int shift = schema.getShift(level);
+      bounds.add(toPrefixCoded(start, shift, schema.getValueSize()));
+      bounds.add(toPrefixCoded(end, shift, schema.getValueSize()));
+    }
+    return bounds;
+  }
+
+
+  /**
+   * Checks whether a segment holds open-ended intervals in a field, so
+   * their term ranges can be skipped when it doesn't.  Segments never
+   * change, so the answer is looked up once per segment.
+   * @param reader the segment reader
+   * @param field the interned name of the field
+   * @return whether the field has open-ended interval terms
+   * @throws IOException if IO issues occur
+   */
+  static boolean hasOpenEndedTerms(final IndexReader reader,
+                                   final String field) throws IOException {
+    return OPEN_ENDED.get(reader, field);
+  }
+
+
+  /**
+   * Builds the term recording the start of an open-ended interval at a
+   * shift.
+   * @param start the start of the interval
+   * @param shift the number of low bits to strip
+   * @return the term text
+   */
+  static String openTerm(final long start, final int shift) {
+    return OPEN_PREFIX + NumericUtils.longToPrefixCoded(start, shift);
+  }
+
+
+  /**
+   * Gets the ranges of open-ended interval terms whose intervals contain a
+   * value, which are those starting at or before it.  Like
+   * {@link NumericUtils#splitLongRange}, the starts up to the value are
+   * split in to at most two ranges of blocks per shift level, using the
+   * coarsest blocks that fit.
+   * @param value the value
+   * @param schema the 64 bit schema of the field
+   * @return alternating inclusive lower and upper bounds, in term order
+   */
+  static List<String> openEndedBounds(final long value,
+                                      final IntervalSchema schema) {
+    final List<String[]> ranges = Lists.newArrayList();
+    long lower = Long.MIN_VALUE;
+    long upper = value;
+    for (int level = 0; level < schema.getLevelCount(); level++) {
+      final int shift = schema.getShift(level);
+      if (level + 1 == schema.getLevelCount()) {
+        ranges.add(openRange(lower, upper, shift));
+        break;
+      }
+      final long next = 1L << schema.getShift(level + 1);
+      final long mask = (next - 1) & -(1L << shift);
+      final boolean hasLower = (lower & mask) != 0;
+      final boolean hasUpper = (upper & mask) != mask;
+      final long nextLower = (hasLower ? lower + next : lower) & ~mask;
+      final long nextUpper = (hasUpper ? upper - next : upper) & ~mask;
+      if (nextLower > nextUpper || nextLower < lower || nextUpper > upper) {
+        ranges.add(openRange(lower, upper, shift));
+        break;
+      }
+      if (hasLower) {
+        ranges.add(openRange(lower, lower | mask, shift));
+      }
+      if (hasUpper) {
+        ranges.add(openRange(upper & ~mask, upper, shift));
+      }
+      lower = nextLower;
+      upper = nextUpper;
+    }
+
+    Collections.sort(ranges, new Comparator<String[]>() {
+      @Override
+      public int compare(final String[] a, final String[] b) {
+        return a[0].compareTo(b[0]);
+      }
+    });
+    final List<String> bounds = Lists.newArrayList();
+    for (String[] range : ranges) {
+      bounds.add(range[0]);
+      bounds.add(range[1]);
+    }
+    return bounds;
+  }
+
+
+  /**
+   * Builds a range of open-ended interval terms.
+   * @param lower the least start in the range
+   * @param upper the greatest start in the range
+   * @param shift the shift of the terms
+   * @return the inclusive lower and upper bounds
+   */
+  private static String[] openRange(final long lower,
+                                    final long upper,
+                                    final int shift) {
+    return new String[] {openTerm(lower, shift), openTerm(upper, shift)};
+  }
+
+
+  /**
+   * Decodes the smallest value in the block of a prefix coded term,
+   * possibly an open-ended interval term.
+   * @param text the term text
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @return the smallest value in the block
+   */
+  static long blockStart(final String text, final int valueSize) {
+    if (text.charAt(0) == OPEN_PREFIX) {
+      return NumericUtils.prefixCodedToLong(text.substring(1));
+    }
+    return valueSize == 32
+        ? NumericUtils.prefixCodedToInt(text)
+        : NumericUtils.prefixCodedToLong(text);
+  }
+
+
+  /**
+   * Decodes the shift of a prefix coded term, possibly an open-ended
+   * interval term.
+   * @param text the term text
+   * @param valueSize the number of bits in the indexed values, 64 or 32
+   * @return the shift
+   */
+  static int shiftOf(final String text, final int valueSize) {
+    if (text.charAt(0) == OPEN_PREFIX) {
+      return text.charAt(1) - NumericUtils.SHIFT_START_LONG;
+    }
+    return text.charAt(0) - (valueSize == 32
+        ? NumericUtils.SHIFT_START_INT : NumericUtils.SHIFT_START_LONG);
+  }
+}
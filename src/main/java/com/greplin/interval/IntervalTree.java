@@ -0,0 +1,319 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An interval tree over the intervals of one field of one segment,
+ * answering stabbing and intersection queries without the term dictionary.
+ *
+ * <p>The tree is implicit: intervals are kept sorted by start, the middle
+ * of every index range is the root of that range's subtree, and each node
+ * records the largest end in its subtree.  A query descends only into
+ * subtrees whose largest end reaches the query and whose starts don't pass
+ * it, so it costs O(log n + k) for k matching intervals.
+ *
+ * <p>Trees are built from {@link IntervalColumn} terms, so the field must be
+ * indexed with {@code setColumn(true)}.  Build them when a reader is warmed,
+ * with {@link #warm} or {@link #warmer}; once built,
+ * {@link NumericIntervalIntersectionQuery} and {@link InNumericIntervalQuery}
+ * use the tree of each segment that has one instead of enumerating terms.
+ */
+public final class IntervalTree {
+  /**
+   * Built trees.  Segments whose field lacks column terms for some
+   * documents cache null.
+   */
+  private static final ReaderCache<IntervalTree> CACHE =
+      new ReaderCache<IntervalTree>() {
+        @Override
+        protected IntervalTree load(final IndexReader reader,
+                                    final String field) throws IOException {
+          return build(reader, field);
+        }
+      };
+
+
+  /**
+   * Interval starts, ascending.
+   */
+  private final long[] starts;
+
+  /**
+   * Interval ends.
+   */
+  private final long[] ends;
+
+  /**
+   * The document of each interval.
+   */
+  private final int[] docs;
+
+  /**
+   * The largest end in the subtree rooted at each index.
+   */
+  private final long[] maxEnds;
+
+
+  /**
+   * Creates a tree over intervals sorted by start.
+   * @param starts interval starts, ascending
+   * @param ends interval ends
+   * @param docs the document of each interval
+   */
+  private IntervalTree(final long[] starts,
+                       final long[] ends,
+                       final int[] docs) {
+    this.starts = starts;
+    this.ends = ends;
+    this.docs = docs;
+    this.maxEnds = new long[starts.length];
+    summarize(0, starts.length - 1);
+  }
+
+
+  /**
+   * Gets the tree of a field of a segment, building it on first use.
+   * @param segment a segment reader
+   * @param field the name of the field
+   * @return the tree, or null if some documents of the field were indexed
+   *     without column terms
+   * @throws IOException if IO issues occur
+   */
+  public static IntervalTree get(final IndexReader segment,
+                                 final String field) throws IOException {
+    return CACHE.get(segment, field);
+  }
+
+
+  /**
+   * Gets the tree of a field of a segment if it was built.
+   * @param segment a segment reader
+   * @param field the name of the field
+   * @return the tree, or null
+   */
+  static IntervalTree getIfBuilt(final IndexReader segment,
+                                 final String field) {
+    return CACHE.getIfLoaded(segment, field);
+  }
+
+
+  /**
+   * Builds the trees of fields for every segment of a reader.
+   * @param reader the reader
+   * @param fields the names of the fields
+   * @throws IOException if IO issues occur
+   */
+  public static void warm(final IndexReader reader, final String... fields)
+      throws IOException {
+    final IndexReader[] segments = reader.getSequentialSubReaders();
+    if (segments == null) {
+      for (String field : fields) {
+        get(reader, field);
+      }
+    } else {
+      for (IndexReader segment : segments) {
+        warm(segment, fields);
+      }
+    }
+  }
+
+
+  /**
+   * Creates a warmer that builds the trees of fields for newly merged
+   * segments, for
+   * {@link org.apache.lucene.index.IndexWriterConfig#setMergedSegmentWarmer}.
+   * @param fields the names of the fields
+   * @return the warmer
+   */
+  public static IndexWriter.IndexReaderWarmer warmer(final String... fields) {
+    final String[] copy = fields.clone();
+    return new IndexWriter.IndexReaderWarmer() {
+      @Override
+      public void warm(final IndexReader reader) throws IOException {
+        IntervalTree.warm(reader, copy);
+      }
+    };
+  }
+
+
+  /**
+   * Reads the column terms of a field, which are already sorted by start.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the tree, or null if some documents with the field have no
+   *     column terms
+   * @throws IOException if IO issues occur
+   */
+  private static IntervalTree build(final IndexReader reader,
+                                    final String field) throws IOException {
+    final FixedBitSet withField = new FixedBitSet(reader.maxDoc());
+    final FixedBitSet withColumn = new FixedBitSet(reader.maxDoc());
+    int size = 0;
+    long[] starts = new long[64];
+    long[] ends = new long[64];
+    int[] docs = new int[64];
+
+    final String internedField = field.intern();
+    final TermEnum terms = reader.terms(new Term(
+        internedField, String.valueOf(IntervalSchema.SCHEMA_PREFIX)));
+    final TermDocs termDocs = reader.termDocs();
+    try {
+      for (Term term = terms.term(); term != null
+               && term.field() == internedField
+               && term.text().charAt(0) <= IntervalColumn.COLUMN_PREFIX;
+           term = terms.next() ? terms.term() : null) {
+        final String text = term.text();
+        termDocs.seek(terms);
+        if (text.charAt(0) == IntervalSchema.SCHEMA_PREFIX) {
+          while (termDocs.next()) {
+            withField.set(termDocs.doc());
+          }
+          continue;
+        }
+        final long start = IntervalColumn.startOf(text);
+        final long end = IntervalColumn.endOf(text);
+        while (termDocs.next()) {
+          if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size << 1);
+            ends = Arrays.copyOf(ends, size << 1);
+            docs = Arrays.copyOf(docs, size << 1);
+          }
+          starts[size] = start;
+          ends[size] = end;
+          docs[size] = termDocs.doc();
+          withColumn.set(docs[size]);
+          size++;
+        }
+      }
+    } finally {
+      termDocs.close();
+      terms.close();
+    }
+
+    if (withColumn.cardinality() != withField.cardinality()) {
+      return null;
+    }
+    return new IntervalTree(Arrays.copyOf(starts, size),
+                            Arrays.copyOf(ends, size),
+                            Arrays.copyOf(docs, size));
+  }
+
+
+  /**
+   * Computes the largest end of every subtree in an index range.
+   * @param low the first index of the range
+   * @param high the last index of the range
+   * @return the largest end in the range
+   */
+  private long summarize(final int low, final int high) {
+    if (low > high) {
+      return Long.MIN_VALUE;
+    }
+    final int middle = (low + high) >>> 1;
+    final long maxEnd = Math.max(this.ends[middle],
+        Math.max(summarize(low, middle - 1), summarize(middle + 1, high)));
+    this.maxEnds[middle] = maxEnd;
+    return maxEnd;
+  }
+
+
+  /**
+   * @return the number of intervals
+   */
+  public int size() {
+    return this.starts.length;
+  }
+
+
+  /**
+   * Marks the live documents with an interval intersecting a range.
+   * @param segment the segment reader the tree was built from, for deletions
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param result the set to mark documents in
+   */
+  public void intersecting(final IndexReader segment,
+                           final long start,
+                           final long end,
+                           final FixedBitSet result) {
+    intersecting(segment, start, end, result, 0, this.starts.length - 1);
+  }
+
+
+  /**
+   * Marks the live documents containing a point.
+   * @param segment the segment reader the tree was built from, for deletions
+   * @param point the point
+   * @param result the set to mark documents in
+   */
+  public void containing(final IndexReader segment,
+                         final long point,
+                         final FixedBitSet result) {
+    intersecting(segment, point, point, result, 0, this.starts.length - 1);
+  }
+
+
+  /**
+   * Marks the documents with an interval intersecting a range within the
+   * subtree of an index range.
+   * @param segment the segment reader, for deletions
+   * @param start the start of the range
+   * @param end the end of the range
+   * @param result the set to mark documents in
+   * @param low the first index of the subtree
+   * @param high the last index of the subtree
+   */
+  private void intersecting(final IndexReader segment,
+                            final long start,
+                            final long end,
+                            final FixedBitSet result,
+                            final int low,
+                            final int high) {
+    int lo = low;
+    while (lo <= high) {
+      final int middle = (lo + high) >>> 1;
+      if (this.maxEnds[middle] < start) {
+        return;
+      }
+      intersecting(segment, start, end, result, lo, middle - 1);
+      if (this.starts[middle] > end) {
+        return;
+      }
+      if (this.ends[middle] >= start && !segment.isDeleted(this.docs[middle])) {
+        result.set(this.docs[middle]);
+      }
+      // Continue with the right subtree without recursing.
+      lo = middle + 1;
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "IntervalTree(" + size() + " intervals)";
+  }
+}
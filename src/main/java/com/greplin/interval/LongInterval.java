@@ -101,13 +101,11 @@ public class LongInterval
    * Parses a string into an interval.
    * @param value the string.
    * @return the interval.
+   * @see IntervalParser
    */
   public static LongInterval valueOf(final String value) {
-    String trimmed = value.trim();
-    int middle = trimmed.indexOf('-', 1);
-    long start = Long.parseLong(trimmed.substring(0, middle).trim());
-    long end = Long.parseLong(trimmed.substring(middle + 1).trim());
-    return new LongInterval(start, end);
+    IntervalParser parser = new IntervalParser().parse(value);
+    return new LongInterval(parser.getStart(), parser.getEnd());
   }
 
 
@@ -116,4 +114,40 @@ public class LongInterval
     return Longs.compare(this.start, other.start);
   }
 
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final LongInterval other = (LongInterval) o;
+    return this.start == other.start && this.end == other.end;
+  }
+
+
+  /**
+   * Hashes like {@link NumericInterval#hashCode()}, without boxing.
+   */
+  @Override
+  public int hashCode() {
+    return 31 * (31 + Longs.hashCode(this.start))
+        + Longs.hashCode(this.end);
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{" + this.start + '-' + this.end + '}';
+  }
+
+
+  @Override
+  public String asString() {
+    return this.start + "-" + this.end;
+  }
+
 }
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A growable collection of long intervals, stored as parallel arrays of
+ * starts and ends rather than {@link LongInterval} objects.
+ *
+ * <p>{@link #sort()} orders the intervals by start, then end, and
+ * {@link #merge()} replaces them with their disjoint union.  The stabbing
+ * queries {@link #stab}, {@link #containsPoint} and {@link #intersectsAny}
+ * sort the array first if needed, so their indices refer to the sorted
+ * order.  They then search it as an implicit interval tree, like
+ * {@link IntervalTree}: the middle of every index range roots that range's
+ * subtree and records its largest end, so a stab costs O(log n + k) for k
+ * results and the other queries O(log n).
+ */
+public final class LongIntervalArray implements Serializable {
+  /**
+   * The default initial capacity.
+   */
+  private static final int DEFAULT_CAPACITY = 16;
+
+
+  /**
+   * The starts of the intervals.
+   */
+  private long[] starts;
+
+  /**
+   * The ends of the intervals.
+   */
+  private long[] ends;
+
+  /**
+   * The largest end in the implicit subtree rooted at each index, built
+   * when a stabbing query needs it.
+   */
+  private long[] maxEnds;
+
+  /**
+   * The number of intervals.
+   */
+  private int size = 0;
+
+  /**
+   * Whether the intervals are known to be sorted.
+   */
+  private boolean sorted = true;
+
+  /**
+   * Whether {@link #maxEnds} is up to date.
+   */
+  private boolean indexed = false;
+
+
+  /**
+   * Creates an empty array.
+   */
+  public LongIntervalArray() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * Creates an empty array.
+   * @param capacity the number of intervals to allocate room for
+   */
+  public LongIntervalArray(final int capacity) {
+    this.starts = new long[Math.max(1, capacity)];
+    this.ends = new long[this.starts.length];
+  }
+
+
+  /**
+   * Adds an interval.
+   * @param start the start of the interval
+   * @param end the end of the interval
+   * @return this array
+   */
+  public LongIntervalArray add(final long start, final long end) {
+    if (this.size == this.starts.length) {
+      final int capacity = this.size << 1;
+      this.starts = Arrays.copyOf(this.starts, capacity);
+      this.ends = Arrays.copyOf(this.ends, capacity);
+    }
+    if (this.sorted && this.size > 0) {
+      final long lastStart = this.starts[this.size - 1];
+      this.sorted = lastStart < start
+          || (lastStart == start && this.ends[this.size - 1] <= end);
+    }
+    this.starts[this.size] = start;
+    this.ends[this.size] = end;
+    this.size++;
+    this.indexed = false;
+    return this;
+  }
+
+
+  /**
+   * Adds an interval.
+   * @param interval the interval
+   * @return this array
+   */
+  public LongIntervalArray add(final LongInterval interval) {
+    return add(interval.getStart(), interval.getEnd());
+  }
+
+
+  /**
+   * Removes every interval, keeping the allocated arrays.
+   * @return this array
+   */
+  public LongIntervalArray clear() {
+    this.size = 0;
+    this.sorted = true;
+    this.indexed = false;
+    return this;
+  }
+
+
+  /**
+   * @return the number of intervals
+   */
+  public int size() {
+    return this.size;
+  }
+
+
+  /**
+   * @param index the index of an interval
+   * @return the start of the interval
+   */
+  public long getStart(final int index) {
+    checkIndex(index);
+    return this.starts[index];
+  }
+
+
+  /**
+   * @param index the index of an interval
+   * @return the end of the interval
+   */
+  public long getEnd(final int index) {
+    checkIndex(index);
+    return this.ends[index];
+  }
+
+
+  /**
+   * @param index the index of an interval
+   * @return the interval, as a new object
+   */
+  public LongInterval get(final int index) {
+    checkIndex(index);
+    return new LongInterval(this.starts[index], this.ends[index]);
+  }
+
+
+  /**
+   * Checks an index is in bounds.
+   * @param index the index
+   */
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+          "Index " + index + " of " + this.size);
+    }
+  }
+
+
+  /**
+   * Sorts the intervals by start, then by end, in place.
+   * @return this array
+   */
+  public LongIntervalArray sort() {
+    if (!this.sorted) {
+      sort(0, this.size - 1);
+      this.sorted = true;
+      this.indexed = false;
+    }
+    return this;
+  }
+
+
+  /**
+   * Sorts, then merges overlapping and adjacent intervals in place, so the
+   * array holds the disjoint union of its intervals.  Intervals with a start
+   * after their end are dropped.
+   * @return this array
+   */
+  public LongIntervalArray merge() {
+    sort();
+    int merged = 0;
+    for (int j = 0; j < this.size; j++) {
+      if (this.starts[j] > this.ends[j]) {
+        continue;
+      }
+      if (merged > 0 && touches(this.ends[merged - 1], this.starts[j])) {
+        this.ends[merged - 1] = Math.max(this.ends[merged - 1], this.ends[j]);
+      } else {
+        this.starts[merged] = this.starts[j];
+        this.ends[merged] = this.ends[j];
+        merged++;
+      }
+    }
+    this.size = merged;
+    this.indexed = false;
+    return this;
+  }
+
+
+  /**
+   * Returns whether an interval starting at {@code start} overlaps or is
+   * adjacent to one ending at {@code end}.
+   * @param end the end of the earlier interval
+   * @param start the start of the later interval
+   * @return whether the two intervals should be merged
+   */
+  private static boolean touches(final long end, final long start) {
+    return end == Long.MAX_VALUE || start <= end + 1;
+  }
+
+
+  /**
+   * Finds the intervals containing a point.  Sorts the array if needed.
+   * @param point the point
+   * @return the indices of the intervals containing the point, ascending
+   */
+  public int[] stab(final long point) {
+    index();
+    final int[] result =
+        new int[collect(point, 0, this.size - 1, null, 0)];
+    collect(point, 0, this.size - 1, result, 0);
+    return result;
+  }
+
+
+  /**
+   * Visits the intervals containing a point within the subtree of an index
+   * range, in order.
+   * @param point the point
+   * @param low the first index of the subtree
+   * @param high the last index of the subtree
+   * @param result where to store the indices found, or null to count them
+   * @param count the number of indices found so far
+   * @return the number of indices found, including those of this subtree
+   */
+  private int collect(final long point,
+                      final int low,
+                      final int high,
+                      final int[] result,
+                      final int count) {
+    int found = count;
+    int lo = low;
+    while (lo <= high) {
+      final int middle = (lo + high) >>> 1;
+      if (this.maxEnds[middle] < point) {
+        return found;
+      }
+      found = collect(point, lo, middle - 1, result, found);
+      if (this.starts[middle] > point) {
+        return found;
+      }
+      if (this.ends[middle] >= point) {
+        if (result != null) {
+          result[found] = middle;
+        }
+        found++;
+      }
+      // Continue with the right subtree without recursing.
+      lo = middle + 1;
+    }
+    return found;
+  }
+
+
+  /**
+   * Returns whether any interval contains a point.  Sorts the array if
+   * needed.
+   * @param point the point
+   * @return whether an interval contains the point
+   */
+  public boolean containsPoint(final long point) {
+    return intersectsAny(point, point);
+  }
+
+
+  /**
+   * Returns whether any interval intersects a range.  Sorts the array if
+   * needed.
+   * @param start the start of the range
+   * @param end the end of the range
+   * @return whether an interval intersects the range
+   */
+  public boolean intersectsAny(final long start, final long end) {
+    index();
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      if (this.maxEnds[middle] < start) {
+        return false;
+      }
+      if (this.starts[middle] > end) {
+        high = middle - 1;
+        continue;
+      }
+      // Every interval of the left subtree starts by the end of the range,
+      // so it intersects the range if its largest end reaches the start.
+      if (this.ends[middle] >= start || (low < middle
+          && this.maxEnds[(low + middle - 1) >>> 1] >= start)) {
+        return true;
+      }
+      low = middle + 1;
+    }
+    return false;
+  }
+
+
+  /**
+   * Sorts the array and builds the largest end of each implicit subtree.
+   */
+  private void index() {
+    sort();
+    if (this.indexed) {
+      return;
+    }
+    if (this.maxEnds == null || this.maxEnds.length < this.size) {
+      this.maxEnds = new long[this.starts.length];
+    }
+    summarize(0, this.size - 1);
+    this.indexed = true;
+  }
+
+
+  /**
+   * Records the largest end of the subtree of an index range and of each
+   * of its own subtrees.
+   * @param low the first index of the subtree
+   * @param high the last index of the subtree
+   * @return the largest end in the range
+   */
+  private long summarize(final int low, final int high) {
+    if (low > high) {
+      return Long.MIN_VALUE;
+    }
+    final int middle = (low + high) >>> 1;
+    final long maxEnd = Math.max(this.ends[middle],
+        Math.max(summarize(low, middle - 1), summarize(middle + 1, high)));
+    this.maxEnds[middle] = maxEnd;
+    return maxEnd;
+  }
+
+
+  /**
+   * Sorts the intervals between two indices, in place.
+   * @param low the first index to sort
+   * @param high the last index to sort
+   */
+  private void sort(final int low, final int high) {
+    int lo = low;
+    int hi = high;
+    while (hi - lo > 0) {
+      if (hi - lo < 8) {
+        insertionSort(lo, hi);
+        return;
+      }
+      final int middle = (lo + hi) >>> 1;
+      final long pivotStart = this.starts[middle];
+      final long pivotEnd = this.ends[middle];
+      int left = lo;
+      int right = hi;
+      while (left <= right) {
+        while (compare(left, pivotStart, pivotEnd) < 0) {
+          left++;
+        }
+        while (compare(right, pivotStart, pivotEnd) > 0) {
+          right--;
+        }
+        if (left <= right) {
+          swap(left++, right--);
+        }
+      }
+      // Recurse on the smaller half to bound the stack depth.
+      if (right - lo < hi - left) {
+        sort(lo, right);
+        lo = left;
+      } else {
+        sort(left, hi);
+        hi = right;
+      }
+    }
+  }
+
+
+  /**
+   * Insertion sorts the intervals between two indices.
+   * @param low the first index to sort
+   * @param high the last index to sort
+   */
+  private void insertionSort(final int low, final int high) {
+    for (int j = low + 1; j <= high; j++) {
+      for (int k = j;
+           k > low && compare(k - 1, this.starts[k], this.ends[k]) > 0;
+           k--) {
+        swap(k - 1, k);
+      }
+    }
+  }
+
+
+  /**
+   * Compares an interval to given bounds, by start then end.
+   * @param index the index of the interval
+   * @param start the start to compare to
+   * @param end the end to compare to
+   * @return negative, zero or positive as the interval is less, equal or
+   *     greater
+   */
+  private int compare(final int index, final long start, final long end) {
+    if (this.starts[index] != start) {
+      return this.starts[index] < start ? -1 : 1;
+    }
+    if (this.ends[index] != end) {
+      return this.ends[index] < end ? -1 : 1;
+    }
+    return 0;
+  }
+
+
+  /**
+   * Swaps two intervals.
+   * @param a the index of the first interval
+   * @param b the index of the second interval
+   */
+  private void swap(final int a, final int b) {
+    final long start = this.starts[a];
+    this.starts[a] = this.starts[b];
+    this.starts[b] = start;
+    final long end = this.ends[a];
+    this.ends[a] = this.ends[b];
+    this.ends[b] = end;
+  }
+
+
+  @Override
+  public String toString() {
+    final StringBuilder result = new StringBuilder("LongIntervalArray[");
+    for (int i = 0; i < this.size; i++) {
+      if (i > 0) {
+        result.append(", ");
+      }
+      result.append(this.starts[i]).append('-').append(this.ends[i]);
+    }
+    return result.append(']').toString();
+  }
+}
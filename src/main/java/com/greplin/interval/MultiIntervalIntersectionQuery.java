@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Query that matches 64 bit intervals intersecting any of a set of windows.
+ *
+ * <p>The windows are merged in to their disjoint union first.  At each shift
+ * level, the terms intersecting a window are the range from the block of
+ * its start to the block of its end, as for
+ * {@link NumericIntervalIntersectionQuery}, and ranges of neighbouring
+ * windows that meet at that level are joined.  Coarse levels thus hold few
+ * ranges however many windows there are, and all of the ranges are walked
+ * in term order in one pass over the dictionary, rewriting to a single
+ * constant score filter.
+ */
+public final class MultiIntervalIntersectionQuery extends MultiTermQuery {
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The starts of the merged windows, ascending.
+   */
+  private final long[] starts;
+
+  /**
+   * The ends of the merged windows.
+   */
+  private final long[] ends;
+
+  /**
+   * The precision step used when indexing the field.
+   */
+  private final int precisionStep;
+
+
+  /**
+   * Creates a query to find intervals intersecting any of a set of windows.
+   * @param name The name of the field.
+   * @param windows The windows, in any order and possibly overlapping.
+   */
+  public MultiIntervalIntersectionQuery(
+      final String name, final Collection<? extends LongInterval> windows) {
+    this(name, windows, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query to find intervals intersecting any of a set of windows.
+   * @param name The name of the field.
+   * @param windows The windows, in any order and possibly overlapping.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public MultiIntervalIntersectionQuery(
+      final String name, final Collection<? extends LongInterval> windows,
+      final int precisionStep) {
+    this.name = name.intern();
+    this.precisionStep = precisionStep;
+
+    final LongIntervalArray merged = new LongIntervalArray(
+        Math.max(1, windows.size()));
+    for (LongInterval window : windows) {
+      merged.add(window);
+    }
+    merged.merge();
+    this.starts = new long[merged.size()];
+    this.ends = new long[merged.size()];
+    for (int i = 0; i < merged.size(); i++) {
+      this.starts[i] = merged.getStart(i);
+      this.ends[i] = merged.getEnd(i);
+    }
+    setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+  }
+
+
+  /**
+   * Gets the ranges of terms whose blocks intersect any of the windows.
+   * @param schema the schema of the field
+   * @return alternating inclusive lower and upper bounds, in term order
+   */
+  List<String> getBounds(final IntervalSchema schema) {
+    final List<String> bounds = Lists.newArrayList();
+    for (int level = 0; level < schema.getLevelCount(); level++) {
+      final int shift = schema.getShift(level);
+      int i = 0;
+      while (i < this.starts.length) {
+        final long first = this.starts[i] >> shift;
+        long last = this.ends[i++] >> shift;
+        // Join the ranges of later windows starting in or after this one.
+        while (i < this.starts.length
+            && this.starts[i] >> shift <= last + 1) {
+          last = Math.max(last, this.ends[i++] >> shift);
+        }
+        bounds.add(NumericUtils.longToPrefixCoded(first << shift, shift));
+        bounds.add(NumericUtils.longToPrefixCoded(last << shift, shift));
+      }
+    }
+    return bounds;
+  }
+
+
+  @Override
+  protected FilteredTermEnum getEnum(final IndexReader reader)
+      throws IOException {
+    final IntervalSchema schema = IntervalSchema.read(reader, this.name,
+        IntervalSchema.uniform(64, this.precisionStep));
+    // Open-ended intervals intersect some window exactly when they start at
+    // or before the end of the last one.
+    final List<String> bounds = this.ends.length == 0
+        ? Lists.<String>newArrayList()
+        : IntervalTerms.openEndedBounds(
+            this.ends[this.ends.length - 1], schema);
+    bounds.addAll(getBounds(schema));
+    return new BoundedTermEnum(reader, this.name, bounds);
+  }
+
+
+  /**
+   * @return the number of windows after merging
+   */
+  public int getWindowCount() {
+    return this.starts.length;
+  }
+
+
+  @Override
+  public String toString(final String field) {
+    final StringBuilder result = new StringBuilder("containedInIntervals(");
+    for (int i = 0; i < this.starts.length; i++) {
+      result.append(this.starts[i]).append(" - ").append(this.ends[i])
+          .append(", ");
+    }
+    return result.append(field).append(')').toString();
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = super.hashCode();
+    result = 31 * result + this.name.hashCode();
+    result = 31 * result + Arrays.hashCode(this.starts);
+    result = 31 * result + Arrays.hashCode(this.ends);
+    return 31 * result + this.precisionStep;
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    final MultiIntervalIntersectionQuery other =
+        (MultiIntervalIntersectionQuery) o;
+    return other.name == this.name
+        && Arrays.equals(other.starts, this.starts)
+        && Arrays.equals(other.ends, this.ends)
+        && other.precisionStep == this.precisionStep;
+  }
+}
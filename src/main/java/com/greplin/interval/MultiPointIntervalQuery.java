@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Query that matches 64 bit intervals containing any of a set of values.
+ *
+ * <p>An interval contains a value exactly when one of its segments is the
+ * block containing the value at that segment's shift.  The query sorts the
+ * values and, at each shift level, takes the distinct blocks containing
+ * them, joining consecutive blocks in to one range of terms.  Nearby values
+ * share their coarse blocks, so each shared term is read once, and the
+ * resulting ranges are walked in term order in one pass over the
+ * dictionary, instead of seeking every level once per value.
+ */
+public final class MultiPointIntervalQuery extends MultiTermQuery {
+  /**
+   * The name of the field.
+   */
+  private final String name;
+
+  /**
+   * The distinct values, ascending.
+   */
+  private final long[] points;
+
+  /**
+   * The precision step used when indexing the field.
+   */
+  private final int precisionStep;
+
+
+  /**
+   * Creates a query to find intervals containing any of a set of values.
+   * @param name The name of the field.
+   * @param points The values, in any order.
+   */
+  public MultiPointIntervalQuery(final String name, final long... points) {
+    this(name, points, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a query to find intervals containing any of a set of values.
+   * @param name The name of the field.
+   * @param points The values, in any order.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   */
+  public MultiPointIntervalQuery(final String name,
+                                 final long[] points,
+                                 final int precisionStep) {
+    this.name = name.intern();
+    this.precisionStep = precisionStep;
+
+    final long[] sorted = points.clone();
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[count - 1]) {
+        sorted[count++] = sorted[i];
+      }
+    }
+    this.points = Arrays.copyOf(sorted, count);
+    setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+  }
+
+
+  /**
+   * Gets the ranges of terms whose blocks contain any of the values.
+   * @param schema the schema of the field
+   * @return alternating inclusive lower and upper bounds, in term order
+   */
+  List<String> getBounds(final IntervalSchema schema) {
+    final List<String> bounds = Lists.newArrayList();
+    for (int level = 0; level < schema.getLevelCount(); level++) {
+      final int shift = schema.getShift(level);
+      int i = 0;
+      while (i < this.points.length) {
+        final long first = this.points[i] >> shift;
+        long last = first;
+        // Extend the range over values in the same or the next block.
+        while (i < this.points.length
+            && (this.points[i] >> shift == last
+                || this.points[i] >> shift == last + 1)) {
+          last = this.points[i++] >> shift;
+        }
+        bounds.add(NumericUtils.longToPrefixCoded(first << shift, shift));
+        bounds.add(NumericUtils.longToPrefixCoded(last << shift, shift));
+      }
+    }
+    return bounds;
+  }
+
+
+  @Override
+  protected FilteredTermEnum getEnum(final IndexReader reader)
+      throws IOException {
+    final IntervalSchema schema = IntervalSchema.read(reader, this.name,
+        IntervalSchema.uniform(64, this.precisionStep));
+    // Open-ended intervals contain some value exactly when they start at
+    // or before the greatest one.
+    final List<String> bounds = this.points.length == 0
+        ? Lists.<String>newArrayList()
+        : IntervalTerms.openEndedBounds(
+            this.points[this.points.length - 1], schema);
+    bounds.addAll(getBounds(schema));
+    return new BoundedTermEnum(reader, this.name, bounds);
+  }
+
+
+  /**
+   * @return the distinct values, ascending
+   */
+  public long[] getPoints() {
+    return this.points.clone();
+  }
+
+
+  @Override
+  public String toString(final String field) {
+    if (this.points.length == 0) {
+      return String.format("inInterval(none, %s)", field);
+    }
+    return String.format("inInterval(%d values in %d - %d, %s)",
+        this.points.length, this.points[0],
+        this.points[this.points.length - 1], field);
+  }
+
+
+  @Override
+  public int hashCode() {
+    int result = super.hashCode();
+    result = 31 * result + this.name.hashCode();
+    result = 31 * result + Arrays.hashCode(this.points);
+    return 31 * result + this.precisionStep;
+  }
+
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    final MultiPointIntervalQuery other = (MultiPointIntervalQuery) o;
+    return other.name == this.name
+        && Arrays.equals(other.points, this.points)
+        && other.precisionStep == this.precisionStep;
+  }
+}
@@ -17,17 +17,22 @@
 package com.greplin.interval;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.AbstractField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.FieldInfo;
-import org.apache.lucene.util.NumericUtils;
 
 import java.io.Reader;
 
 /**
  * Field that stores a numeric interval.
+ *
+ * <p>Like {@link org.apache.lucene.document.NumericField}, instances can be
+ * reused across documents: create the field and its document once, then
+ * call {@link #setInterval(long, long)} before each
+ * {@code IndexWriter.addDocument} call.  Reusing the field avoids
+ * allocating a field, a token stream and the interval's segments for every
+ * interval indexed.
  */
 public final class NumericIntervalField extends AbstractField {
   /**
@@ -70,29 +75,104 @@ public final class NumericIntervalField extends AbstractField {
                               final long min,
                               final long max,
                               final int precisionStep) {
+    this(name, index, precisionStep);
+    setInterval(min, max);
+  }
+
+
+  /**
+   * Creates a new, empty numeric interval field for reuse.  The interval
+   * must be set with {@link #setInterval(long, long)} before the field is
+   * added to an index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   */
+  public NumericIntervalField(final String name, final boolean index) {
+    this(name, index, DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a new, empty numeric interval field for reuse.  The interval
+   * must be set with {@link #setInterval(long, long)} before the field is
+   * added to an index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param precisionStep The precision step used to control
+   *                      index size vs query speed.
+   */
+  public NumericIntervalField(final String name,
+                              final boolean index,
+                              final int precisionStep) {
+    this(name, index, IntervalSchema.uniform(64, precisionStep));
+  }
+
+
+  /**
+   * Creates a new, empty numeric interval field with a custom schedule of
+   * shift levels.  Queries read the schedule from the index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param schema The 64 bit shift levels to index segments at.
+   */
+  public NumericIntervalField(final String name,
+                              final boolean index,
+                              final IntervalSchema schema) {
     super(name,
         Field.Store.NO,
         index ? Field.Index.ANALYZED_NO_NORMS : Field.Index.NO,
         Field.TermVector.NO);
+    if (schema.getValueSize() != 64) {
+      throw new IllegalArgumentException(
+          "Expected a 64 bit schema: " + schema);
+    }
     setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+    this.tokenStreamValue = new NumericIntervalTokenStream(schema);
+  }
+
 
-    final ImmutableList.Builder<IntervalSegment> segmentsBuilder =
-        ImmutableList.builder();
-    NumericUtils.splitLongRange(new NumericUtils.LongRangeBuilder() {
-      @Override
-      public void addRange(final long min, final long max, final int shift) {
-        long currentMinimum = min;
-        while (currentMinimum <= max) {
-          segmentsBuilder.add(new IntervalSegment(currentMinimum, shift));
-          currentMinimum += 1L << shift;
-        }
-      }
-    }, precisionStep, min, max);
-    ImmutableList<IntervalSegment> segments = segmentsBuilder.build();
+  /**
+   * Sets the interval stored by this field, replacing any previous one.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field, so it can be used as
+   *     {@code doc.add(new NumericIntervalField(name, true).setInterval(a, b))}
+   */
+  public NumericIntervalField setInterval(final long min, final long max) {
+    this.tokenStreamValue.setInterval(min, max);
+    return this;
+  }
+
+
+  /**
+   * Sets an interval that starts at a value and is still ongoing, replacing
+   * any previous one.  It matches queries as [start, Long.MAX_VALUE] does,
+   * but is indexed as one term per shift level instead of the segments of
+   * that range, and its column term records an end of Long.MAX_VALUE.
+   * Closing the interval later means reindexing the document with
+   * {@link #setInterval(long, long)}.
+   * @param start The start of the interval.
+   * @return this field
+   */
+  public NumericIntervalField setOpenEndedInterval(final long start) {
+    this.tokenStreamValue.setOpenEnded(start);
+    return this;
+  }
 
-    this.tokenStreamValue = new NumericIntervalTokenStream(segments);
+
+  /**
+   * Sets whether to also index the bounds of each interval as a term, so
+   * they can be read back per document through {@link IntervalColumn}.
+   * Off by default; adds one term per interval.
+   * @param column whether to index column terms
+   * @return this field
+   */
+  public NumericIntervalField setColumn(final boolean column) {
+    this.tokenStreamValue.setColumn(column);
+    return this;
   }
 
+
   @Override
   public String stringValue() {
     return null;
@@ -109,6 +189,48 @@ public final class NumericIntervalField extends AbstractField {
   }
 
 
+  /**
+   * Sets the interval stored by this field, replacing any previous one.
+   * @param interval The interval.
+   * @return this field
+   */
+  public NumericIntervalField setInterval(final LongInterval interval) {
+    return setInterval(interval.getStart(), interval.getEnd());
+  }
+
+
+  /**
+   * Sets a double interval stored by this field, replacing any previous
+   * one.  Doubles are indexed as sortable longs, see
+   * {@link org.apache.lucene.util.NumericUtils#doubleToSortableLong(double)},
+   * and must be queried with the double factory methods of
+   * {@link NumericIntervalIntersectionQuery} and
+   * {@link InNumericIntervalQuery}.  Infinite bounds are supported for
+   * open-ended intervals.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field
+   * @throws IllegalArgumentException if either bound is NaN
+   */
+  public NumericIntervalField setDoubleInterval(final double min,
+                                                final double max) {
+    return setInterval(IntervalTerms.sortableLong(min),
+                       IntervalTerms.sortableLong(max));
+  }
+
+
+  /**
+   * Sets a double interval stored by this field, replacing any previous
+   * one.
+   * @param interval The interval.
+   * @return this field
+   * @see #setDoubleInterval(double, double)
+   */
+  public NumericIntervalField setInterval(final DoubleInterval interval) {
+    return setDoubleInterval(interval.getStart(), interval.getEnd());
+  }
+
+
   /**
    * Splits a numeric range string in to the two numbers comprising it.
    * @param rangeString the range string
@@ -116,11 +238,8 @@ public final class NumericIntervalField extends AbstractField {
    */
   @VisibleForTesting
   static long[] splitParts(final String rangeString) {
-    String trimmed = rangeString.trim();
-    int middle = trimmed.indexOf('-', 1);
-    long start = Long.parseLong(trimmed.substring(0, middle).trim());
-    long end = Long.parseLong(trimmed.substring(middle + 1).trim());
-    return new long[]{start, end};
+    IntervalParser parser = new IntervalParser().parse(rangeString);
+    return new long[]{parser.getStart(), parser.getEnd()};
   }
 
   /**
@@ -133,7 +252,8 @@ public final class NumericIntervalField extends AbstractField {
   public static NumericIntervalField fromString(final String name,
                                                 final boolean index,
                                                 final String rangeString) {
-    long[] parts = splitParts(rangeString);
-    return new NumericIntervalField(name, index, parts[0], parts[1]);
+    IntervalParser parser = new IntervalParser().parse(rangeString);
+    return new NumericIntervalField(
+        name, index, parser.getStart(), parser.getEnd());
   }
 }
@@ -16,18 +16,50 @@
 
 package com.greplin.interval;
 
+import com.google.common.collect.Lists;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.FilteredTermEnum;
 import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.MultiTermQueryWrapperFilter;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Query that matches intervals partially contained by the given interval.
+ *
+ * <p>At every shift level, the indexed segments intersecting the query are
+ * exactly the terms between the prefix coded query start and the prefix
+ * coded query end at that shift.  The query enumerates only those ranges,
+ * seeking from one level to the next.  The shift levels are read from the
+ * {@link IntervalSchema} recorded in each index searched.
+ *
+ * <p>By default each segment is searched by the cheapest
+ * {@link IntervalQueryPlan}: enumerating the ranges in to a bit set,
+ * lazily merging their postings, or using the field's built
+ * {@link IntervalTree} or complete {@link IntervalColumn}.  The plan is
+ * shown in the query's explanations.
  */
 public final class NumericIntervalIntersectionQuery extends MultiTermQuery {
+  /**
+   * Rewrites to a constant score filter that plans each segment.
+   */
+  private static final RewriteMethod PLANNED_FILTER_REWRITE =
+      new RewriteMethod() {
+        @Override
+        public Query rewrite(final IndexReader reader,
+                             final MultiTermQuery query) {
+          final Query result = new IntervalConstantScoreQuery(
+              new IntersectionFilter((NumericIntervalIntersectionQuery) query));
+          result.setBoost(query.getBoost());
+          return result;
+        }
+      };
 
   /**
    * The name of the field.
@@ -49,6 +81,21 @@ public final class NumericIntervalIntersectionQuery extends MultiTermQuery {
    */
   private final int precisionStep;
 
+  /**
+   * Whether the bounds are sortable encoded doubles.
+   */
+  private final boolean doubles;
+
+  /**
+   * The number of terms visited by all enumerations of this query.
+   */
+  private final AtomicLong visitedTerms = new AtomicLong();
+
+  /**
+   * The strategy to use when available, or null to choose by cost.
+   */
+  private IntervalQueryPlan.Strategy forcedStrategy;
+
 
   /**
    * Creates a new numeric sub-interval query.
@@ -68,141 +115,223 @@ public final class NumericIntervalIntersectionQuery extends MultiTermQuery {
    * @param name The name of the field.
    * @param start The start of the interval to find sub-intervals in.
    * @param end The end of the interval to find sub-intervals in.
-   * @param precisionStep The precision step used when indexing the field.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
    */
   public NumericIntervalIntersectionQuery(final String name,
                                           final long start,
                                           final long end,
                                           final int precisionStep) {
+    this(name, start, end, precisionStep, false);
+  }
+
+
+  /**
+   * Creates a new numeric sub-interval query.
+   * @param name The name of the field.
+   * @param start The encoded start of the interval.
+   * @param end The encoded end of the interval.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @param doubles Whether the bounds are sortable encoded doubles.
+   */
+  private NumericIntervalIntersectionQuery(final String name,
+                                           final long start,
+                                           final long end,
+                                           final int precisionStep,
+                                           final boolean doubles) {
     this.name = name.intern();
     this.start = start;
     this.end = end;
     this.precisionStep = precisionStep;
-    setRewriteMethod(MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE);
+    this.doubles = doubles;
+    setRewriteMethod(PLANNED_FILTER_REWRITE);
   }
 
 
-  @Override
-  protected FilteredTermEnum getEnum(final IndexReader reader)
-      throws IOException {
-    return new NumericIntervalIntersectionTermEnum(reader);
+  /**
+   * Creates a query matching double intervals, indexed with
+   * {@link NumericIntervalField#setDoubleInterval(double, double)}, that
+   * intersect the given one.  Infinite bounds are supported.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   * @return the query
+   * @throws IllegalArgumentException if either bound is NaN
+   */
+  public static NumericIntervalIntersectionQuery forDoubles(
+      final String name, final double start, final double end) {
+    return forDoubles(name, start, end,
+        NumericIntervalField.DEFAULT_PRECISION_STEP);
   }
 
 
-  @Override
-  public String toString(final String field) {
-    return String.format("containedInInterval(%d - %d, %s)",
-        this.start, this.end, field);
+  /**
+   * Creates a query matching double intervals that intersect the given one.
+   * @param name The name of the field.
+   * @param start The start of the interval to find sub-intervals in.
+   * @param end The end of the interval to find sub-intervals in.
+   * @param precisionStep The precision step used when indexing the field,
+   *                      if the index does not record its schema.
+   * @return the query
+   * @throws IllegalArgumentException if either bound is NaN
+   */
+  public static NumericIntervalIntersectionQuery forDoubles(
+      final String name, final double start, final double end,
+      final int precisionStep) {
+    return new NumericIntervalIntersectionQuery(name,
+        IntervalTerms.sortableLong(start),
+        IntervalTerms.sortableLong(end),
+        precisionStep, true);
   }
 
 
   /**
-   * Filtered TermEnum that returns terms that intersect this interval.
+   * Forces a strategy wherever it is available, for testing.
+   * @param strategy the strategy, or null to choose by cost
+   * @return this query
    */
-  private final class NumericIntervalIntersectionTermEnum
-      extends FilteredTermEnum {
-
-    /**
-     * Whether to end the enumeration at the next opportunity.
-     */
-    private boolean endEnum = false;
-
-
-    /**
-     * Whether to skip to the next precision value next time.
-     */
-    private boolean skip = false;
+  NumericIntervalIntersectionQuery forceStrategy(
+      final IntervalQueryPlan.Strategy strategy) {
+    this.forcedStrategy = strategy;
+    return this;
+  }
 
 
-    /**
-     * The current shift value.
-     */
-    private int shift = 0;
+  @Override
+  protected FilteredTermEnum getEnum(final IndexReader reader)
+      throws IOException {
+    final List<String> bounds = IntervalTerms.intersectionBounds(
+        this.start, this.end, IntervalSchema.read(reader, this.name,
+            IntervalSchema.uniform(64, this.precisionStep)));
+    return new BoundedTermEnum(reader, this.name, bounds) {
+      @Override
+      public void close() throws IOException {
+        NumericIntervalIntersectionQuery.this.visitedTerms.addAndGet(
+            getVisitedTermCount());
+        super.close();
+      }
+    };
+  }
 
 
+  /**
+   * Filter that searches each segment by its {@link IntervalQueryPlan}.
+   */
+  private static final class IntersectionFilter
+      extends MultiTermQueryWrapperFilter<NumericIntervalIntersectionQuery>
+      implements PlannedFilter {
     /**
-     * The Index Reader we are reading terms from.
+     * Creates a filter.
+     * @param query the query to filter by
      */
-    private final IndexReader reader;
+    IntersectionFilter(final NumericIntervalIntersectionQuery query) {
+      super(query);
+    }
 
 
-    /**
-     * Creates a term enum matching intersected interval segments.
-     * @param reader the index to filter terms from
-     * @throws IOException if IO issues occur
-     */
-    private NumericIntervalIntersectionTermEnum(final IndexReader reader)
+    @Override
+    public IntervalQueryPlan plan(final IndexReader reader)
         throws IOException {
-      this.reader = reader;
-      setEnum(reader.terms(new Term(
-          NumericIntervalIntersectionQuery.this.name,
-          NumericUtils.longToPrefixCoded(
-              NumericIntervalIntersectionQuery.this.start))));
+      return IntervalQueryPlan.forSearch(reader, this.query.name,
+          this.query.start, this.query.end,
+          IntervalSchema.read(reader, this.query.name,
+              IntervalSchema.uniform(64, this.query.precisionStep)),
+          this.query.forcedStrategy);
     }
 
 
     @Override
-    public boolean next() throws IOException {
-      if (this.skip) {
-        this.skip = false;
-        this.shift += NumericIntervalIntersectionQuery.this.precisionStep;
-
-        this.currentTerm = null;
-        setEnum(this.reader.terms(new Term(
-            NumericIntervalIntersectionQuery.this.name,
-            NumericUtils.longToPrefixCoded(
-                NumericIntervalIntersectionQuery.this.start, this.shift)
-        )));
-        return this.currentTerm != null;
-      } else {
-        return super.next();
-      }
+    public DocIdSet getDocIdSet(final IndexReader reader) throws IOException {
+      return getDocIdSet(reader, plan(reader));
     }
 
 
     @Override
-    protected boolean termCompare(final Term term) {
-      if (term.field() != NumericIntervalIntersectionQuery.this.name) {
-        this.endEnum = true;
-        return false;
+    public DocIdSet getDocIdSet(final IndexReader reader,
+                                final IntervalQueryPlan plan)
+        throws IOException {
+      switch (plan.getStrategy()) {
+        case TERMS:
+          return super.getDocIdSet(reader);
+        case DISJUNCTION:
+          final List<Term> terms = Lists.newArrayList();
+          final FilteredTermEnum termEnum = this.query.getEnum(reader);
+          try {
+            do {
+              final Term term = termEnum.term();
+              if (term != null) {
+                terms.add(term);
+              }
+            } while (termEnum.next());
+          } finally {
+            termEnum.close();
+          }
+          return IntervalQueryPlan.disjunction(reader, terms);
+        default:
+          return plan.searchIntervals(reader);
       }
+    }
+  }
 
-      // Taken from NumericUtils.prefixCodedToLong
-      final int shift = term.text().charAt(0) - NumericUtils.SHIFT_START_LONG;
-      final long startOfRange = NumericUtils.prefixCodedToLong(term.text());
-      final long endOfRange = startOfRange + (1 << shift) - 1;
-      final boolean result =
-          // The query interval contains the start of the indexed.
-          (startOfRange >= NumericIntervalIntersectionQuery.this.start
-           && startOfRange <= NumericIntervalIntersectionQuery.this.end)
-
-          ||
 
-          // The query interval contains the start of the indexed.
-          (endOfRange >= NumericIntervalIntersectionQuery.this.start
-           && endOfRange <= NumericIntervalIntersectionQuery.this.end)
+  /**
+   * Returns the number of terms read from the index by all executions of
+   * this query so far, including the terms that ended each shift level.
+   * In constant-score mode this is summed over all segments searched.
+   * @return the number of visited terms
+   */
+  public long getTotalNumberOfVisitedTerms() {
+    return this.visitedTerms.get();
+  }
 
 
-          ||
+  /**
+   * Resets the count of visited terms.
+   * @see #getTotalNumberOfVisitedTerms()
+   */
+  public void clearTotalNumberOfVisitedTerms() {
+    this.visitedTerms.set(0);
+  }
 
-          // The query interval is contained in the indexed interval.
-          (startOfRange <= NumericIntervalIntersectionQuery.this.start
-           && endOfRange >= NumericIntervalIntersectionQuery.this.end);
 
-      this.skip = !result;
-      return result;
+  @Override
+  public String toString(final String field) {
+    if (this.doubles) {
+      return String.format("containedInInterval(%s - %s, %s)",
+          NumericUtils.sortableLongToDouble(this.start),
+          NumericUtils.sortableLongToDouble(this.end), field);
     }
+    return String.format("containedInInterval(%d - %d, %s)",
+        this.start, this.end, field);
+  }
 
 
-    @Override
-    public float difference() {
-      return 1.0f; // Just used as a boost and we don't care about scores.
-    }
+  @Override
+  public int hashCode() {
+    int result = super.hashCode();
+    result = 31 * result + this.name.hashCode();
+    result = 31 * result + (int) (this.start ^ (this.start >>> 32));
+    result = 31 * result + (int) (this.end ^ (this.end >>> 32));
+    result = 31 * result + this.precisionStep;
+    result = 31 * result + (this.doubles ? 1 : 0);
+    return 31 * result + (this.forcedStrategy == null
+        ? 0 : this.forcedStrategy.hashCode());
+  }
 
 
-    @Override
-    protected boolean endEnum() {
-      return this.endEnum;
+  @Override
+  public boolean equals(final Object o) {
+    if (!super.equals(o)) {
+      return false;
     }
+    final NumericIntervalIntersectionQuery other =
+        (NumericIntervalIntersectionQuery) o;
+    return other.name == this.name
+        && other.start == this.start
+        && other.end == this.end
+        && other.precisionStep == this.precisionStep
+        && other.doubles == this.doubles
+        && other.forcedStrategy == this.forcedStrategy;
   }
 }
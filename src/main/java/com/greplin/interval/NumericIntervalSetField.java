@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.AbstractField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo;
+
+import java.io.Reader;
+
+/**
+ * Field that stores a set of numeric intervals.
+ *
+ * <p>Overlapping and adjacent intervals are merged before they are
+ * decomposed, so the field emits each segment of the union exactly once.
+ * Indexing {@code 1789-1793} and {@code 1793-1797} in one set field produces
+ * the same tokens as a single {@code 1789-1797} interval, where two
+ * {@link NumericIntervalField}s would produce overlapping prefix terms.
+ * Queries treat the field like several {@link NumericIntervalField}s with
+ * the same name.
+ *
+ * <p>The field can be reused across documents: call {@link #clear()} and add
+ * the next document's intervals.  Intervals are kept in a reused
+ * {@link LongIntervalArray}.
+ */
+public final class NumericIntervalSetField extends AbstractField {
+  /**
+   * The stream of tokens used for the index.
+   */
+  private final NumericIntervalTokenStream tokenStreamValue;
+
+  /**
+   * The intervals added so far.
+   */
+  private final LongIntervalArray intervals = new LongIntervalArray();
+
+  /**
+   * Whether intervals changed since the token stream was last built.
+   */
+  private boolean dirty = false;
+
+
+  /**
+   * Creates a new, empty numeric interval set field.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   */
+  public NumericIntervalSetField(final String name, final boolean index) {
+    this(name, index, NumericIntervalField.DEFAULT_PRECISION_STEP);
+  }
+
+
+  /**
+   * Creates a new, empty numeric interval set field.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param precisionStep The precision step used to control
+   *                      index size vs query speed.
+   */
+  public NumericIntervalSetField(final String name,
+                                 final boolean index,
+                                 final int precisionStep) {
+    this(name, index, IntervalSchema.uniform(64, precisionStep));
+  }
+
+
+  /**
+   * Creates a new, empty numeric interval set field with a custom schedule
+   * of shift levels.  Queries read the schedule from the index.
+   * @param name The name of the field to index.
+   * @param index Whether to index the field.
+   * @param schema The 64 bit shift levels to index segments at.
+   */
+  public NumericIntervalSetField(final String name,
+                                 final boolean index,
+                                 final IntervalSchema schema) {
+    super(name,
+        Field.Store.NO,
+        index ? Field.Index.ANALYZED_NO_NORMS : Field.Index.NO,
+        Field.TermVector.NO);
+    if (schema.getValueSize() != 64) {
+      throw new IllegalArgumentException(
+          "Expected a 64 bit schema: " + schema);
+    }
+    setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+    this.tokenStreamValue = new NumericIntervalTokenStream(schema);
+  }
+
+
+  /**
+   * Adds an interval to the set.  Intervals with a start after their end
+   * are ignored.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field
+   */
+  public NumericIntervalSetField addInterval(final long min, final long max) {
+    if (min > max) {
+      return this;
+    }
+    this.intervals.add(min, max);
+    this.dirty = true;
+    return this;
+  }
+
+
+  /**
+   * Adds an interval to the set.
+   * @param interval The interval.
+   * @return this field
+   */
+  public NumericIntervalSetField addInterval(final LongInterval interval) {
+    return addInterval(interval.getStart(), interval.getEnd());
+  }
+
+
+  /**
+   * Adds a double interval to the set.  Doubles are indexed as sortable
+   * longs, so a field must hold either long or double intervals.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this field
+   * @see NumericIntervalField#setDoubleInterval(double, double)
+   */
+  public NumericIntervalSetField addDoubleInterval(final double min,
+                                                   final double max) {
+    return addInterval(IntervalTerms.sortableLong(min),
+                       IntervalTerms.sortableLong(max));
+  }
+
+
+  /**
+   * Adds a double interval to the set.
+   * @param interval The interval.
+   * @return this field
+   */
+  public NumericIntervalSetField addInterval(final DoubleInterval interval) {
+    return addDoubleInterval(interval.getStart(), interval.getEnd());
+  }
+
+
+  /**
+   * Removes all intervals from the set, so the field can be reused.
+   * @return this field
+   */
+  public NumericIntervalSetField clear() {
+    this.intervals.clear();
+    this.dirty = true;
+    return this;
+  }
+
+
+  /**
+   * @return the number of disjoint intervals the set currently merges in to.
+   */
+  public int getMergedSize() {
+    coalesce();
+    return this.intervals.size();
+  }
+
+
+  /**
+   * Sets whether to also index the bounds of each merged interval as a term, so
+   * they can be read back per document through {@link IntervalColumn}.
+   * Off by default; adds one term per merged interval.
+   * @param column whether to index column terms
+   * @return this field
+   */
+  public NumericIntervalSetField setColumn(final boolean column) {
+    this.tokenStreamValue.setColumn(column);
+    return this;
+  }
+
+
+  @Override
+  public String stringValue() {
+    return null;
+  }
+
+  @Override
+  public Reader readerValue() {
+    return null;
+  }
+
+  @Override
+  public TokenStream tokenStreamValue() {
+    if (!this.isIndexed()) {
+      return null;
+    }
+    coalesce();
+    return this.tokenStreamValue;
+  }
+
+
+  /**
+   * Sorts and merges the intervals in place and rebuilds the token stream
+   * from the disjoint union, which the stream shares for column terms.
+   */
+  private void coalesce() {
+    if (!this.dirty) {
+      return;
+    }
+    this.intervals.merge();
+    this.tokenStreamValue.setIntervals(this.intervals);
+    this.dirty = false;
+  }
+}
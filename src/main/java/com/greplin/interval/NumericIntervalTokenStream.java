@@ -16,7 +16,6 @@
 
 package com.greplin.interval;
 
-import com.google.common.collect.ImmutableList;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
 import org.apache.lucene.util.NumericUtils;
@@ -29,10 +28,51 @@ import java.io.Serializable;
 final class NumericIntervalTokenStream
     extends TokenStream
     implements Serializable {
+  /**
+   * The shift levels used to split intervals.
+   */
+  private final IntervalSchema schema;
+
+  /**
+   * The text of the reserved term recording the field's schema.
+   */
+  private final char[] schemaTerm;
+
   /**
    * Segments that make up the interval.
    */
-  private final ImmutableList<IntervalSegment> segments;
+  private final IntervalSegments segments = new IntervalSegments();
+
+  /**
+   * The intervals added through this stream, for column terms.
+   */
+  private final LongIntervalArray added = new LongIntervalArray();
+
+  /**
+   * The intervals column terms are produced for: either {@link #added}, or
+   * the array of a set field shared through {@link #setIntervals}.
+   */
+  private LongIntervalArray intervals = this.added;
+
+  /**
+   * Whether to produce an {@link IntervalColumn} term per interval.
+   */
+  private boolean column = false;
+
+  /**
+   * Whether the stream holds an open-ended interval.
+   */
+  private boolean openEnded = false;
+
+  /**
+   * The start of the open-ended interval, if any.
+   */
+  private long openStart = 0;
+
+  /**
+   * Scratch buffer for prefix coding open-ended interval terms.
+   */
+  private final char[] coded = new char[NumericUtils.BUF_SIZE_LONG];
 
   /**
    * The term attribute.
@@ -45,13 +85,140 @@ final class NumericIntervalTokenStream
   private int i = 0;
 
   /**
-   * Creates a token stream for a numeric interval.
-   * @param segments The segments.
+   * Creates a token stream for numeric intervals.  The stream produces no
+   * tokens until an interval is set with {@link #setInterval(long, long)}.
+   * @param schema The shift levels used to split intervals.
    */
-  public NumericIntervalTokenStream(
-      final ImmutableList<IntervalSegment> segments) {
+  public NumericIntervalTokenStream(final IntervalSchema schema) {
     super();
-    this.segments = segments;
+    this.schema = schema;
+    this.schemaTerm = schema.toTermText().toCharArray();
+  }
+
+
+  /**
+   * Sets whether to produce an {@link IntervalColumn} term recording the
+   * bounds of each interval.
+   * @param column whether to produce column terms
+   * @return this stream
+   */
+  public NumericIntervalTokenStream setColumn(final boolean column) {
+    this.column = column;
+    return this;
+  }
+
+
+  /**
+   * @return whether column terms are produced
+   */
+  public boolean isColumn() {
+    return this.column;
+  }
+
+
+  /**
+   * Replaces the interval this stream produces tokens for.  The segment
+   * arrays are reused, so this does not allocate in the steady state.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this stream
+   */
+  public NumericIntervalTokenStream setInterval(final long min,
+                                                final long max) {
+    clear();
+    return addInterval(min, max);
+  }
+
+
+  /**
+   * Removes all intervals from this stream.
+   * @return this stream
+   */
+  public NumericIntervalTokenStream clear() {
+    this.segments.clear();
+    this.added.clear();
+    this.intervals = this.added;
+    this.openEnded = false;
+    this.openStart = 0;
+    this.i = 0;
+    return this;
+  }
+
+
+  /**
+   * Adds the tokens of another interval to this stream.  Callers are
+   * responsible for not adding overlapping intervals, which would produce
+   * duplicate tokens.
+   * @param min The start of the interval.
+   * @param max The end of the interval.
+   * @return this stream
+   */
+  public NumericIntervalTokenStream addInterval(final long min,
+                                                final long max) {
+    if (this.openEnded) {
+      throw new IllegalStateException(
+          "Cannot add intervals to an open-ended interval");
+    }
+    if (this.intervals != this.added) {
+      throw new IllegalStateException(
+          "Cannot add intervals to a shared interval array");
+    }
+    if (this.schema.getValueSize() == 32
+        && (min < Integer.MIN_VALUE || max > Integer.MAX_VALUE)) {
+      throw new IllegalArgumentException(
+          "32 bit intervals must fit in an int: " + min + "-" + max);
+    }
+    this.segments.add(min, max, this.schema);
+    this.added.add(min, max);
+    return this;
+  }
+
+
+  /**
+   * Replaces the intervals of this stream with those of an array of
+   * disjoint intervals.  The array is shared rather than copied, and is
+   * read again for column terms, so it must not change until the stream is
+   * rebuilt.
+   * @param disjoint The sorted, disjoint intervals to produce tokens for.
+   * @return this stream
+   */
+  NumericIntervalTokenStream setIntervals(final LongIntervalArray disjoint) {
+    clear();
+    for (int j = 0; j < disjoint.size(); j++) {
+      this.segments.add(disjoint.getStart(j), disjoint.getEnd(j), this.schema);
+    }
+    this.intervals = disjoint;
+    return this;
+  }
+
+
+  /**
+   * Replaces the intervals of this stream with one that starts at a value
+   * and has no end yet.  Instead of the segments of [start, MAX], a single
+   * term per shift level records the start, so the terms of a document
+   * do not depend on how far its interval may later extend.  Only 64 bit
+   * fields support open-ended intervals.
+   * @param start The start of the interval.
+   * @return this stream
+   */
+  public NumericIntervalTokenStream setOpenEnded(final long start) {
+    if (this.schema.getValueSize() != 64) {
+      throw new IllegalStateException(
+          "Only 64 bit fields support open-ended intervals");
+    }
+    clear();
+    this.added.add(start, Long.MAX_VALUE);
+    this.openEnded = true;
+    this.openStart = start;
+    return this;
+  }
+
+
+  /**
+   * @return whether the stream holds an open-ended interval
+   */
+  public boolean isOpenEnded() {
+    return this.openEnded;
   }
 
   @Override
@@ -59,20 +226,61 @@ final class NumericIntervalTokenStream
     this.i = 0;
   }
 
+  /**
+   * Produces the schema term first, then any column terms, followed by one
+   * term per segment, or per shift level for an open-ended interval.  No
+   * terms are produced for an empty stream.
+   */
   @Override
   public boolean incrementToken() {
-    if (this.i >= this.segments.size()) {
+    final int columnTerms = this.column ? this.intervals.size() : 0;
+    final int valueTerms = this.openEnded
+        ? this.schema.getLevelCount() : this.segments.size();
+    if (this.i > columnTerms + valueTerms || valueTerms == 0) {
       return false;
     }
 
     clearAttributes();
-    IntervalSegment interval = this.segments.get(this.i);
-    long value = interval.getStart();
-    int shift = interval.getShift();
-    final char[] buffer =
-        this.termAtt.resizeTermBuffer(NumericUtils.BUF_SIZE_LONG);
-    this.termAtt.setTermLength(
-        NumericUtils.longToPrefixCoded(value, shift, buffer));
+    if (this.i == 0) {
+      this.termAtt.setTermBuffer(this.schemaTerm, 0, this.schemaTerm.length);
+      this.i++;
+      return true;
+    }
+    if (this.i <= columnTerms) {
+      final char[] buffer =
+          this.termAtt.resizeTermBuffer(IntervalColumn.TERM_LENGTH);
+      this.termAtt.setTermLength(IntervalColumn.toTermText(
+          this.intervals.getStart(this.i - 1),
+          this.intervals.getEnd(this.i - 1),
+          buffer));
+      this.i++;
+      return true;
+    }
+    if (this.openEnded) {
+      final char[] buffer =
+          this.termAtt.resizeTermBuffer(NumericUtils.BUF_SIZE_LONG + 1);
+      buffer[0] = IntervalTerms.OPEN_PREFIX;
+      final int length = NumericUtils.longToPrefixCoded(this.openStart,
+          this.schema.getShift(this.i - 1 - columnTerms), this.coded);
+      System.arraycopy(this.coded, 0, buffer, 1, length);
+      this.termAtt.setTermLength(length + 1);
+      this.i++;
+      return true;
+    }
+
+    long value = this.segments.getStart(this.i - 1 - columnTerms);
+    int shift = this.segments.getShift(this.i - 1 - columnTerms);
+    if (this.schema.getValueSize() == 32) {
+      final char[] buffer =
+          this.termAtt.resizeTermBuffer(NumericUtils.BUF_SIZE_INT);
+      this.termAtt.setTermLength(
+          NumericUtils.intToPrefixCoded((int) value, shift, buffer));
+    } else {
+      final char[] buffer =
+          this.termAtt.resizeTermBuffer(NumericUtils.BUF_SIZE_LONG);
+      this.termAtt.setTermLength(
+          NumericUtils.longToPrefixCoded(value, shift, buffer));
+    }
     this.i++;
 
     return true;
@@ -80,17 +288,28 @@ final class NumericIntervalTokenStream
 
   @Override
   public String toString() {
-    return "(interval,parts=" + this.segments + ')';
+    return "(interval,schema=" + this.schema
+        + ",column=" + this.column
+        + (this.openEnded ? ",openFrom=" + this.openStart : "")
+        + ",parts=" + this.segments + ')';
   }
 
   @Override
   public int hashCode() {
-    return this.segments.hashCode();
+    final int result = 31 * (31 * this.segments.hashCode()
+        + this.schema.hashCode()) + (this.column ? 1 : 0);
+    return this.openEnded
+        ? 31 * result + (int) (this.openStart ^ (this.openStart >>> 32))
+        : result;
   }
 
   @Override
   public boolean equals(final Object obj) {
     return obj != null && obj.getClass() == this.getClass()
+        && this.schema.equals(((NumericIntervalTokenStream) obj).schema)
+        && this.column == ((NumericIntervalTokenStream) obj).column
+        && this.openEnded == ((NumericIntervalTokenStream) obj).openEnded
+        && this.openStart == ((NumericIntervalTokenStream) obj).openStart
         && this.segments.equals(((NumericIntervalTokenStream) obj).segments);
   }
 }
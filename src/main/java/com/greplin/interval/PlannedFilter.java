@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+
+import java.io.IOException;
+
+/**
+ * A filter that chooses an {@link IntervalQueryPlan} for each segment.
+ */
+interface PlannedFilter {
+  /**
+   * Plans the filter's query on a segment.
+   * @param reader the segment reader
+   * @return the plan
+   * @throws IOException if IO issues occur
+   */
+  IntervalQueryPlan plan(IndexReader reader) throws IOException;
+
+
+  /**
+   * Runs the filter's query on a segment by a plan, so callers that need
+   * the plan too don't plan twice.
+   * @param reader the segment reader
+   * @param plan the plan for the segment
+   * @return the matching documents
+   * @throws IOException if IO issues occur
+   */
+  DocIdSet getDocIdSet(IndexReader reader, IntervalQueryPlan plan)
+      throws IOException;
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recommends a precision step for a 64 bit interval field by simulating
+ * indexing a sample of its intervals and running a sample of queries.
+ *
+ * <p>For each precision step the advisor decomposes the sample, then counts
+ * for every query the shift levels it seeks, the distinct terms it visits
+ * and the postings it reads.  Postings are scaled from the sample to the
+ * full number of intervals.  The recommendation minimizes
+ * {@link Simulation#getCost(double)}: the modeled query cost plus a weight
+ * times the number of tokens each interval adds to the index.
+ */
+public final class PrecisionStepAdvisor {
+  /**
+   * Modeled cost of seeking the term dictionary once, in posting reads.
+   */
+  public static final double SEEK_COST = 200.0;
+
+  /**
+   * Modeled cost of reading one term, in posting reads.
+   */
+  public static final double TERM_COST = 10.0;
+
+  /**
+   * Default weight of one token per interval against one posting read per
+   * query, used by {@link #recommend(List)}.
+   */
+  public static final double DEFAULT_INDEX_WEIGHT = 100.0;
+
+  /**
+   * The precision steps {@link #recommend(List)} tries.
+   */
+  private static final int[] CANDIDATE_STEPS = {2, 3, 4, 5, 6, 8, 10, 12, 16};
+
+  /**
+   * The sampled intervals.
+   */
+  private final ImmutableList<LongInterval> sample;
+
+  /**
+   * The number of indexed intervals the sample represents.
+   */
+  private final long intervalCount;
+
+
+  /**
+   * Creates an advisor.
+   * @param sample a sample of the field's intervals
+   * @param intervalCount the number of intervals the sample represents
+   */
+  public PrecisionStepAdvisor(final List<LongInterval> sample,
+                              final long intervalCount) {
+    if (sample.isEmpty()) {
+      throw new IllegalArgumentException("The sample must not be empty");
+    }
+    this.sample = ImmutableList.copyOf(sample);
+    this.intervalCount = Math.max(intervalCount, sample.size());
+  }
+
+
+  /**
+   * Simulates a precision step.
+   * @param precisionStep the precision step
+   * @param queries the query mix; points are intervals with equal bounds
+   * @return the simulation results
+   */
+  public Simulation simulate(final int precisionStep,
+                             final List<LongInterval> queries) {
+    final IntervalSchema schema = IntervalSchema.uniform(64, precisionStep);
+    final int levels = schema.getLevelCount();
+    final int[] shifts = schema.getShifts();
+
+    // Sorted block starts per level; duplicates are postings of one term.
+    final IntervalSegments segments = new IntervalSegments();
+    for (LongInterval interval : this.sample) {
+      segments.add(interval.getStart(), interval.getEnd(), schema);
+    }
+    final long[][] blocks = new long[levels][];
+    final int[] counts = new int[levels];
+    for (int i = 0; i < segments.size(); i++) {
+      counts[Arrays.binarySearch(shifts, segments.getShift(i))]++;
+    }
+    for (int level = 0; level < levels; level++) {
+      blocks[level] = new long[counts[level]];
+      counts[level] = 0;
+    }
+    long distinctTerms = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      final int level = Arrays.binarySearch(shifts, segments.getShift(i));
+      blocks[level][counts[level]++] = segments.getStart(i);
+    }
+    for (long[] levelBlocks : blocks) {
+      Arrays.sort(levelBlocks);
+      for (int i = 0; i < levelBlocks.length; i++) {
+        if (i == 0 || levelBlocks[i] != levelBlocks[i - 1]) {
+          distinctTerms++;
+        }
+      }
+    }
+
+    final double scale = (double) this.intervalCount / this.sample.size();
+    double terms = 0;
+    double postings = 0;
+    for (LongInterval query : queries) {
+      for (int level = 0; level < levels; level++) {
+        final long mask = ~((1L << schema.getShift(level)) - 1L);
+        final long[] levelBlocks = blocks[level];
+        final int from = lowerBound(levelBlocks, query.getStart() & mask);
+        final int to = upperBound(levelBlocks, query.getEnd() & mask);
+        postings += (to - from) * scale;
+        // Distinct terms in range, plus the term that ends the level.
+        for (int i = from; i < to; i++) {
+          if (i == from || levelBlocks[i] != levelBlocks[i - 1]) {
+            terms++;
+          }
+        }
+        terms++;
+      }
+    }
+
+    final int queryCount = Math.max(1, queries.size());
+    return new Simulation(precisionStep,
+        1.0 + (double) segments.size() / this.sample.size(),
+        distinctTerms,
+        levels,
+        terms / queryCount,
+        postings / queryCount);
+  }
+
+
+  /**
+   * Recommends the precision step with the lowest cost for a query mix,
+   * using {@link #DEFAULT_INDEX_WEIGHT}.
+   * @param queries the query mix; points are intervals with equal bounds
+   * @return the best simulation
+   */
+  public Simulation recommend(final List<LongInterval> queries) {
+    return recommend(queries, DEFAULT_INDEX_WEIGHT);
+  }
+
+
+  /**
+   * Recommends the precision step with the lowest cost for a query mix.
+   * @param queries the query mix; points are intervals with equal bounds
+   * @param indexWeight the cost of one token per interval, in posting reads
+   *                    per query
+   * @return the best simulation
+   */
+  public Simulation recommend(final List<LongInterval> queries,
+                              final double indexWeight) {
+    Simulation best = null;
+    for (int precisionStep : CANDIDATE_STEPS) {
+      final Simulation simulation = simulate(precisionStep, queries);
+      if (best == null
+          || simulation.getCost(indexWeight) < best.getCost(indexWeight)) {
+        best = simulation;
+      }
+    }
+    return best;
+  }
+
+
+  /**
+   * Prints the simulation of every candidate precision step and the
+   * recommendation.
+   * @param queries the query mix; points are intervals with equal bounds
+   * @param out the stream to print to
+   */
+  public void print(final List<LongInterval> queries, final PrintStream out) {
+    out.printf("%5s %12s %12s %8s %12s %14s %14s%n", "step", "tokens/ivl",
+        "sample terms", "seeks", "terms/query", "postings/query", "cost");
+    for (int precisionStep : CANDIDATE_STEPS) {
+      final Simulation simulation = simulate(precisionStep, queries);
+      out.printf("%5d %12.2f %12d %8d %12.1f %14.1f %14.1f%n",
+          precisionStep,
+          simulation.getTokensPerInterval(),
+          simulation.getSampleTermCount(),
+          simulation.getSeeksPerQuery(),
+          simulation.getTermsPerQuery(),
+          simulation.getPostingsPerQuery(),
+          simulation.getCost(DEFAULT_INDEX_WEIGHT));
+    }
+    out.printf("recommended precision step: %d%n",
+        recommend(queries).getPrecisionStep());
+  }
+
+
+  /**
+   * Finds the first index holding a value at least the given one.
+   * @param values sorted values
+   * @param key the value to look for
+   * @return the index
+   */
+  private static int lowerBound(final long[] values, final long key) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * Finds the first index holding a value greater than the given one.
+   * @param values sorted values
+   * @param key the value to look for
+   * @return the index
+   */
+  private static int upperBound(final long[] values, final long key) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * The simulated costs of one precision step.
+   */
+  public static final class Simulation {
+    /**
+     * The precision step.
+     */
+    private final int precisionStep;
+
+    /**
+     * The average number of tokens per interval, including the schema term.
+     */
+    private final double tokensPerInterval;
+
+    /**
+     * The number of distinct terms the sample indexes to.
+     */
+    private final long sampleTermCount;
+
+    /**
+     * The number of seeks per query, one per shift level.
+     */
+    private final int seeksPerQuery;
+
+    /**
+     * The average number of terms visited per query.
+     */
+    private final double termsPerQuery;
+
+    /**
+     * The average number of postings read per query.
+     */
+    private final double postingsPerQuery;
+
+
+    /**
+     * Creates simulation results.
+     * @param precisionStep the precision step
+     * @param tokensPerInterval the average number of tokens per interval
+     * @param sampleTermCount the number of distinct terms in the sample
+     * @param seeksPerQuery the number of seeks per query
+     * @param termsPerQuery the average number of terms visited per query
+     * @param postingsPerQuery the average number of postings per query
+     */
+    Simulation(final int precisionStep,
+               final double tokensPerInterval,
+               final long sampleTermCount,
+               final int seeksPerQuery,
+               final double termsPerQuery,
+               final double postingsPerQuery) {
+      this.precisionStep = precisionStep;
+      this.tokensPerInterval = tokensPerInterval;
+      this.sampleTermCount = sampleTermCount;
+      this.seeksPerQuery = seeksPerQuery;
+      this.termsPerQuery = termsPerQuery;
+      this.postingsPerQuery = postingsPerQuery;
+    }
+
+
+    /**
+     * @return the precision step.
+     */
+    public int getPrecisionStep() {
+      return this.precisionStep;
+    }
+
+
+    /**
+     * @return the average number of tokens per interval, including the
+     *     schema term.
+     */
+    public double getTokensPerInterval() {
+      return this.tokensPerInterval;
+    }
+
+
+    /**
+     * @return the number of distinct terms the sample indexes to.
+     */
+    public long getSampleTermCount() {
+      return this.sampleTermCount;
+    }
+
+
+    /**
+     * @return the number of term dictionary seeks per query.
+     */
+    public int getSeeksPerQuery() {
+      return this.seeksPerQuery;
+    }
+
+
+    /**
+     * @return the average number of terms visited per query.
+     */
+    public double getTermsPerQuery() {
+      return this.termsPerQuery;
+    }
+
+
+    /**
+     * @return the average number of postings read per query, scaled to the
+     *     full index.
+     */
+    public double getPostingsPerQuery() {
+      return this.postingsPerQuery;
+    }
+
+
+    /**
+     * @return the modeled cost of a query, in posting reads.
+     */
+    public double getQueryCost() {
+      return this.seeksPerQuery * SEEK_COST
+          + this.termsPerQuery * TERM_COST
+          + this.postingsPerQuery;
+    }
+
+
+    /**
+     * Gets the cost the recommendation minimizes.
+     * @param indexWeight the cost of one token per interval, in posting reads
+     *                    per query
+     * @return the query cost plus the weighted tokens per interval
+     */
+    public double getCost(final double indexWeight) {
+      return getQueryCost() + indexWeight * this.tokensPerInterval;
+    }
+
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Simulation{step=%d, tokens/interval=%.2f, cost=%.1f}",
+          this.precisionStep, this.tokensPerInterval, getQueryCost());
+    }
+  }
+}
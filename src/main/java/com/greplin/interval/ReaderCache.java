@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Maps;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Caches values derived from a reader by reader core and field, like
+ * {@link org.apache.lucene.search.FieldCache}.  Entries are dropped when the
+ * reader closes.  Null values are cached too.
+ * @param <V> the type of cached values
+ */
+abstract class ReaderCache<V> {
+  /**
+   * Marks a cached null value.
+   */
+  private static final Object NONE = new Object();
+
+
+  /**
+   * Values by reader core, then field.
+   */
+  private final Map<Object, Map<String, Object>> cache =
+      new WeakHashMap<Object, Map<String, Object>>();
+
+  /**
+   * Drops the values of a reader when it closes.
+   */
+  private final IndexReader.ReaderFinishedListener purge =
+      new IndexReader.ReaderFinishedListener() {
+        @Override
+        public void finished(final IndexReader reader) {
+          synchronized (ReaderCache.this.cache) {
+            ReaderCache.this.cache.remove(reader.getCoreCacheKey());
+          }
+        }
+      };
+
+
+  /**
+   * Computes the value for a reader and field.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the value, possibly null
+   * @throws IOException if IO issues occur
+   */
+  protected abstract V load(IndexReader reader, String field)
+      throws IOException;
+
+
+  /**
+   * Gets the value for a reader and field, loading it on first use.  Loading
+   * happens outside the lock, so two threads may both load a value, but the
+   * first one stored wins.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the value, possibly null
+   * @throws IOException if IO issues occur
+   */
+  @SuppressWarnings("unchecked") // Only values of type V are stored.
+  final V get(final IndexReader reader, final String field)
+      throws IOException {
+    final Object key = reader.getCoreCacheKey();
+    synchronized (this.cache) {
+      final Map<String, Object> fields = this.cache.get(key);
+      final Object cached = fields == null ? null : fields.get(field);
+      if (cached != null) {
+        return cached == NONE ? null : (V) cached;
+      }
+    }
+
+    final V value = load(reader, field);
+    synchronized (this.cache) {
+      Map<String, Object> fields = this.cache.get(key);
+      if (fields == null) {
+        fields = Maps.newHashMap();
+        this.cache.put(key, fields);
+        reader.addReaderFinishedListener(this.purge);
+      }
+      final Object existing = fields.get(field);
+      if (existing != null) {
+        return existing == NONE ? null : (V) existing;
+      }
+      fields.put(field, value == null ? NONE : value);
+    }
+    return value;
+  }
+
+
+  /**
+   * Gets the value for a reader and field if it was already loaded.
+   * @param reader the reader
+   * @param field the name of the field
+   * @return the value, or null if it isn't loaded or is null
+   */
+  @SuppressWarnings("unchecked") // Only values of type V are stored.
+  final V getIfLoaded(final IndexReader reader, final String field) {
+    synchronized (this.cache) {
+      final Map<String, Object> fields =
+          this.cache.get(reader.getCoreCacheKey());
+      final Object cached = fields == null ? null : fields.get(field);
+      return cached == null || cached == NONE ? null : (V) cached;
+    }
+  }
+}
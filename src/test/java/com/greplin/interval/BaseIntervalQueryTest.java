@@ -22,6 +22,7 @@ import com.google.common.collect.Sets;
 import org.apache.lucene.analysis.SimpleAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -56,12 +57,22 @@ public abstract class BaseIntervalQueryTest {
   }
 
   protected void addDocument(int id, long start, long end) throws IOException {
+    addDocument(id, new NumericIntervalField("time", true, start, end));
+  }
+
+  protected void addDocument(int id, Fieldable... fields) throws IOException {
     Document doc1 = new Document();
     doc1.add(new Field("id", String.valueOf(id), Field.Store.YES, Field.Index.NO));
-    doc1.add(new NumericIntervalField("time", true, start, end));
+    for (Fieldable field : fields) {
+      doc1.add(field);
+    }
     this.indexWriter.addDocument(doc1);
   }
 
+  protected IndexWriter getIndexWriter() {
+    return this.indexWriter;
+  }
+
   protected IndexSearcher getSearcher() throws IOException {
     return new IndexSearcher(IndexReader.open(this.indexWriter, true));
   }
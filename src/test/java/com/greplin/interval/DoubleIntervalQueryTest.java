@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests for double intervals indexed as sortable longs.
+ */
+public class DoubleIntervalQueryTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testDoubles() throws IOException {
+    NumericIntervalField field = new NumericIntervalField("time", true);
+    addDocument(1, field.setDoubleInterval(-1.5, 2.25));
+    addDocument(2, field.setInterval(new DoubleInterval(2.5, 1e100)));
+    addDocument(3, field.setDoubleInterval(Double.NEGATIVE_INFINITY, -10.0));
+    addDocument(4, field.setDoubleInterval(1e-300, Double.POSITIVE_INFINITY));
+    addDocument(5, field.setDoubleInterval(-0.0, -0.0));
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, NumericIntervalIntersectionQuery.forDoubles("time", 2.3, 2.4), 4);
+    assertSearch(searcher, NumericIntervalIntersectionQuery.forDoubles("time", 2.25, 2.5), 1, 2, 4);
+    assertSearch(searcher, NumericIntervalIntersectionQuery.forDoubles("time", -1e9, -1.5), 1, 3);
+    assertSearch(searcher, NumericIntervalIntersectionQuery.forDoubles("time", -5, -4));
+    assertSearch(searcher, NumericIntervalIntersectionQuery.forDoubles(
+        "time", Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY), 3);
+
+    assertSearch(searcher, InNumericIntervalQuery.forDouble("time", 0.0), 1, 5);
+    assertSearch(searcher, InNumericIntervalQuery.forDouble("time", -0.0), 1, 5);
+    assertSearch(searcher, InNumericIntervalQuery.forDouble("time", 99.99), 2, 4);
+    assertSearch(searcher, InNumericIntervalQuery.forDouble("time", -1e300), 3);
+    assertSearch(searcher, InNumericIntervalQuery.forDouble("time", Double.POSITIVE_INFINITY), 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNaN() {
+    new NumericIntervalField("time", true).setDoubleInterval(Double.NaN, 1.0);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.NumericUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests for 32 bit interval fields and queries.
+ */
+public class IntIntervalQueryTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testInts() throws IOException {
+    addDocument(1, new IntIntervalField("time", true, 1000, 2000));
+    addDocument(2, new IntIntervalField("time", true, 900, 1100));
+    addDocument(3, new IntIntervalField("time", true, -80, 80));
+    addDocument(4, new IntIntervalField("time", true, Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, new IntIntervalIntersectionQuery("time", 800, 2200), 1, 2, 4);
+    assertSearch(searcher, new IntIntervalIntersectionQuery("time", 2000, 2001), 1, 4);
+    assertSearch(searcher, new IntIntervalIntersectionQuery("time", 899, 900), 2, 4);
+    assertSearch(searcher, new IntIntervalIntersectionQuery("time", -100, -80), 3, 4);
+    assertSearch(searcher, new IntIntervalIntersectionQuery("time", 81, 899), 4);
+
+    assertSearch(searcher, new InIntIntervalQuery("time", 1050), 1, 2, 4);
+    assertSearch(searcher, new InIntIntervalQuery("time", 0), 3, 4);
+    assertSearch(searcher, new InIntIntervalQuery("time", Integer.MAX_VALUE), 4);
+
+    // Long queries don't match 32 bit terms.
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1050));
+  }
+
+  @Test
+  public void testFloats() throws IOException {
+    IntIntervalField field = new IntIntervalField("time", true);
+    addDocument(1, field.setFloatInterval(-1.5f, 2.25f));
+    addDocument(2, field.setInterval(new FloatInterval(2.5f, 100f)));
+    addDocument(3, field.setFloatInterval(Float.NEGATIVE_INFINITY, -10f));
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, IntIntervalIntersectionQuery.forFloats("time", 2.3f, 2.4f));
+    assertSearch(searcher, IntIntervalIntersectionQuery.forFloats("time", 2.25f, 2.5f), 1, 2);
+    assertSearch(searcher, IntIntervalIntersectionQuery.forFloats("time", -1e9f, -1.5f), 1, 3);
+
+    assertSearch(searcher, InIntIntervalQuery.forFloat("time", 0f), 1);
+    assertSearch(searcher, InIntIntervalQuery.forFloat("time", 99.99f), 2);
+    assertSearch(searcher, InIntIntervalQuery.forFloat("time", -1e30f), 3);
+  }
+
+  @Test
+  public void testFloatQueriesDifferFromIntQueries() {
+    Query ints = new IntIntervalIntersectionQuery("time",
+        NumericUtils.floatToSortableInt(1f), NumericUtils.floatToSortableInt(2f));
+    Query floats = IntIntervalIntersectionQuery.forFloats("time", 1f, 2f);
+    Assert.assertFalse(ints.equals(floats));
+    Assert.assertFalse(floats.equals(ints));
+    Assert.assertEquals(floats, IntIntervalIntersectionQuery.forFloats("time", 1f, 2f));
+    Assert.assertFalse(ints.toString().equals(floats.toString()));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the bulk indexer.
+ */
+public class IntervalBulkIndexerTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testIndexesEveryDocument() throws Exception {
+    // A tiny queue forces the producer to block on the workers.
+    IntervalBulkIndexer indexer = new IntervalBulkIndexer(getIndexWriter(), "time",
+        IntervalSchema.uniform(64, 8), 4, 2);
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 500; i++) {
+      indexer.add(ImmutableList.of(new LongInterval(i * 10, i * 10 + 5), new LongInterval(10000 + i, 10000 + i)),
+          new Field("id", String.valueOf(i), Field.Store.YES, Field.Index.NO));
+      if (i >= 50 && i <= 100) {
+        expected.add(i);
+      }
+    }
+    indexer.close();
+    Assert.assertEquals(500, indexer.getDocumentCount());
+    Assert.assertEquals(1000, indexer.getIntervalCount());
+    Assert.assertTrue(indexer.toString(), indexer.getDocumentsPerSecond() > 0);
+
+    IndexSearcher searcher = getSearcher();
+    Assert.assertEquals(500, searcher.maxDoc());
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1003), 100);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 503, 1000),
+        expected.toArray(new Integer[expected.size()]));
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 10050, 10100),
+        expected.toArray(new Integer[expected.size()]));
+  }
+
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosed() throws Exception {
+    IntervalBulkIndexer indexer = new IntervalBulkIndexer(getIndexWriter(), "time", 2);
+    indexer.close();
+    indexer.add(ImmutableList.of(new LongInterval(1, 2)));
+  }
+
+
+  @Test
+  public void testFailureReportsDroppedDocuments() throws Exception {
+    IntervalBulkIndexer indexer = new IntervalBulkIndexer(getIndexWriter(), "time",
+        IntervalSchema.uniform(64, 4), 1, 100);
+    int accepted = 0;
+    try {
+      for (int i = 0; i < 20; i++) {
+        Field id = new Field("id", String.valueOf(i), Field.Store.YES, Field.Index.NO);
+        if (i == 5) {
+          indexer.add(ImmutableList.of(new LongInterval(i, i)), id, new Field("broken", new TokenStream() {
+            @Override
+            public boolean incrementToken() throws IOException {
+              throw new IOException("broken");
+            }
+          }));
+        } else {
+          indexer.add(ImmutableList.of(new LongInterval(i, i)), id);
+        }
+        accepted++;
+      }
+    } catch (IOException e) {
+      // The worker failed before every document was queued.
+    }
+
+    try {
+      indexer.close();
+      Assert.fail("Expected the worker failure");
+    } catch (IOException e) {
+      Assert.assertEquals("broken", e.getCause().getMessage());
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(indexer.getDroppedCount() + " queued documents"));
+    }
+    Assert.assertEquals(5, indexer.getDocumentCount());
+    Assert.assertEquals(accepted - 5, indexer.getDroppedCount());
+  }
+}
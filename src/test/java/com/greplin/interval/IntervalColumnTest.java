@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests the IntervalColumn class.
+ */
+public class IntervalColumnTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testColumn() throws IOException {
+    addDocument(0, new NumericIntervalField("time", true, -50, Long.MAX_VALUE).setColumn(true));
+    addDocument(1, new NumericIntervalSetField("time", true).setColumn(true)
+        .addInterval(30, 40).addInterval(1, 5).addInterval(4, 8));
+    addDocument(2, new NumericIntervalField("time", true, 10, 20));
+    addDocument(3, new NumericIntervalField("other", true, 10, 20).setColumn(true));
+
+    IndexSearcher searcher = getSearcher();
+    IndexReader reader = searcher.getIndexReader().getSequentialSubReaders()[0];
+    IntervalColumn column = IntervalColumn.get(reader, "time");
+    Assert.assertSame(column, IntervalColumn.get(reader, "time"));
+    Assert.assertEquals(4, column.getDocumentCount());
+    Assert.assertTrue(column.isMultiValued());
+
+    Assert.assertEquals(1, column.getValueCount(0));
+    Assert.assertEquals(-50, column.getStart(0, 0));
+    Assert.assertEquals(Long.MAX_VALUE, column.getEnd(0, 0));
+
+    Assert.assertEquals(2, column.getValueCount(1));
+    Assert.assertEquals(1, column.getStart(1, 0));
+    Assert.assertEquals(8, column.getEnd(1, 0));
+    Assert.assertEquals(30, column.getStart(1, 1));
+    Assert.assertEquals(40, column.getEnd(1, 1));
+    Assert.assertTrue(column.intersects(1, 35, 50));
+    Assert.assertFalse(column.intersects(1, 9, 29));
+
+    Assert.assertEquals(0, column.getValueCount(2));
+    Assert.assertEquals(0, column.getValueCount(3));
+    Assert.assertEquals(1, IntervalColumn.get(reader, "other").getValueCount(3));
+    Assert.assertEquals(0, IntervalColumn.get(reader, "missing").getStarts().length);
+
+    // Column terms don't change query results.
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 9, 29), 0, 2);
+    assertSearch(searcher, new InNumericIntervalQuery("time", 5), 0, 1);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalCounter class.
+ */
+public class IntervalCounterTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testCountsMatchSearch() throws IOException {
+    Random random = new Random(23);
+    for (int id = 0; id < 600; id++) {
+      long start = random.nextInt(100000) - 50000;
+      addDocument(id, new NumericIntervalField("time", true, start, start + random.nextInt(id % 10 == 0 ? 20000 : 300)),
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 300) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "7"));
+
+    IndexSearcher searcher = getSearcher();
+    IndexReader reader = searcher.getIndexReader();
+    IntervalCounter counter = new IntervalCounter("time");
+    for (int q = 0; q < 200; q++) {
+      long start = random.nextInt(110000) - 55000;
+      long end = start + (q % 3 == 0 ? 0 : random.nextInt(q % 10 == 0 ? 200000 : 2000));
+      int expected = searcher.search(new NumericIntervalIntersectionQuery("time", start, end), 1).totalHits;
+      Assert.assertEquals(expected, counter.count(reader, start, end));
+
+      IntervalCounter.Estimate estimate = counter.estimate(reader, start, end);
+      Assert.assertFalse(estimate.isMultiValued());
+      Assert.assertTrue(estimate + " vs " + expected, estimate.getLowerBound() <= expected);
+      Assert.assertTrue(estimate + " vs " + expected, estimate.getUpperBound() >= expected);
+      Assert.assertTrue(estimate.getValue() >= estimate.getLowerBound());
+      Assert.assertTrue(estimate.getValue() <= estimate.getUpperBound());
+    }
+  }
+
+  @Test
+  public void testMultiValued() throws IOException {
+    addDocument(1, new NumericIntervalSetField("time", true).setColumn(true).addInterval(1, 5).addInterval(10, 20));
+    addDocument(2, new NumericIntervalSetField("time", true).setColumn(true).addInterval(3, 12));
+
+    IndexReader reader = getSearcher().getIndexReader();
+    IntervalCounter counter = new IntervalCounter("time");
+    Assert.assertEquals(2, counter.count(reader, 4, 11));
+    Assert.assertEquals(1, counter.count(reader, 15, 30));
+
+    IntervalCounter.Estimate estimate = counter.estimate(reader, 4, 11);
+    Assert.assertTrue(estimate.isMultiValued());
+    Assert.assertTrue(estimate.getUpperBound() <= 2);
+  }
+
+  @Test
+  public void testPointEstimateIsExact() throws IOException {
+    addDocument(1, 1, 5);
+    addDocument(2, 3, 9);
+    addDocument(3, 7, 100);
+
+    IntervalCounter.Estimate estimate = new IntervalCounter("time").estimate(getSearcher().getIndexReader(), 4, 4);
+    Assert.assertEquals(2, estimate.getValue());
+    Assert.assertEquals(0, estimate.getErrorBound());
+  }
+}
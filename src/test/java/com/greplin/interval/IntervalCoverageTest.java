@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalCoverage class.
+ */
+public class IntervalCoverageTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testStepFunction() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 10, 19).setColumn(true));
+    addDocument(2, new NumericIntervalField("time", true, 15, 24).setColumn(true));
+    addDocument(3, new NumericIntervalSetField("time", true).setColumn(true).addInterval(20, 29).addInterval(40, 40));
+
+    IntervalCoverage coverage = IntervalCoverage.compute(getSearcher().getIndexReader(), "time", null);
+    Assert.assertArrayEquals(new long[] {10, 15, 25, 30, 40, 41}, coverage.getPositions());
+    Assert.assertArrayEquals(new int[] {1, 2, 1, 0, 1, 0}, coverage.getDepths());
+    Assert.assertEquals(2, coverage.getMaxDepth());
+    Assert.assertEquals(15, coverage.getMaxDepthStart());
+    Assert.assertEquals(24, coverage.getMaxDepthEnd());
+    Assert.assertEquals(0, coverage.getDepth(9));
+    Assert.assertEquals(2, coverage.getDepth(22));
+    Assert.assertEquals(0, coverage.getDepth(35));
+
+    coverage = IntervalCoverage.compute(getSearcher().getIndexReader(), "time", null, 22, 100);
+    Assert.assertArrayEquals(new long[] {22, 25, 30, 40, 41}, coverage.getPositions());
+    Assert.assertEquals(2, coverage.getMaxDepth());
+    Assert.assertEquals(24, coverage.getMaxDepthEnd());
+  }
+
+  @Test
+  public void testMatchesPointQueries() throws IOException {
+    Random random = new Random(37);
+    for (int id = 0; id < 300; id++) {
+      long start = random.nextInt(10000);
+      addDocument(id, new NumericIntervalField("time", true, start, start + random.nextInt(500)).setColumn(true),
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED),
+          new Field("room", String.valueOf(id % 4), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 100) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "1"));
+
+    IndexSearcher searcher = getSearcher();
+    TermQuery room = new TermQuery(new Term("room", "1"));
+    IntervalCoverage coverage = IntervalCoverage.compute(searcher.getIndexReader(), "time", new QueryWrapperFilter(room));
+    int max = 0;
+    for (long t = -10; t < 10600; t += 7) {
+      BooleanQuery query = new BooleanQuery();
+      query.add(new InNumericIntervalQuery("time", t), BooleanClause.Occur.MUST);
+      query.add(room, BooleanClause.Occur.MUST);
+      Assert.assertEquals("at " + t, searcher.search(query, 1).totalHits, coverage.getDepth(t));
+      max = Math.max(max, coverage.getDepth(t));
+    }
+    Assert.assertTrue(max <= coverage.getMaxDepth());
+    Assert.assertEquals(coverage.getMaxDepth(), coverage.getDepth(coverage.getMaxDepthStart()));
+    Assert.assertEquals(coverage.getMaxDepth(), coverage.getDepth(coverage.getMaxDepthEnd()));
+    Assert.assertTrue(coverage.getMaxDepth() > coverage.getDepth(coverage.getMaxDepthEnd() + 1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRequiresColumn() throws IOException {
+    addDocument(1, 10, 20);
+    IntervalCoverage.compute(getSearcher().getIndexReader(), "time", null);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the IntervalGapFinder class.
+ */
+public class IntervalGapFinderTest extends BaseIntervalQueryTest {
+
+  private static List<LongInterval> gaps(LongIntervalArray intervals, long start, long end, long minLength) {
+    intervals.merge();
+    List<LongInterval> result = Lists.newArrayList();
+    long cursor = start;
+    for (int i = 0; i < intervals.size() && cursor <= end; i++) {
+      if (intervals.getStart(i) > cursor) {
+        long gapEnd = Math.min(end, intervals.getStart(i) - 1);
+        if (gapEnd - cursor + 1 >= minLength) {
+          result.add(new LongInterval(cursor, gapEnd));
+        }
+      }
+      cursor = Math.max(cursor, intervals.getEnd(i) + 1);
+    }
+    if (cursor <= end && end - cursor + 1 >= minLength) {
+      result.add(new LongInterval(cursor, end));
+    }
+    return result;
+  }
+
+  @Test
+  public void testMatchesBruteForce() throws IOException {
+    Random random = new Random(41);
+    LongIntervalArray roomOne = new LongIntervalArray();
+    for (int id = 0; id < 400; id++) {
+      long start = random.nextInt(100000);
+      long end = start + random.nextInt(id % 25 == 0 ? 5000 : 400);
+      addDocument(id, new NumericIntervalField("time", true, start, end),
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED),
+          new Field("room", String.valueOf(id % 3), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id % 3 == 1 && id != 10) {
+        roomOne.add(start, end);
+      }
+      if (id == 150) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "10"));
+
+    IntervalGapFinder finder = new IntervalGapFinder("time");
+    QueryWrapperFilter filter = new QueryWrapperFilter(new TermQuery(new Term("room", "1")));
+    for (int q = 0; q < 50; q++) {
+      long start = random.nextInt(110000) - 5000;
+      long end = start + random.nextInt(30000);
+      long minLength = 1 + random.nextInt(q % 2 == 0 ? 5 : 500);
+      List<LongInterval> expected = gaps(roomOne, start, end, minLength);
+      Assert.assertEquals(expected, finder.find(getSearcher().getIndexReader(), start, end, filter, minLength, 1000));
+      Assert.assertEquals(expected.subList(0, Math.min(2, expected.size())),
+          finder.find(getSearcher().getIndexReader(), start, end, filter, minLength, 2));
+    }
+  }
+
+  @Test
+  public void testStopsEarly() throws IOException {
+    addDocument(1, 0, 99);
+    addDocument(2, 110, 199);
+    addDocument(3, 500, 1000);
+
+    final List<Long> starts = Lists.newArrayList();
+    new IntervalGapFinder("time").find(getSearcher().getIndexReader(), 0, 2000, null, 30,
+        new IntervalGapFinder.Collector() {
+          @Override
+          public boolean gap(long start, long end) {
+            starts.add(start);
+            return false;
+          }
+        });
+    Assert.assertEquals(Lists.newArrayList(200L), starts);
+  }
+
+  @Test
+  public void testWholeDomain() throws IOException {
+    addDocument(1, Long.MIN_VALUE, -1);
+    addDocument(2, 1, Long.MAX_VALUE);
+
+    Assert.assertEquals(Lists.newArrayList(new LongInterval(0, 0)), new IntervalGapFinder("time").find(
+        getSearcher().getIndexReader(), Long.MIN_VALUE, Long.MAX_VALUE, null, 1, 10));
+    Assert.assertEquals(Lists.newArrayList(new LongInterval(Long.MIN_VALUE, Long.MAX_VALUE)),
+        new IntervalGapFinder("time").find(getSearcher().getIndexReader(), Long.MIN_VALUE, Long.MAX_VALUE,
+            new QueryWrapperFilter(new TermQuery(new Term("room", "x"))), 1, 10));
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalHistogram class.
+ */
+public class IntervalHistogramTest extends BaseIntervalQueryTest {
+
+  private void addRandomDocuments(Random random, boolean column) throws IOException {
+    for (int id = 0; id < 400; id++) {
+      NumericIntervalSetField field = new NumericIntervalSetField("time", true).setColumn(column);
+      for (int j = 1 + random.nextInt(2); j > 0; j--) {
+        long start = random.nextInt(100000) - 50000;
+        field.addInterval(start, start + random.nextInt(id % 10 == 0 ? 30000 : 3000));
+      }
+      addDocument(id, field,
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED),
+          new Field("room", String.valueOf(id % 3), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 200) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "4"));
+  }
+
+  private void assertMatchesQueries(IndexSearcher searcher, long start, long end, long width, Filter filter)
+      throws IOException {
+    int[] counts = new IntervalHistogram("time").count(searcher.getIndexReader(), start, end, width, filter);
+    Assert.assertEquals((end - start) / width + 1, counts.length);
+    for (int i = 0; i < counts.length; i++) {
+      long bucketStart = start + i * width;
+      long bucketEnd = Math.min(end, bucketStart + width - 1);
+      BooleanQuery query = new BooleanQuery();
+      query.add(new NumericIntervalIntersectionQuery("time", bucketStart, bucketEnd), BooleanClause.Occur.MUST);
+      if (filter != null) {
+        query.add(new TermQuery(new Term("room", "1")), BooleanClause.Occur.MUST);
+      }
+      Assert.assertEquals("bucket " + i, searcher.search(query, 1).totalHits, counts[i]);
+    }
+  }
+
+  @Test
+  public void testMatchesQueries() throws IOException {
+    addRandomDocuments(new Random(29), false);
+    IndexSearcher searcher = getSearcher();
+    assertMatchesQueries(searcher, -60000, 60000, 1000, null);
+    assertMatchesQueries(searcher, -12345, 4321, 77, null);
+    assertMatchesQueries(searcher, 5, 5, 10, null);
+    assertMatchesQueries(searcher, -60000, 60000, 2500,
+        new QueryWrapperFilter(new TermQuery(new Term("room", "1"))));
+  }
+
+  @Test
+  public void testColumnMatchesTerms() throws IOException {
+    addRandomDocuments(new Random(31), true);
+    IndexSearcher searcher = getSearcher();
+    int[] fromTerms = new IntervalHistogram("time").count(searcher.getIndexReader(), -100000, 100000, 4000);
+    for (IndexReader segment : searcher.getIndexReader().getSequentialSubReaders()) {
+      IntervalColumn.get(segment, "time");
+    }
+    Assert.assertArrayEquals(fromTerms,
+        new IntervalHistogram("time").count(searcher.getIndexReader(), -100000, 100000, 4000));
+    assertMatchesQueries(searcher, -60000, 60000, 1000,
+        new QueryWrapperFilter(new TermQuery(new Term("room", "1"))));
+  }
+
+  @Test
+  public void testFullRange() throws IOException {
+    addDocument(1, Long.MIN_VALUE, -1);
+    addDocument(2, 0, Long.MAX_VALUE);
+    addDocument(3, -5, 5);
+
+    int[] counts = new IntervalHistogram("time").count(
+        getSearcher().getIndexReader(), Long.MIN_VALUE, Long.MAX_VALUE, 1L << 62);
+    Assert.assertArrayEquals(new int[] {1, 2, 2, 1}, counts);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyBuckets() throws IOException {
+    addDocument(1, 0, 10);
+    new IntervalHistogram("time").count(getSearcher().getIndexReader(), Long.MIN_VALUE, Long.MAX_VALUE, 2);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for interval index statistics and the precision step advisor.
+ */
+public class IntervalIndexStatsTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testStats() throws IOException {
+    // 0-31 is two shift 4 segments, 16-16 is one shift 0 segment.
+    addDocument(1, 0, 31);
+    addDocument(2, 16, 16);
+    addDocument(3, 16, 31);
+
+    IndexReader reader = getSearcher().getIndexReader();
+    IntervalIndexStats stats = IntervalIndexStats.read(reader, "time");
+    Assert.assertEquals(IntervalSchema.uniform(64, 4), stats.getSchema());
+    Assert.assertEquals(3, stats.getDocumentCount());
+    Assert.assertArrayEquals(new int[]{0, 4}, stats.getShifts());
+    Assert.assertEquals(1, stats.getTermCount(0));
+    Assert.assertEquals(1, stats.getPostingCount(0));
+    Assert.assertEquals(2, stats.getTermCount(4));
+    Assert.assertEquals(3, stats.getPostingCount(4));
+    Assert.assertEquals(4.0 / 3, stats.getTokensPerDocument(), 1e-9);
+    Assert.assertEquals(-1, stats.getIntervalCount());
+    Assert.assertTrue(Double.isNaN(stats.getTokensPerInterval()));
+
+    Assert.assertEquals(-1, IntervalIndexStats.read(reader, "id").getDocumentCount());
+  }
+
+  @Test
+  public void testIntervalsAndOpenEndedTerms() throws IOException {
+    // Two shift 4 segments for each interval of the set.
+    addDocument(1, new NumericIntervalSetField("time", true).setColumn(true)
+        .addInterval(0, 31).addInterval(64, 95));
+    // One term per shift level for the open-ended interval.
+    addDocument(2, new NumericIntervalField("time", true).setColumn(true).setOpenEndedInterval(5));
+    addDocument(3, new NumericIntervalField("time", true, 16, 16).setColumn(true));
+
+    IntervalIndexStats stats = IntervalIndexStats.read(getSearcher().getIndexReader(), "time");
+    Assert.assertEquals(3, stats.getDocumentCount());
+    Assert.assertEquals(4, stats.getIntervalCount());
+    Assert.assertArrayEquals(new int[]{0, 4}, stats.getShifts());
+    Assert.assertEquals(4, stats.getPostingCount(4));
+    Assert.assertEquals(16, stats.getOpenEndedTermCount());
+    Assert.assertEquals(16, stats.getOpenEndedPostingCount());
+    Assert.assertEquals(21, stats.getTotalPostingCount());
+    Assert.assertEquals(21.0 / 4, stats.getTokensPerInterval(), 1e-9);
+    Assert.assertEquals(7.0, stats.getTokensPerDocument(), 1e-9);
+  }
+
+  @Test
+  public void testAdvisor() {
+    List<LongInterval> sample = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      sample.add(new LongInterval(i * 86400L, i * 86400L + 3600 + i));
+    }
+    PrecisionStepAdvisor advisor = new PrecisionStepAdvisor(sample, 1000000);
+
+    PrecisionStepAdvisor.Simulation four = advisor.simulate(4, ImmutableList.of(new LongInterval(0, 0)));
+    Assert.assertEquals(16, four.getSeeksPerQuery());
+    Assert.assertEquals(1000.0, four.getPostingsPerQuery(), 1e-9);
+    // Hour long intervals are far shorter than one 16 bit block.
+    Assert.assertTrue(four.getTokensPerInterval() < advisor.simulate(16, sample).getTokensPerInterval());
+
+    // Larger steps always need fewer seeks.
+    Assert.assertTrue(advisor.simulate(8, sample).getSeeksPerQuery() < four.getSeeksPerQuery());
+    Assert.assertNotNull(advisor.recommend(sample));
+  }
+}
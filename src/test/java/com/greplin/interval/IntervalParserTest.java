@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Tests the IntervalParser class.
+ */
+public class IntervalParserTest {
+  private final IntervalParser parser = new IntervalParser();
+
+  @Test
+  public void testParse() {
+    assertParse(1, 2, "1-2");
+    assertParse(-5, -2, " -5 - -2 ");
+    assertParse(-5, 2, "-5-2");
+    assertParse(1, -2, "1--2");
+    assertParse(Long.MIN_VALUE, Long.MAX_VALUE, "-9223372036854775808-9223372036854775807");
+    assertParse(7, 7, "\t7-7\r");
+  }
+
+  @Test
+  public void testSources() {
+    Assert.assertEquals(12, this.parser.parse("xx 12-34 yy".toCharArray(), 2, 7).getStart());
+    Assert.assertEquals(34, this.parser.getEnd());
+
+    ByteBuffer bytes = ByteBuffer.wrap("xx -12-34 yy".getBytes(Charsets.US_ASCII));
+    Assert.assertEquals(-12, this.parser.parse(bytes, 2, 8).getStart());
+    Assert.assertEquals(34, this.parser.getEnd());
+    Assert.assertEquals(0, bytes.position());
+
+    Assert.assertEquals(new LongInterval(-3, 4), LongInterval.valueOf(" -3 - 4"));
+  }
+
+  @Test
+  public void testInvalid() {
+    for (String invalid : new String[]{"", " ", "1", "1-", "-1", "1-2-3", "a-2", "1-2x", "1 2",
+                                       "--1-2", "9223372036854775808-1", "1--9223372036854775809"}) {
+      try {
+        this.parser.parse(invalid);
+        Assert.fail("Parsed " + invalid);
+      } catch (NumberFormatException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void testParseLines() throws IOException {
+    String text = "1-2\r\n\n -3--1\n  \n5-9";
+    long[] expected = new long[]{1, 2, -3, -1, 5, 9};
+    Assert.assertArrayEquals(expected,
+        IntervalParser.parseLines(ByteBuffer.wrap(text.getBytes(Charsets.US_ASCII))));
+
+    File file = File.createTempFile("intervals", ".txt");
+    try {
+      Files.write(text + "\n", file, Charsets.US_ASCII);
+      Assert.assertArrayEquals(expected, IntervalParser.parseFile(file));
+    } finally {
+      file.delete();
+    }
+  }
+
+  private void assertParse(long start, long end, String text) {
+    this.parser.parse(text);
+    Assert.assertEquals(start, this.parser.getStart());
+    Assert.assertEquals(end, this.parser.getEnd());
+    Assert.assertArrayEquals(new long[]{start, end}, NumericIntervalField.splitParts(text));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.NumericUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalQueryPlan class.
+ */
+public class IntervalQueryPlanTest extends BaseIntervalQueryTest {
+
+  private static Query query(int q, long start, long width, IntervalQueryPlan.Strategy strategy) {
+    return q % 2 == 0
+        ? new NumericIntervalIntersectionQuery("time", start, start + width).forceStrategy(strategy)
+        : new IntervalConstantScoreQuery(new InNumericIntervalFilter("time", start).forceStrategy(strategy));
+  }
+
+  @Test
+  public void testStrategiesAgree() throws IOException {
+    Random random = new Random(17);
+    for (int id = 0; id < 500; id++) {
+      NumericIntervalSetField field = new NumericIntervalSetField("time", true).setColumn(true);
+      for (int j = random.nextInt(3); j > 0; j--) {
+        long start = random.nextInt(100000) - 50000;
+        field.addInterval(start, start + random.nextInt(id % 20 == 0 ? 50000 : 500));
+      }
+      addDocument(id, field, new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 200) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "5"));
+
+    IndexSearcher searcher = getSearcher();
+    IntervalTree.warm(searcher.getIndexReader(), "time");
+    for (IndexReader segment : searcher.getIndexReader().getSequentialSubReaders()) {
+      Assert.assertTrue(IntervalColumn.get(segment, "time").isComplete());
+    }
+
+    for (int q = 0; q < 200; q++) {
+      long start = random.nextInt(110000) - 55000;
+      long width = q % 10 == 0 ? random.nextInt(1000000) : random.nextInt(2000);
+      int expected = searcher.search(query(q, start, width, IntervalQueryPlan.Strategy.TERMS), 1000).totalHits;
+      for (IntervalQueryPlan.Strategy strategy : IntervalQueryPlan.Strategy.values()) {
+        Query query = query(q, start, width, strategy);
+        Assert.assertEquals(query + " " + strategy, expected, searcher.search(query, 1000).totalHits);
+      }
+      Assert.assertEquals(expected, searcher.search(query(q, start, width, null), 1000).totalHits);
+    }
+  }
+
+  @Test
+  public void testForcedStrategyRequiresStructure() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 1, 5).setColumn(true));
+    addDocument(2, new NumericIntervalField("time", true, 3, 9));
+
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(segment, "time", 64);
+    Assert.assertFalse(IntervalColumn.get(segment, "time").isComplete());
+    Assert.assertEquals(IntervalQueryPlan.Strategy.DISJUNCTION, IntervalQueryPlan.create(
+        segment, "time", 2, 4, schema, IntervalQueryPlan.Strategy.DISJUNCTION).getStrategy());
+    Assert.assertFalse(IntervalQueryPlan.Strategy.COLUMN == IntervalQueryPlan.create(
+        segment, "time", 2, 4, schema, IntervalQueryPlan.Strategy.COLUMN).getStrategy());
+    Assert.assertFalse(IntervalQueryPlan.Strategy.TREE == IntervalQueryPlan.create(
+        segment, "time", 2, 4, schema, IntervalQueryPlan.Strategy.TREE).getStrategy());
+  }
+
+  @Test
+  public void testWideQueriesScanColumn() throws IOException {
+    for (int id = 0; id < 3000; id++) {
+      addDocument(id, new NumericIntervalField("time", true, id * 1000L, id * 1000L + 10).setColumn(true));
+    }
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(segment, "time", 64);
+    Assert.assertEquals(IntervalQueryPlan.Strategy.TERMS,
+        IntervalQueryPlan.create(segment, "time", 0, Long.MAX_VALUE, schema).getStrategy());
+
+    IntervalColumn.get(segment, "time");
+    Assert.assertEquals(IntervalQueryPlan.Strategy.COLUMN,
+        IntervalQueryPlan.create(segment, "time", 0, Long.MAX_VALUE, schema).getStrategy());
+    Assert.assertFalse(IntervalQueryPlan.Strategy.COLUMN
+        == IntervalQueryPlan.create(segment, "time", 5000, 5000, schema).getStrategy());
+  }
+
+  @Test
+  public void testExplainShowsPlan() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 1, 5));
+    addDocument(2, new NumericIntervalField("time", true, 3, 9));
+
+    IndexSearcher searcher = getSearcher();
+    Explanation explanation = searcher.explain(new NumericIntervalIntersectionQuery("time", 0, 2), 0);
+    Assert.assertTrue(explanation.isMatch());
+    Assert.assertTrue(explanation.getDescription(), explanation.getDescription().startsWith("interval plan TERMS"));
+
+    explanation = searcher.explain(new InNumericIntervalQuery("time", 7), 0);
+    Assert.assertFalse(explanation.isMatch());
+    Assert.assertTrue(explanation.getDescription(), explanation.getDescription().startsWith("interval plan"));
+  }
+
+  @Test
+  public void testSearchSkipsSamplingWithoutTreeOrColumn() throws IOException {
+    for (int id = 0; id < 100; id++) {
+      addDocument(id, new NumericIntervalField("time", true, id * 10L, id * 10L + 5).setColumn(true));
+    }
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(segment, "time", 64);
+    IntervalQueryPlan plan = IntervalQueryPlan.forSearch(segment, "time", 50, 50, schema, null);
+    Assert.assertEquals(IntervalQueryPlan.Strategy.TERMS, plan.getStrategy());
+    Assert.assertTrue(plan.toString(), plan.toString().contains("not sampled"));
+    // Ranges still weigh the term strategies against each other.
+    Assert.assertFalse(IntervalQueryPlan.forSearch(segment, "time", 0, 50, schema, null)
+        .toString().contains("not sampled"));
+    Assert.assertFalse(IntervalQueryPlan.forSearch(segment, "time", 50, 50, schema,
+        IntervalQueryPlan.Strategy.DISJUNCTION).toString().contains("not sampled"));
+
+    IntervalColumn.get(segment, "time");
+    Assert.assertFalse(IntervalQueryPlan.forSearch(segment, "time", 50, 50, schema, null)
+        .toString().contains("not sampled"));
+  }
+
+  @Test
+  public void testNarrowRangesMergePostingsOnLargeSegments() throws IOException {
+    for (int id = 0; id < 50000; id++) {
+      addDocument(id, new NumericIntervalField("time", true, id * 1000L, id * 1000L + 10, 8));
+    }
+    getIndexWriter().forceMerge(1);
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(segment, "time", 64);
+    IntervalQueryPlan narrow = IntervalQueryPlan.forSearch(segment, "time", 5003, 5004, schema, null);
+    Assert.assertEquals(narrow.toString(), IntervalQueryPlan.Strategy.DISJUNCTION, narrow.getStrategy());
+    IntervalQueryPlan wide = IntervalQueryPlan.forSearch(segment, "time", 0, 50000000, schema, null);
+    Assert.assertEquals(wide.toString(), IntervalQueryPlan.Strategy.TERMS, wide.getStrategy());
+  }
+
+  @Test
+  public void testEqualityIncludesEncodingAndStrategy() {
+    Query longs = new NumericIntervalIntersectionQuery("time", 1, 2);
+    Assert.assertEquals(longs, new NumericIntervalIntersectionQuery("time", 1, 2));
+    Assert.assertFalse(longs.equals(new NumericIntervalIntersectionQuery("time", 1, 2)
+        .forceStrategy(IntervalQueryPlan.Strategy.DISJUNCTION)));
+    Assert.assertFalse(longs.equals(NumericIntervalIntersectionQuery.forDoubles("time",
+        NumericUtils.sortableLongToDouble(1), NumericUtils.sortableLongToDouble(2))));
+    Assert.assertFalse(new InNumericIntervalFilter("time", 1).equals(
+        new InNumericIntervalFilter("time", 1).forceStrategy(IntervalQueryPlan.Strategy.TERMS)));
+  }
+}
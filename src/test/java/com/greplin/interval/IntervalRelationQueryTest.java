@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalRelationQuery class.
+ */
+public class IntervalRelationQueryTest extends BaseIntervalQueryTest {
+
+  private static final int DOCS = 300;
+
+  private void assertMatchesBruteForce(LongIntervalArray[] intervals) throws IOException {
+    IndexSearcher searcher = getSearcher();
+    Random random = new Random(53);
+    for (int q = 0; q < 60; q++) {
+      long start = random.nextInt(12000) - 1000;
+      long end = start + random.nextInt(q % 3 == 0 ? 20 : 3000);
+      if (q % 7 == 0) {
+        // Reuse an indexed interval, so EQUALS has matches.
+        int id = random.nextInt(DOCS);
+        start = intervals[id].getStart(0);
+        end = intervals[id].getEnd(0);
+      }
+      for (IntervalRelationQuery.Relation relation : IntervalRelationQuery.Relation.values()) {
+        boolean[] expected = new boolean[DOCS];
+        int expectedCount = 0;
+        for (int id = 1; id < DOCS; id++) {
+          for (int i = 0; i < intervals[id].size() && !expected[id]; i++) {
+            expected[id] = relation.holds(intervals[id].getStart(i), intervals[id].getEnd(i), start, end);
+          }
+          expectedCount += expected[id] ? 1 : 0;
+        }
+        IntervalRelationQuery query = new IntervalRelationQuery("time", start, end, relation);
+        TopDocs results = searcher.search(query, DOCS);
+        Assert.assertEquals(query.toString(), expectedCount, results.totalHits);
+        for (ScoreDoc scoreDoc : results.scoreDocs) {
+          int id = Integer.parseInt(searcher.doc(scoreDoc.doc).get("id"));
+          Assert.assertTrue(query + " " + id, expected[id]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSingleValued() throws IOException {
+    Random random = new Random(59);
+    LongIntervalArray[] intervals = new LongIntervalArray[DOCS];
+    for (int id = 0; id < DOCS; id++) {
+      long start = random.nextInt(10000);
+      long end = start + random.nextInt(id % 10 == 0 ? 5000 : 300);
+      intervals[id] = new LongIntervalArray().add(start, end);
+      addDocument(id, new NumericIntervalField("time", true, start, end),
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 100) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "0"));
+    assertMatchesBruteForce(intervals);
+  }
+
+  @Test
+  public void testMultiValuedWithColumn() throws IOException {
+    Random random = new Random(61);
+    LongIntervalArray[] intervals = new LongIntervalArray[DOCS];
+    for (int id = 0; id < DOCS; id++) {
+      NumericIntervalSetField field = new NumericIntervalSetField("time", true).setColumn(true);
+      intervals[id] = new LongIntervalArray();
+      for (int j = 1 + random.nextInt(id % 2 == 0 ? 1 : 3); j > 0; j--) {
+        long start = random.nextInt(10000);
+        long end = start + random.nextInt(500);
+        field.addInterval(start, end);
+        intervals[id].add(start, end);
+      }
+      intervals[id].merge();
+      addDocument(id, field, new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "0"));
+    assertMatchesBruteForce(intervals);
+  }
+
+  @Test
+  public void testExtremeBounds() throws IOException {
+    addDocument(1, Long.MIN_VALUE, 0);
+    addDocument(2, 0, Long.MAX_VALUE);
+    addDocument(3, 5, 9);
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, new IntervalRelationQuery("time", Long.MIN_VALUE, 0, IntervalRelationQuery.Relation.EQUALS), 1);
+    assertSearch(searcher, new IntervalRelationQuery("time", Long.MIN_VALUE, 3, IntervalRelationQuery.Relation.STARTS_BEFORE));
+    assertSearch(searcher, new IntervalRelationQuery("time", 4, Long.MAX_VALUE, IntervalRelationQuery.Relation.WITHIN), 3);
+    assertSearch(searcher, new IntervalRelationQuery("time", 6, 7, IntervalRelationQuery.Relation.CONTAINS), 2, 3);
+    assertSearch(searcher, new IntervalRelationQuery("time", 1, 2, IntervalRelationQuery.Relation.AFTER), 3);
+    assertSearch(searcher, new IntervalRelationQuery("time", 1, 2, IntervalRelationQuery.Relation.BEFORE), 1);
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Sets;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.NumericUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for schemas recorded in the index.
+ */
+public class IntervalSchemaTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testTermText() {
+    IntervalSchema schema = IntervalSchema.uniform(64, 6);
+    Assert.assertArrayEquals(new int[]{0, 6, 12, 18, 24, 30, 36, 42, 48, 54, 60}, schema.getShifts());
+    Assert.assertEquals(schema, IntervalSchema.fromTermText(schema.toTermText()));
+    Assert.assertEquals(8, IntervalSchema.uniform(32, 4).getShifts().length);
+  }
+
+  @Test
+  public void testReadSchema() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 1000, 2000, 6));
+    addDocument(2, new IntIntervalField("count", true, 5, 10, 8));
+
+    IndexSearcher searcher = getSearcher();
+    Assert.assertEquals(IntervalSchema.uniform(64, 6),
+        IntervalSchema.read(searcher.getIndexReader(), "time", 64));
+    Assert.assertNull(IntervalSchema.read(searcher.getIndexReader(), "time", 32));
+    Assert.assertEquals(IntervalSchema.uniform(32, 8),
+        IntervalSchema.read(searcher.getIndexReader(), "count", 32));
+    Assert.assertNull(IntervalSchema.read(searcher.getIndexReader(), "id", 64));
+  }
+
+  @Test
+  public void testQueriesUseRecordedPrecisionStep() throws IOException {
+    // Shift levels 6, 18, 30... are not levels of the default precision step.
+    addDocument(1, new NumericIntervalField("time", true, 0, 1L << 40, 6));
+    addDocument(2, new NumericIntervalField("time", true, 4097, 8190, 6));
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1L << 39), 1);
+    assertSearch(searcher, new InNumericIntervalQuery("time", 5000), 1, 2);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 4000, 4096), 1);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 8000, 9000), 1, 2);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 1L << 41, 1L << 42));
+  }
+
+  @Test
+  public void testMixedSegments() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 0, 1L << 40, 6));
+    getSearcher();
+    addDocument(2, new NumericIntervalField("time", true, 4097, 8190, 8));
+    getSearcher();
+    addDocument(3, new NumericIntervalField("time", true, 100, 5000, 5));
+
+    IndexSearcher searcher = getSearcher();
+    Assert.assertArrayEquals(new int[]{0, 5, 6, 8, 10, 12, 15, 16, 18, 20, 24, 25, 30, 32, 35, 36,
+                                       40, 42, 45, 48, 50, 54, 55, 56, 60},
+        IntervalSchema.read(searcher.getIndexReader(), "time", 64).getShifts());
+
+    assertSearch(searcher, new InNumericIntervalQuery("time", 4500), 1, 2, 3);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 5001, 6000), 1, 2);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 0, 99), 1);
+  }
+
+
+  @Test
+  public void testUniformScheduleMatchesLucene() {
+    Random random = new Random(9);
+    IntervalSegments segments = new IntervalSegments();
+    for (int i = 0; i < 200; i++) {
+      long a = random.nextLong() >> random.nextInt(64);
+      long b = random.nextLong() >> random.nextInt(64);
+      final long min = Math.min(a, b);
+      final long max = Math.max(a, b);
+      final int step = 1 + random.nextInt(16);
+
+      final List<String> expected = new ArrayList<String>();
+      NumericUtils.splitLongRange(new NumericUtils.LongRangeBuilder() {
+        @Override
+        public void addRange(long lower, long upper, int shift) {
+          long block = lower & ~((1L << shift) - 1L);
+          for (long n = ((upper - lower) >>> shift) + 1; n > 0; n--) {
+            expected.add(block + "/" + shift);
+            block += 1L << shift;
+          }
+        }
+      }, step, min, max);
+
+      segments.clear();
+      segments.add(min, max, IntervalSchema.uniform(64, step));
+      List<String> actual = new ArrayList<String>();
+      for (int j = 0; j < segments.size(); j++) {
+        actual.add(segments.getStart(j) + "/" + segments.getShift(j));
+      }
+      Assert.assertEquals(Sets.newHashSet(expected), Sets.newHashSet(actual));
+      Assert.assertEquals(expected.size(), actual.size());
+    }
+  }
+
+
+  @Test
+  public void testInvalidSchedules() {
+    assertInvalid(64);
+    assertInvalid(64, 4, 8);
+    assertInvalid(64, 0, 8, 8);
+    assertInvalid(64, 0, 64);
+    assertInvalid(32, 0, 16, 40);
+    // The last level steps to the value size.
+    assertInvalid(64, 0, 8, 16);
+    assertInvalid(64, 0, 2, 4, 8, 16, 24, 32, 48);
+    assertInvalid(32, 0, 4, 16, 24);
+  }
+
+
+  @Test
+  public void testRecordedLargeStepsAreReadable() {
+    IntervalSchema schema = IntervalSchema.uniform(64, 16);
+    Assert.assertEquals(schema, IntervalSchema.fromTermText(schema.toTermText()));
+  }
+
+
+  @Test
+  public void testFullRangeUnderCustomSchedule() {
+    IntervalSchema schema = IntervalSchema.withShifts(64, 0, 2, 4, 8, 16, 24, 32, 40, 48, 56);
+    IntervalSegments segments = new IntervalSegments();
+    long[][] ranges = {{Long.MIN_VALUE, Long.MAX_VALUE}, {0, Long.MAX_VALUE}, {Long.MIN_VALUE + 1, Long.MAX_VALUE - 1}};
+    for (long[] range : ranges) {
+      segments.clear();
+      segments.add(range[0], range[1], schema);
+      // At most 2 * (2^step - 1) segments below the last level and 2^step at it.
+      Assert.assertTrue(segments.toString(), segments.size() <= 2 * (3 + 3 + 15 + 6 * 255) + 256);
+
+      // The segments tile the range exactly.
+      List<long[]> blocks = new ArrayList<long[]>();
+      for (int i = 0; i < segments.size(); i++) {
+        long start = segments.getStart(i);
+        blocks.add(new long[]{start, start + ((1L << segments.getShift(i)) - 1L)});
+      }
+      Collections.sort(blocks, new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+          return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+        }
+      });
+      Assert.assertEquals(range[0], blocks.get(0)[0]);
+      for (int i = 1; i < blocks.size(); i++) {
+        Assert.assertEquals(blocks.get(i - 1)[1] + 1, blocks.get(i)[0]);
+      }
+      Assert.assertEquals(range[1], blocks.get(blocks.size() - 1)[1]);
+    }
+  }
+
+
+  private static void assertInvalid(int valueSize, int... shifts) {
+    try {
+      IntervalSchema.withShifts(valueSize, shifts);
+      Assert.fail("Expected a rejected schedule");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+
+  @Test
+  public void testNonUniformSchedule() throws IOException {
+    // Fine levels for short intervals, coarse ones for long ones.
+    IntervalSchema schema = IntervalSchema.withShifts(64, 0, 2, 4, 8, 12, 16, 24, 32, 40, 48, 56);
+    Random random = new Random(7);
+    long[][] intervals = new long[100][];
+    for (int i = 0; i < intervals.length; i++) {
+      long start = random.nextLong() >> random.nextInt(64);
+      long length = Math.abs(random.nextLong() >> random.nextInt(64));
+      long end = start + length < start ? Long.MAX_VALUE : start + length;
+      intervals[i] = new long[]{start, end};
+      NumericIntervalField field = new NumericIntervalField("time", true, schema);
+      field.setInterval(start, end);
+      addDocument(i, field);
+    }
+
+    IndexSearcher searcher = getSearcher();
+    Assert.assertEquals(schema, IntervalSchema.read(searcher.getIndexReader(), "time", 64));
+    for (int q = 0; q < 50; q++) {
+      long a = random.nextLong() >> random.nextInt(64);
+      long b = random.nextLong() >> random.nextInt(64);
+      List<Integer> points = new ArrayList<Integer>();
+      List<Integer> overlaps = new ArrayList<Integer>();
+      for (int i = 0; i < intervals.length; i++) {
+        if (intervals[i][0] <= a && a <= intervals[i][1]) {
+          points.add(i);
+        }
+        if (intervals[i][0] <= Math.max(a, b) && Math.min(a, b) <= intervals[i][1]) {
+          overlaps.add(i);
+        }
+      }
+      assertSearch(searcher, new InNumericIntervalQuery("time", a), points.toArray(new Integer[points.size()]));
+      assertSearch(searcher,
+          new NumericIntervalIntersectionQuery("time", Math.min(a, b), Math.max(a, b)),
+          overlaps.toArray(new Integer[overlaps.size()]));
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests the IntervalSidecar class.
+ */
+public class IntervalSidecarTest extends BaseIntervalQueryTest {
+  private File directory;
+
+  @Before
+  public void createDirectory() {
+    this.directory = Files.createTempDir();
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    for (File file : this.directory.listFiles()) {
+      Assert.assertTrue(file.delete());
+    }
+    Assert.assertTrue(this.directory.delete());
+  }
+
+  @Test
+  public void testMatchesColumn() throws IOException {
+    Random random = new Random(5);
+    for (int id = 0; id < 300; id++) {
+      NumericIntervalSetField field = new NumericIntervalSetField("time", true).setColumn(true);
+      for (int j = random.nextInt(3); j > 0; j--) {
+        long start = random.nextInt(100000) - 50000;
+        field.addInterval(start, start + random.nextInt(1000));
+      }
+      addDocument(id, field, new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 100) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "7"));
+
+    IndexSearcher searcher = getSearcher();
+    IndexReader[] segments = searcher.getIndexReader().getSequentialSubReaders();
+    Assert.assertEquals(2, segments.length);
+    for (IndexReader segment : segments) {
+      IntervalSidecar sidecar = IntervalSidecar.get(this.directory, segment, "time");
+      Assert.assertSame(sidecar, IntervalSidecar.get(this.directory, segment, "time"));
+      IntervalColumn column = IntervalColumn.get(segment, "time");
+      Assert.assertEquals(column.getStarts().length, sidecar.size());
+      for (int i = 1; i < sidecar.size(); i++) {
+        Assert.assertTrue(sidecar.getStart(i - 1) <= sidecar.getStart(i));
+      }
+
+      for (int q = 0; q < 100; q++) {
+        long start = random.nextInt(110000) - 55000;
+        long end = start + random.nextInt(5000);
+        FixedBitSet actual = new FixedBitSet(segment.maxDoc());
+        sidecar.intersecting(segment, start, end, actual);
+        for (int doc = 0; doc < segment.maxDoc(); doc++) {
+          boolean expected = !segment.isDeleted(doc) && column.intersects(doc, start, end);
+          Assert.assertEquals(expected, actual.get(doc));
+        }
+      }
+    }
+    Assert.assertEquals(2, this.directory.list().length);
+
+    getIndexWriter().forceMerge(1);
+    IndexReader merged = getSearcher().getIndexReader();
+    Assert.assertEquals(2, IntervalSidecar.deleteUnused(this.directory, merged));
+    IntervalSidecar.get(this.directory, merged.getSequentialSubReaders()[0], "time");
+    Assert.assertEquals(1, this.directory.list().length);
+  }
+
+  @Test
+  public void testFilterMatchesQuery() throws IOException {
+    Random random = new Random(11);
+    for (int id = 0; id < 200; id++) {
+      long start = random.nextInt(100000);
+      addDocument(id, new NumericIntervalField("time", true, start, start + random.nextInt(2000)).setColumn(true));
+      if (id == 120) {
+        getSearcher();
+      }
+    }
+
+    IndexSearcher searcher = getSearcher();
+    for (int q = 0; q < 50; q++) {
+      long start = random.nextInt(110000);
+      long end = start + random.nextInt(3000);
+      Assert.assertEquals(
+          ids(searcher, new NumericIntervalIntersectionQuery("time", start, end)),
+          ids(searcher, new ConstantScoreQuery(new IntervalSidecarFilter(this.directory, "time", start, end))));
+    }
+    Assert.assertEquals(searcher.getIndexReader().getSequentialSubReaders().length, this.directory.list().length);
+    Assert.assertEquals(new IntervalSidecarFilter(this.directory, "time", 1, 2),
+        new IntervalSidecarFilter(this.directory, "time", 1, 2));
+  }
+
+  private static Set<String> ids(IndexSearcher searcher, Query query) throws IOException {
+    Set<String> ids = Sets.newHashSet();
+    for (ScoreDoc scoreDoc : searcher.search(query, 1000).scoreDocs) {
+      ids.add(searcher.doc(scoreDoc.doc).get("id"));
+    }
+    return ids;
+  }
+
+  private static RAMDirectory index(long offset) throws IOException {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory,
+        new IndexWriterConfig(Version.LUCENE_35, new SimpleAnalyzer(Version.LUCENE_35)));
+    for (int id = 0; id < 50; id++) {
+      Document doc = new Document();
+      doc.add(new NumericIntervalField("time", true, offset + id * 10, offset + id * 10 + 5).setColumn(true));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    return directory;
+  }
+
+  @Test
+  public void testStaleFileIsRewritten() throws IOException {
+    IndexReader first = IndexReader.open(index(0));
+    Assert.assertEquals(0, IntervalSidecar.get(this.directory, first.getSequentialSubReaders()[0], "time").getStart(0));
+    first.close();
+
+    // A rebuilt index reuses the segment name and maxDoc.
+    IndexReader second = IndexReader.open(index(1000));
+    IntervalSidecar sidecar = IntervalSidecar.get(this.directory, second.getSequentialSubReaders()[0], "time");
+    Assert.assertEquals(1000, sidecar.getStart(0));
+    Assert.assertEquals(1, this.directory.list().length);
+    second.close();
+  }
+
+  @Test
+  public void testCorruptFileIsRewritten() throws IOException {
+    RAMDirectory index = index(0);
+    IndexReader reader = IndexReader.open(index);
+    IntervalSidecar.get(this.directory, reader.getSequentialSubReaders()[0], "time");
+    reader.close();
+    File file = this.directory.listFiles()[0];
+
+    RandomAccessFile output = new RandomAccessFile(file, "rw");
+    output.seek(100);
+    output.writeLong(123456789L);
+    output.close();
+    reader = IndexReader.open(index);
+    IntervalSidecar sidecar = IntervalSidecar.get(this.directory, reader.getSequentialSubReaders()[0], "time");
+    Assert.assertEquals(50, sidecar.size());
+    for (int i = 0; i < sidecar.size(); i++) {
+      Assert.assertEquals(i * 10, sidecar.getStart(i));
+    }
+    reader.close();
+
+    output = new RandomAccessFile(file, "rw");
+    output.setLength(file.length() - 30);
+    output.close();
+    reader = IndexReader.open(index);
+    Assert.assertEquals(50, IntervalSidecar.get(this.directory, reader.getSequentialSubReaders()[0], "time").size());
+    reader.close();
+  }
+
+  @Test
+  public void testConcurrentFirstUse() throws Exception {
+    final RAMDirectory index = index(0);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> results = Lists.newArrayList();
+    for (int i = 0; i < 16; i++) {
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          IndexReader reader = IndexReader.open(index);
+          try {
+            IntervalSidecar sidecar = IntervalSidecar.get(
+                IntervalSidecarTest.this.directory, reader.getSequentialSubReaders()[0], "time");
+            return sidecar.size();
+          } finally {
+            reader.close();
+          }
+        }
+      }));
+    }
+    for (Future<Integer> result : results) {
+      Assert.assertEquals(50, result.get().intValue());
+    }
+    executor.shutdown();
+    Assert.assertEquals(1, this.directory.list().length);
+  }
+
+  @Test
+  public void testFieldNamesAreEscaped() {
+    Assert.assertEquals("time_2-x", IntervalSidecar.escape("time_2-x"));
+    Assert.assertEquals("a%002fb%002e%0025", IntervalSidecar.escape("a/b.%"));
+  }
+}
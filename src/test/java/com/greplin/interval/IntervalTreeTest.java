@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the IntervalTree class.
+ */
+public class IntervalTreeTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testMatchesTerms() throws IOException {
+    Random random = new Random(11);
+    for (int id = 0; id < 400; id++) {
+      NumericIntervalSetField field = new NumericIntervalSetField("time", true).setColumn(true);
+      for (int j = random.nextInt(3); j > 0; j--) {
+        long start = random.nextInt(100000) - 50000;
+        field.addInterval(start, start + random.nextInt(id % 20 == 0 ? 50000 : 500));
+      }
+      addDocument(id, field, new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 150) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "3"));
+
+    IndexSearcher searcher = getSearcher();
+    Query[] queries = new Query[200];
+    int[] expected = new int[queries.length];
+    for (int q = 0; q < queries.length; q++) {
+      long start = random.nextInt(110000) - 55000;
+      queries[q] = q % 2 == 0
+          ? new NumericIntervalIntersectionQuery("time", start, start + random.nextInt(2000))
+          : new InNumericIntervalQuery("time", start);
+      expected[q] = searcher.search(queries[q], 1000).totalHits;
+    }
+
+    IntervalTree.warm(searcher.getIndexReader(), "time");
+    for (IndexReader segment : searcher.getIndexReader().getSequentialSubReaders()) {
+      Assert.assertNotNull(IntervalTree.getIfBuilt(segment, "time"));
+    }
+    for (int q = 0; q < queries.length; q++) {
+      TopDocs withTree = searcher.search(queries[q], 1000);
+      Assert.assertEquals(queries[q].toString(), expected[q], withTree.totalHits);
+    }
+  }
+
+  @Test
+  public void testRequiresColumn() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, 1, 5).setColumn(true));
+    addDocument(2, new NumericIntervalField("time", true, 3, 9));
+
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    Assert.assertNull(IntervalTree.get(segment, "time"));
+    assertSearch(new IndexSearcher(segment), new InNumericIntervalQuery("time", 4), 1, 2);
+  }
+
+  @Test
+  public void testEmptyAndPoint() throws IOException {
+    addDocument(1, new NumericIntervalField("time", true, Long.MIN_VALUE, -1).setColumn(true));
+    addDocument(2, new NumericIntervalField("time", true, 7, 7).setColumn(true));
+    addDocument(3, new Field("key", "x", Field.Store.NO, Field.Index.NOT_ANALYZED));
+
+    IndexReader segment = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalTree tree = IntervalTree.get(segment, "time");
+    Assert.assertEquals(2, tree.size());
+    FixedBitSet bits = new FixedBitSet(segment.maxDoc());
+    tree.containing(segment, 7, bits);
+    Assert.assertEquals(1, bits.cardinality());
+    Assert.assertTrue(bits.get(1));
+    Assert.assertEquals(0, IntervalTree.get(segment, "missing").size());
+  }
+}
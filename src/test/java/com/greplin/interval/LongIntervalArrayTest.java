@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.primitives.Ints;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the LongIntervalArray class.
+ */
+public class LongIntervalArrayTest {
+
+  @Test
+  public void testSortAndMerge() {
+    LongIntervalArray array = new LongIntervalArray(2)
+        .add(10, 20).add(1, 5).add(6, 8).add(1, 3).add(30, Long.MAX_VALUE).add(25, 24);
+    array.sort();
+    Assert.assertEquals("LongIntervalArray[1-3, 1-5, 6-8, 10-20, 25-24, 30-9223372036854775807]",
+        array.toString());
+    array.merge();
+    Assert.assertEquals("LongIntervalArray[1-8, 10-20, 30-9223372036854775807]", array.toString());
+    Assert.assertEquals(new LongInterval(10, 20), array.get(1));
+  }
+
+  @Test
+  public void testStabbing() {
+    Random random = new Random(13);
+    LongIntervalArray array = new LongIntervalArray();
+    List<LongInterval> intervals = new ArrayList<LongInterval>();
+    for (int i = 0; i < 500; i++) {
+      long start = random.nextInt(10000);
+      LongInterval interval = new LongInterval(start, start + random.nextInt(i % 10 == 0 ? 5000 : 50));
+      intervals.add(interval);
+      array.add(interval);
+    }
+    Collections.sort(intervals);
+
+    for (int q = 0; q < 500; q++) {
+      long a = random.nextInt(16000) - 1000;
+      long b = a + random.nextInt(100);
+      List<Integer> expected = new ArrayList<Integer>();
+      boolean intersects = false;
+      for (int i = 0; i < intervals.size(); i++) {
+        if (intervals.get(i).contains(a)) {
+          expected.add(i);
+        }
+        intersects |= intervals.get(i).getStart() <= b && a <= intervals.get(i).getEnd();
+      }
+      int[] stabbed = array.stab(a);
+      for (int i : stabbed) {
+        Assert.assertEquals(intervals.get(i), array.get(i));
+      }
+      Assert.assertEquals(expected, Ints.asList(stabbed));
+      Assert.assertEquals(!expected.isEmpty(), array.containsPoint(a));
+      Assert.assertEquals(intersects, array.intersectsAny(a, b));
+    }
+  }
+
+  @Test
+  public void testStabbingPastLongFirstInterval() {
+    LongIntervalArray array = new LongIntervalArray().add(0, Long.MAX_VALUE);
+    for (int i = 1; i <= 1000; i++) {
+      array.add(i * 10, i * 10 + 2);
+    }
+    Assert.assertEquals(Ints.asList(0, 500), Ints.asList(array.stab(5001)));
+    Assert.assertEquals(Ints.asList(0), Ints.asList(array.stab(5005)));
+    Assert.assertTrue(array.intersectsAny(20000, 30000));
+    Assert.assertFalse(new LongIntervalArray().add(0, 5).add(10, 12).intersectsAny(6, 9));
+  }
+}
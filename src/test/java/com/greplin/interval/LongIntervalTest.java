@@ -1,5 +1,6 @@
 package com.greplin.interval;
 
+import com.google.common.base.Objects;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -29,4 +30,23 @@ public class LongIntervalTest {
     Assert.assertFalse(new LongInterval(1, 100).equals(new LongInterval(5, 500)));
   }
 
+  @Test
+  public void testPrimitiveOverridesMatchBoxed() throws Exception {
+    Assert.assertEquals(Objects.hashCode(-3L, Long.MAX_VALUE), new LongInterval(-3, Long.MAX_VALUE).hashCode());
+    Assert.assertEquals(Objects.hashCode(-3, 7), new IntegerInterval(-3, 7).hashCode());
+    Assert.assertEquals(Objects.hashCode(-0.5f, 7f), new FloatInterval(-0.5f, 7f).hashCode());
+    Assert.assertEquals(Objects.hashCode(-0.5, 7.0), new DoubleInterval(-0.5, 7).hashCode());
+
+    Assert.assertEquals(new DoubleInterval(Double.NaN, 1), new DoubleInterval(Double.NaN, 1));
+    Assert.assertFalse(new DoubleInterval(0.0, 1).equals(new DoubleInterval(-0.0, 1)));
+    Assert.assertFalse(new LongInterval(1, 2).equals(new IntegerInterval(1, 2)));
+    Assert.assertEquals("DoubleInterval{1.5-2.0}", new DoubleInterval(1.5, 2).toString());
+    Assert.assertEquals("-1--2", new LongInterval(-1, -2).asString());
+
+    // Intervals are ordered by start only.
+    Assert.assertEquals(0, new LongInterval(1, 2).compareTo(new LongInterval(1, 3)));
+    Assert.assertTrue(new LongInterval(2, 2).compareTo(new LongInterval(1, 3)) > 0);
+    Assert.assertEquals(0, new FloatInterval(1, 2).compareTo(new FloatInterval(1, 2)));
+  }
+
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the MultiIntervalIntersectionQuery class.
+ */
+public class MultiIntervalIntersectionQueryTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testMatchesBooleanQuery() throws IOException {
+    Random random = new Random(47);
+    for (int id = 0; id < 500; id++) {
+      long start = random.nextInt(1000000) - 500000;
+      addDocument(id, start, start + random.nextInt(id % 10 == 0 ? 100000 : 1000));
+    }
+    IndexSearcher searcher = getSearcher();
+
+    for (int q = 0; q < 20; q++) {
+      List<LongInterval> windows = Lists.newArrayList();
+      BooleanQuery expected = new BooleanQuery();
+      for (int i = 1 + random.nextInt(50); i > 0; i--) {
+        long start = random.nextInt(1100000) - 550000;
+        long end = start + random.nextInt(q % 2 == 0 ? 100 : 50000);
+        windows.add(new LongInterval(start, end));
+        expected.add(new NumericIntervalIntersectionQuery("time", start, end), BooleanClause.Occur.SHOULD);
+      }
+      Assert.assertEquals(searcher.search(expected, 1).totalHits,
+          searcher.search(new MultiIntervalIntersectionQuery("time", windows), 1).totalHits);
+    }
+  }
+
+  @Test
+  public void testMergesWindows() throws IOException {
+    addDocument(1, 0, 10);
+    IndexReader reader = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(reader, "time", 64);
+
+    MultiIntervalIntersectionQuery query = new MultiIntervalIntersectionQuery("time", Lists.newArrayList(
+        new LongInterval(20, 30), new LongInterval(0, 5), new LongInterval(6, 8), new LongInterval(25, 40)));
+    Assert.assertEquals(2, query.getWindowCount());
+    Assert.assertEquals(query, new MultiIntervalIntersectionQuery("time", Lists.newArrayList(
+        new LongInterval(0, 8), new LongInterval(20, 40))));
+
+    List<LongInterval> windows = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      windows.add(new LongInterval(i * 3600L, i * 3600L + 600));
+    }
+    int ranges = new MultiIntervalIntersectionQuery("time", windows).getBounds(schema).size() / 2;
+    Assert.assertTrue("" + ranges, ranges * 4 < windows.size() * schema.getLevelCount());
+  }
+
+  @Test
+  public void testNoWindows() throws IOException {
+    addDocument(1, 0, 10);
+    assertSearch(getSearcher(), new MultiIntervalIntersectionQuery("time", Lists.<LongInterval>newArrayList()));
+  }
+}
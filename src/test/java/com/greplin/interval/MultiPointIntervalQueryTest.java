@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests the MultiPointIntervalQuery class.
+ */
+public class MultiPointIntervalQueryTest extends BaseIntervalQueryTest {
+
+  @Test
+  public void testMatchesPointQueries() throws IOException {
+    Random random = new Random(43);
+    for (int id = 0; id < 500; id++) {
+      long start = random.nextInt(1000000) - 500000;
+      addDocument(id, start, start + random.nextInt(id % 10 == 0 ? 100000 : 1000));
+    }
+    IndexSearcher searcher = getSearcher();
+
+    for (int q = 0; q < 20; q++) {
+      long[] points = new long[1 + random.nextInt(200)];
+      BooleanQuery expected = new BooleanQuery();
+      for (int i = 0; i < points.length; i++) {
+        points[i] = random.nextInt(1100000) - 550000;
+        expected.add(new InNumericIntervalQuery("time", points[i]), BooleanClause.Occur.SHOULD);
+      }
+      Assert.assertEquals(searcher.search(expected, 1).totalHits,
+          searcher.search(new MultiPointIntervalQuery("time", points), 1).totalHits);
+    }
+  }
+
+  @Test
+  public void testSharesTerms() throws IOException {
+    addDocument(1, 0, 10);
+    IndexReader reader = getSearcher().getIndexReader().getSequentialSubReaders()[0];
+    IntervalSchema schema = IntervalSchema.read(reader, "time", 64);
+
+    long[] points = new long[10000];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = 1000000000L + i * 60L;
+    }
+    MultiPointIntervalQuery query = new MultiPointIntervalQuery("time", points);
+    int ranges = query.getBounds(schema).size() / 2;
+    Assert.assertTrue("" + ranges, ranges * 4 < points.length * schema.getLevelCount());
+
+    // Consecutive blocks join, and values in one block give one range.
+    Assert.assertEquals(schema.getLevelCount(),
+        new MultiPointIntervalQuery("time", 5, 6, 7, 5).getBounds(schema).size() / 2);
+    FilteredTermEnum terms = new MultiPointIntervalQuery("time", 3, 10, 11).getEnum(reader);
+    int count = 0;
+    while (terms.term() != null) {
+      count++;
+      terms.next();
+    }
+    terms.close();
+    Assert.assertTrue(count > 0);
+  }
+
+  @Test
+  public void testDeduplicates() {
+    Assert.assertArrayEquals(new long[] {-4, 1, 9}, new MultiPointIntervalQuery("time", 9, 1, -4, 1, 9).getPoints());
+    Assert.assertEquals(new MultiPointIntervalQuery("time", 2, 1), new MultiPointIntervalQuery("time", 1, 2, 2));
+  }
+}
@@ -16,9 +16,15 @@
 
 package com.greplin.interval;
 
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
  * Tests the NumericIntervalField class.
  */
@@ -54,4 +60,36 @@ public class NumericIntervalFieldTest {
 
     Assert.assertArrayEquals(new long[]{-100, 21253456}, NumericIntervalField.splitParts("-100-21253456"));
   }
+
+  private static List<String> terms(NumericIntervalField field) throws IOException {
+    TokenStream stream = field.tokenStreamValue();
+    TermAttribute termAtt = stream.getAttribute(TermAttribute.class);
+    List<String> result = Lists.newArrayList();
+    stream.reset();
+    while (stream.incrementToken()) {
+      result.add(termAtt.term());
+    }
+    return result;
+  }
+
+  @Test
+  public void testReuse() throws IOException {
+    NumericIntervalField reused = new NumericIntervalField("time", true);
+    Assert.assertEquals(
+        terms(new NumericIntervalField("time", true, 900, 1100)),
+        terms(reused.setInterval(900, 1100)));
+    Assert.assertEquals(
+        terms(new NumericIntervalField("time", true, -80, 80)),
+        terms(reused.setInterval(-80, 80)));
+    Assert.assertEquals(
+        terms(new NumericIntervalField("time", true, 1257642240L, 1257645568L)),
+        terms(reused.setInterval(1257642240L, 1257645568L)));
+  }
+
+  @Test
+  public void testExtremes() throws IOException {
+    Assert.assertFalse(terms(new NumericIntervalField("time", true, 0, Long.MAX_VALUE)).isEmpty());
+    Assert.assertFalse(terms(new NumericIntervalField("time", true, Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty());
+    Assert.assertTrue(terms(new NumericIntervalField("time", true, 10, 5)).isEmpty());
+  }
 }
@@ -17,6 +17,7 @@
 package com.greplin.interval;
 
 import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -79,6 +80,34 @@ public class NumericIntervalIntersectionQueryTest extends BaseIntervalQueryTest
     assertSearch(getSearcher(), 4080, 4096, 12, 13, 23);
   }
 
+  @Test
+  public void testVisitedTermsAreBounded() throws IOException {
+    for (int i = 0; i < 1000; i++) {
+      addDocument(i, i * 1000, i * 1000 + 999);
+    }
+
+    NumericIntervalIntersectionQuery query = new NumericIntervalIntersectionQuery("time", 500500, 500600);
+    assertSearch(getSearcher(), query, 500);
+    // One term ends each of the 16 shift levels, plus the few matches.
+    Assert.assertTrue(query.getTotalNumberOfVisitedTerms() < 40);
+
+    query.clearTotalNumberOfVisitedTerms();
+    Assert.assertEquals(0, query.getTotalNumberOfVisitedTerms());
+  }
+
+  @Test
+  public void testExtremes() throws IOException {
+    addDocument(1, Long.MIN_VALUE, -1);
+    addDocument(2, 0, Long.MAX_VALUE);
+    addDocument(3, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, Long.MIN_VALUE, Long.MIN_VALUE, 1, 3);
+    assertSearch(searcher, Long.MAX_VALUE, Long.MAX_VALUE, 2, 3);
+    assertSearch(searcher, -5, 5, 1, 2, 3);
+    assertSearch(searcher, 1L << 40, 1L << 50, 2, 3);
+  }
+
   protected void assertSearch(IndexSearcher searcher, long start, long end, Integer... expectedResults)
       throws IOException {
     assertSearch(searcher, new NumericIntervalIntersectionQuery("time", start, end), expectedResults);
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for the numeric interval set field.
+ */
+public class NumericIntervalSetFieldTest extends BaseIntervalQueryTest {
+
+  private static List<String> terms(Fieldable field) throws IOException {
+    TokenStream stream = field.tokenStreamValue();
+    TermAttribute termAtt = stream.getAttribute(TermAttribute.class);
+    List<String> result = Lists.newArrayList();
+    stream.reset();
+    while (stream.incrementToken()) {
+      result.add(termAtt.term());
+    }
+    return result;
+  }
+
+  @Test
+  public void testCoalesce() throws IOException {
+    NumericIntervalSetField field = new NumericIntervalSetField("time", true)
+        .addInterval(1793, 1797)
+        .addInterval(1789, 1793);
+    Assert.assertEquals(1, field.getMergedSize());
+    Assert.assertEquals(terms(new NumericIntervalField("time", true, 1789, 1797)), terms(field));
+
+    field.clear().addInterval(10, 20).addInterval(21, 30).addInterval(15, 16);
+    Assert.assertEquals(1, field.getMergedSize());
+    Assert.assertEquals(terms(new NumericIntervalField("time", true, 10, 30)), terms(field));
+
+    field.clear().addInterval(10, 20).addInterval(22, 30);
+    Assert.assertEquals(2, field.getMergedSize());
+
+    field.clear().addInterval(0, Long.MAX_VALUE).addInterval(Long.MAX_VALUE, Long.MAX_VALUE);
+    Assert.assertEquals(1, field.getMergedSize());
+  }
+
+  @Test
+  public void testManyIntervals() {
+    NumericIntervalSetField field = new NumericIntervalSetField("time", true);
+    for (int i = 99; i >= 0; i--) {
+      field.addInterval(i * 10, i * 10 + 4);
+      field.addInterval(i * 10 + 2, i * 10 + 3);
+    }
+    Assert.assertEquals(100, field.getMergedSize());
+  }
+
+  @Test
+  public void testSearch() throws IOException {
+    addDocument(1, new NumericIntervalSetField("time", true)
+        .addInterval(1789, 1793).addInterval(1793, 1797));
+    addDocument(2, new NumericIntervalSetField("time", true)
+        .addInterval(1797, 1801));
+    addDocument(3, new NumericIntervalSetField("time", true)
+        .addInterval(1801, 1805).addInterval(1805, 1809).addInterval(1900, 1910));
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1792), 1);
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1797), 1, 2);
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1850));
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1905), 3);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 1700, 1799), 1, 2);
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 1850, 1899));
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", 1850, 1900), 3);
+  }
+}
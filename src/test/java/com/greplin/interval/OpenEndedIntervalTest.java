@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 The Lucene Interval Field Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.greplin.interval;
+
+import com.google.common.collect.Sets;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests open-ended intervals, which must behave like intervals ending at
+ * Long.MAX_VALUE.
+ */
+public class OpenEndedIntervalTest extends BaseIntervalQueryTest {
+
+  private static Set<Integer> ids(IndexSearcher searcher, Query query) throws IOException {
+    Set<Integer> result = Sets.newHashSet();
+    for (ScoreDoc scoreDoc : searcher.search(query, 1000).scoreDocs) {
+      result.add(Integer.valueOf(searcher.doc(scoreDoc.doc).get("id")));
+    }
+    return result;
+  }
+
+  private static Query intersection(String field, long start, long end, IntervalQueryPlan.Strategy strategy) {
+    return new NumericIntervalIntersectionQuery(field, start, end).forceStrategy(strategy);
+  }
+
+  private static Query point(String field, long value, IntervalQueryPlan.Strategy strategy) {
+    return new IntervalConstantScoreQuery(new InNumericIntervalFilter(field, value).forceStrategy(strategy));
+  }
+
+  @Test
+  public void testMatchesClosedEquivalent() throws IOException {
+    Random random = new Random(25);
+    for (int id = 0; id < 400; id++) {
+      long start = random.nextInt(100000) - 20000;
+      NumericIntervalField open = new NumericIntervalField("time", true).setColumn(true);
+      NumericIntervalField closed = new NumericIntervalField("closed", true).setColumn(true);
+      if (id % 4 == 0) {
+        open.setOpenEndedInterval(start);
+        closed.setInterval(start, Long.MAX_VALUE);
+      } else {
+        long end = start + random.nextInt(2000);
+        open.setInterval(start, end);
+        closed.setInterval(start, end);
+      }
+      addDocument(id, open, closed,
+          new Field("key", String.valueOf(id), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (id == 150) {
+        getSearcher();
+      }
+    }
+    getIndexWriter().deleteDocuments(new Term("key", "8"));
+
+    IndexSearcher searcher = getSearcher();
+    IndexReader reader = searcher.getIndexReader();
+    IntervalTree.warm(reader, "time");
+    IntervalTree.warm(reader, "closed");
+
+    for (int q = 0; q < 100; q++) {
+      long start = random.nextInt(120000) - 30000;
+      long end = start + (q % 10 == 0 ? random.nextInt(1000000) : random.nextInt(3000));
+      Set<Integer> expected = ids(searcher, intersection("closed", start, end, IntervalQueryPlan.Strategy.TERMS));
+      Set<Integer> expectedPoint = ids(searcher, point("closed", start, IntervalQueryPlan.Strategy.TERMS));
+      for (IntervalQueryPlan.Strategy strategy : IntervalQueryPlan.Strategy.values()) {
+        Assert.assertEquals(strategy.toString(), expected, ids(searcher, intersection("time", start, end, strategy)));
+        Assert.assertEquals(strategy.toString(), expectedPoint, ids(searcher, point("time", start, strategy)));
+      }
+      Assert.assertEquals(expected, ids(searcher, new NumericIntervalIntersectionQuery("time", start, end)));
+      Assert.assertEquals(expectedPoint, ids(searcher, new InNumericIntervalQuery("time", start)));
+
+      for (IntervalRelationQuery.Relation relation : IntervalRelationQuery.Relation.values()) {
+        Assert.assertEquals(relation.toString(),
+            ids(searcher, new IntervalRelationQuery("closed", start, end, relation)),
+            ids(searcher, new IntervalRelationQuery("time", start, end, relation)));
+      }
+      Assert.assertEquals(
+          ids(searcher, new MultiPointIntervalQuery("closed", start, end)),
+          ids(searcher, new MultiPointIntervalQuery("time", start, end)));
+      Assert.assertEquals(
+          ids(searcher, new MultiIntervalIntersectionQuery("closed", Arrays.asList(new LongInterval(start, end)))),
+          ids(searcher, new MultiIntervalIntersectionQuery("time", Arrays.asList(new LongInterval(start, end)))));
+
+      Assert.assertEquals(expected.size(), new IntervalCounter("time").count(reader, start, end));
+      Assert.assertTrue(Arrays.equals(
+          new IntervalHistogram("closed").count(reader, start, end, 250),
+          new IntervalHistogram("time").count(reader, start, end, 250)));
+      Assert.assertEquals(
+          new IntervalGapFinder("closed").find(reader, start, end, null, 1, 100),
+          new IntervalGapFinder("time").find(reader, start, end, null, 1, 100));
+    }
+  }
+
+  @Test
+  public void testOneTermPerLevel() throws IOException {
+    NumericIntervalField field = new NumericIntervalField("time", true).setOpenEndedInterval(1234567);
+    addDocument(1, field);
+    IndexReader reader = getSearcher().getIndexReader();
+    IntervalSchema schema = IntervalSchema.read(reader, "time", 64);
+
+    int openTerms = 0;
+    int otherTerms = 0;
+    TermEnum terms = reader.terms(new Term("time", ""));
+    for (Term term = terms.term(); term != null && term.field().equals("time");
+         term = terms.next() ? terms.term() : null) {
+      if (term.text().charAt(0) == IntervalTerms.OPEN_PREFIX) {
+        openTerms++;
+      } else if (term.text().charAt(0) != IntervalSchema.SCHEMA_PREFIX) {
+        otherTerms++;
+      }
+    }
+    terms.close();
+    Assert.assertEquals(schema.getLevelCount(), openTerms);
+    Assert.assertEquals(0, otherTerms);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    Assert.assertTrue(IntervalQueryPlan.forSearch(segment, "time", 0, 5, schema, null).hasOpenEndedTerms());
+    Assert.assertFalse(IntervalQueryPlan.forSearch(segment, "other", 0, 5, schema, null).hasOpenEndedTerms());
+
+    IndexSearcher searcher = getSearcher();
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1234567), 1);
+    assertSearch(searcher, new InNumericIntervalQuery("time", Long.MAX_VALUE), 1);
+    assertSearch(searcher, new InNumericIntervalQuery("time", 1234566));
+    assertSearch(searcher, new NumericIntervalIntersectionQuery("time", Long.MIN_VALUE, 1234566));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCannotAddToOpenEnded() {
+    new NumericIntervalTokenStream(IntervalSchema.uniform(64, 4)).setOpenEnded(5).addInterval(1, 2);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRequires64Bits() {
+    new NumericIntervalTokenStream(IntervalSchema.uniform(32, 4)).setOpenEnded(5);
+  }
+}